@@ -4,10 +4,14 @@ import com.hmdp.utils.LoginInterceptor;
 import com.hmdp.utils.RefreshTokenInterceptor;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 @Configuration
 public class MvcConfig implements WebMvcConfigurer {
@@ -34,6 +38,15 @@ public class MvcConfig implements WebMvcConfigurer {
                         "/upload/**",
                         "/voucher/**"
                 ).order(1);
+        // 店铺查询不需要登录，删除店铺需要
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+                return !HttpMethod.DELETE.matches(request.getMethod()) || loginInterceptor.preHandle(request, response, handler);
+            }
+        }).addPathPatterns("/shop/**").order(1);
+        // 优惠券查询不需要登录，补充秒杀库存需要
+        registry.addInterceptor(loginInterceptor).addPathPatterns("/voucher/seckill/*/stock").order(1);
         registry.addInterceptor(refreshTokenInterceptor).addPathPatterns("/**").order(0);
     }
 }
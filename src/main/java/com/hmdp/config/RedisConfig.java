@@ -0,0 +1,126 @@
+package com.hmdp.config;
+
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.resource.ClientResources;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+public class RedisConfig {
+
+    /**
+     * Redis 发布订阅的监听容器，用于跨节点的本地缓存失效通知。
+     * 消息由线程池并发分发，不同频道互不阻塞；同一频道的消息到达监听器的顺序不保证，需要顺序的监听器自己按版本判断
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        // 订阅线程一直阻塞在连接上，不能和分发消息共用同一个线程
+        container.setSubscriptionExecutor(new SimpleAsyncTaskExecutor("redis-subscription-"));
+        // 默认执行器每条消息一个新线程，用固定大小的线程池限制线程数
+        ThreadPoolTaskExecutor dispatcher = new ThreadPoolTaskExecutor();
+        dispatcher.setCorePoolSize(4);
+        dispatcher.setMaxPoolSize(4);
+        dispatcher.setThreadNamePrefix("redis-listener-");
+        dispatcher.initialize();
+        container.setTaskExecutor(dispatcher);
+        return container;
+    }
+
+    /**
+     * AsyncCacheClient 专用的 Lettuce 客户端，按 spring.redis 的全部连接配置创建：
+     * cluster.nodes 不为空时为集群客户端，sentinel.master 不为空时通过哨兵连接，否则按 url 或 host/port 连接；
+     * 密码、database、ssl、timeout 与 StringRedisTemplate 一致。和 Spring 创建的连接共用 ClientResources(IO线程和事件循环)
+     */
+    @Bean(destroyMethod = "shutdown")
+    public AbstractRedisClient cacheRedisClient(RedisProperties properties, ClientResources clientResources) {
+        RedisProperties.Cluster cluster = properties.getCluster();
+        if (cluster != null && !CollectionUtils.isEmpty(cluster.getNodes())) {
+            List<RedisURI> nodes = new ArrayList<>(cluster.getNodes().size());
+            for (String node : cluster.getNodes()) {
+                RedisURI uri = RedisURI.create(host(node), port(node));
+                applyCommon(uri, properties);
+                nodes.add(uri);
+            }
+            RedisClusterClient client = RedisClusterClient.create(clientResources, nodes);
+            if (cluster.getMaxRedirects() != null) {
+                client.setOptions(ClusterClientOptions.builder().maxRedirects(cluster.getMaxRedirects()).build());
+            }
+            return client;
+        }
+        RedisURI uri;
+        RedisProperties.Sentinel sentinel = properties.getSentinel();
+        if (sentinel != null && StringUtils.hasText(sentinel.getMaster())) {
+            List<String> sentinels = sentinel.getNodes();
+            RedisURI.Builder builder = RedisURI.Builder.sentinel(host(sentinels.get(0)), port(sentinels.get(0)), sentinel.getMaster());
+            for (String node : sentinels.subList(1, sentinels.size())) {
+                builder.withSentinel(host(node), port(node));
+            }
+            uri = builder.build();
+        } else if (StringUtils.hasText(properties.getUrl())) {
+            // url 中的主机、端口、密码和 rediss:// 优先，和 Spring 的处理一致
+            uri = RedisURI.create(properties.getUrl());
+        } else {
+            uri = RedisURI.create(properties.getHost(), properties.getPort());
+        }
+        applyCommon(uri, properties);
+        if (properties.getDatabase() != 0) {
+            uri.setDatabase(properties.getDatabase());
+        }
+        return RedisClient.create(clientResources, uri);
+    }
+
+    /**
+     * key 用字符串、value 用原始字节的异步命令，一条连接被所有请求复用，命令自动流水线发送。
+     * 集群模式下按key路由到对应节点，连接随客户端关闭
+     */
+    @Bean
+    public RedisClusterAsyncCommands<String, byte[]> cacheAsyncCommands(AbstractRedisClient cacheRedisClient) {
+        RedisCodec<String, byte[]> codec = RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE);
+        if (cacheRedisClient instanceof RedisClusterClient) {
+            return ((RedisClusterClient) cacheRedisClient).connect(codec).async();
+        }
+        return ((RedisClient) cacheRedisClient).connect(codec).async();
+    }
+
+    /**
+     * url 里已经带了密码或 rediss:// 时不覆盖
+     */
+    private static void applyCommon(RedisURI uri, RedisProperties properties) {
+        if (uri.getPassword() == null && properties.getPassword() != null) {
+            uri.setPassword(properties.getPassword().toCharArray());
+        }
+        if (properties.isSsl()) {
+            uri.setSsl(true);
+        }
+        uri.setTimeout(properties.getTimeout() != null ? properties.getTimeout() : Duration.ofSeconds(5));
+    }
+
+    private static String host(String node) {
+        return node.substring(0, node.lastIndexOf(':'));
+    }
+
+    private static int port(String node) {
+        return Integer.parseInt(node.substring(node.lastIndexOf(':') + 1));
+    }
+}
@@ -0,0 +1,42 @@
+package com.hmdp.config;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.utils.SeckillStock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 启动时把不带hash tag的秒杀库存和已下单用户key迁移到 seckill:stock:{voucherId}、seckill:order:{voucherId}，
+ * 升级前创建的秒杀券不需要重新写入库存；新key已存在时什么也不做
+ */
+@Slf4j
+@Component
+public class SeckillStockMigrationRunner implements ApplicationRunner {
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private SeckillStock seckillStock;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        List<Long> voucherIds = new ArrayList<>();
+        for (Object voucherId : seckillVoucherService.listObjs(new QueryWrapper<SeckillVoucher>().select("voucher_id"))) {
+            voucherIds.add(((Number) voucherId).longValue());
+        }
+        // 升级前写入库存的券也需要检查待转发订单
+        seckillStock.register(voucherIds);
+        int migrated = seckillStock.migrateLegacyKeys(voucherIds);
+        if (migrated > 0) {
+            log.info("已把{}张秒杀券的库存key迁移到带hash tag的格式", migrated);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.hmdp.config;
+
+import com.hmdp.service.IShopService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+
+/**
+ * 启动时如果还没有店铺id布隆过滤器，按 tb_shop 构建。
+ * 已经存在时不重建，多个节点同时启动也只有拿到锁的一个节点构建，需要全量重建时调用 /cache/bloom/shop/rebuild
+ */
+@Slf4j
+@Component
+public class ShopBloomFilterRunner implements ApplicationRunner {
+
+    @Resource
+    private IShopService shopService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long begin = System.currentTimeMillis();
+        long count = shopService.buildBloomFilterIfAbsent();
+        if (count < 0) {
+            log.info("店铺布隆过滤器已存在或正在由其他节点构建, 跳过");
+            return;
+        }
+        log.info("店铺布隆过滤器构建完成, 共{}个店铺, 耗时{}ms", count, System.currentTimeMillis() - begin);
+    }
+}
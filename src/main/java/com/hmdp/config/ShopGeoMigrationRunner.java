@@ -0,0 +1,42 @@
+package com.hmdp.config;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.service.IShopService;
+import com.hmdp.utils.ShopGeoIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 启动时把旧前缀 shop:geo:{typeId} 的GEO集合复制到 {shop:geo}:{typeId}。
+ * 不依赖预热是否开启，升级后附近店铺查询不会因为新key为空而查不到结果；新key已存在时什么也不做
+ */
+@Slf4j
+@Component
+public class ShopGeoMigrationRunner implements ApplicationRunner {
+
+    @Resource
+    private IShopService shopService;
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        List<Long> typeIds = new ArrayList<>();
+        for (Object typeId : shopService.listObjs(new QueryWrapper<Shop>().select("distinct type_id"))) {
+            if (typeId != null) {
+                typeIds.add(((Number) typeId).longValue());
+            }
+        }
+        int migrated = shopGeoIndex.migrateLegacyKeys(typeIds);
+        if (migrated > 0) {
+            log.info("已把{}个类型的GEO集合从旧前缀复制到新前缀", migrated);
+        }
+    }
+}
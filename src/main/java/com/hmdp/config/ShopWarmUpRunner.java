@@ -0,0 +1,212 @@
+package com.hmdp.config;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.service.IShopService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.ShopGeoIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 启动预热：ApplicationRunner 在应用发布 ReadinessState.ACCEPTING_TRAFFIC 之前执行，预热完成前实例不会被判定为就绪。
+ * 按id区间把 tb_shop 分给多个线程分页读取，重建各类型的GEO集合，并把销量最高的N个店铺以逻辑过期格式批量写入缓存。
+ * GEO先写到临时key，全部完成后再rename替换；超过时间预算则放弃本次GEO重建，保留原有数据。
+ * 多个节点同时启动时只有拿到重建锁的节点写GEO，临时key每次不同，不会删掉或rename别人正在写的临时key。
+ * 同一次扫描也用来构建进程内的店铺空间索引 {@link ShopGeoIndex}，同样只有全部完成才替换。
+ */
+@Slf4j
+@Component
+public class ShopWarmUpRunner implements ApplicationRunner {
+
+    private static final String GEO_TMP_SUFFIX = ":warmup";
+
+    @Resource
+    private IShopService shopService;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+
+    @Value("${hmdp.cache.warm-up.enabled:false}")
+    private boolean enabled;
+    @Value("${hmdp.cache.warm-up.page-size:500}")
+    private int pageSize;
+    @Value("${hmdp.cache.warm-up.hot-shops:100}")
+    private int hotShops;
+    @Value("${hmdp.cache.warm-up.parallelism:4}")
+    private int parallelism;
+    @Value("${hmdp.cache.warm-up.time-budget-seconds:60}")
+    private long timeBudgetSeconds;
+
+    private final AtomicLong processed = new AtomicLong();
+    private volatile String status = "NOT_STARTED";
+    private volatile long durationMs;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        if (!enabled) {
+            status = "DISABLED";
+            return;
+        }
+        status = "RUNNING";
+        long begin = System.currentTimeMillis();
+        long deadline = begin + TimeUnit.SECONDS.toMillis(timeBudgetSeconds);
+        // 同一时刻只有一个节点重建Redis GEO，其他节点照常构建本地索引和预热缓存
+        boolean loadGeo = shopGeoIndex.beginLoad(GEO_TMP_SUFFIX);
+        if (!loadGeo) {
+            log.info("其他节点正在重建GEO集合, 本次预热跳过GEO");
+        }
+        Set<Long> typeIds = new HashSet<>();
+        ShopGeoIndex.Builder geoIndexBuilder = null;
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Object> maxIds = shopService.listObjs(new QueryWrapper<Shop>().select("max(id)"));
+            long maxId = maxIds.isEmpty() || maxIds.get(0) == null ? 0 : ((Number) maxIds.get(0)).longValue();
+            for (Object typeId : shopService.listObjs(new QueryWrapper<Shop>().select("distinct type_id"))) {
+                if (typeId != null) {
+                    typeIds.add(((Number) typeId).longValue());
+                }
+            }
+            // 1.按id区间并行分页读取
+            geoIndexBuilder = shopGeoIndex.isEnabled() ? shopGeoIndex.newBuilder() : null;
+            ShopGeoIndex.Builder builder = geoIndexBuilder;
+            long step = maxId / parallelism + 1;
+            List<Future<List<Shop>>> futures = new ArrayList<>(parallelism);
+            for (int i = 0; i < parallelism; i++) {
+                long lower = i * step;
+                long upper = Math.min(maxId, lower + step);
+                futures.add(pool.submit(() -> scanRange(lower, upper, deadline, loadGeo, builder)));
+            }
+            // 2.合并各线程的热点店铺
+            PriorityQueue<Shop> hot = new PriorityQueue<>(Comparator.comparing(this::hotScore));
+            boolean completed = true;
+            for (Future<List<Shop>> future : futures) {
+                List<Shop> top;
+                try {
+                    top = future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                    top = null;
+                }
+                if (top == null) {
+                    completed = false;
+                    continue;
+                }
+                for (Shop shop : top) {
+                    offer(hot, shop);
+                }
+            }
+            // 3.GEO全部写完才替换，否则丢弃临时key
+            if (loadGeo) {
+                shopGeoIndex.finishLoad(typeIds, completed);
+            }
+            if (geoIndexBuilder != null) {
+                if (completed) {
+                    shopGeoIndex.install(geoIndexBuilder);
+                } else {
+                    shopGeoIndex.abandon();
+                }
+            }
+            // 4.热点店铺批量写入缓存
+            Map<String, Shop> hotValues = new LinkedHashMap<>(hot.size());
+            for (Shop shop : hot) {
+                hotValues.put(RedisConstants.CACHE_SHOP_KEY + shop.getId(), shop);
+            }
+            cacheClient.setBatchWithLogicalExpire(hotValues, RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
+            durationMs = System.currentTimeMillis() - begin;
+            status = completed ? "COMPLETED" : "TIMEOUT";
+            log.info("预热结束, 状态={}, 读取店铺{}个, GEO类型{}个, 热点店铺{}个, 耗时{}ms",
+                    status, processed.get(), typeIds.size(), hotValues.size(), durationMs);
+        } catch (Exception e) {
+            // 预热失败不影响启动，GEO集合和索引保持原状，查询回退到Redis
+            durationMs = System.currentTimeMillis() - begin;
+            status = "FAILED";
+            log.error("预热失败", e);
+            if (geoIndexBuilder != null) {
+                // 停止暂存变更消息
+                shopGeoIndex.abandon();
+            }
+        } finally {
+            // 异常退出时丢弃临时key，正常结束时已经处理过，这里不再有作用
+            if (loadGeo) {
+                shopGeoIndex.finishLoad(typeIds, false);
+            }
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * 分页扫描 (lower, upper] 区间的店铺，拿到重建锁时写入GEO临时key
+     * @return 区间内的热点店铺，超过时间预算返回null
+     */
+    private List<Shop> scanRange(long lower, long upper, long deadline, boolean loadGeo, ShopGeoIndex.Builder geoIndexBuilder) {
+        PriorityQueue<Shop> hot = new PriorityQueue<>(Comparator.comparing(this::hotScore));
+        long lastId = lower;
+        while (lastId < upper) {
+            if (System.currentTimeMillis() > deadline) {
+                log.warn("预热超过时间预算, 区间({}, {}]停止在id={}", lower, upper, lastId);
+                return null;
+            }
+            List<Shop> page = shopService.query()
+                    .gt("id", lastId).le("id", upper)
+                    .orderByAsc("id").last("limit " + pageSize)
+                    .list();
+            if (page.isEmpty()) {
+                break;
+            }
+            if (loadGeo) {
+                shopGeoIndex.loadBatch(page);
+            }
+            if (geoIndexBuilder != null) {
+                geoIndexBuilder.add(page);
+            }
+            for (Shop shop : page) {
+                offer(hot, shop);
+            }
+            lastId = page.get(page.size() - 1).getId();
+            long total = processed.addAndGet(page.size());
+            log.debug("预热进度: 已读取{}个店铺", total);
+        }
+        return new ArrayList<>(hot);
+    }
+
+    private void offer(PriorityQueue<Shop> hot, Shop shop) {
+        hot.offer(shop);
+        if (hot.size() > hotShops) {
+            hot.poll();
+        }
+    }
+
+    private long hotScore(Shop shop) {
+        return shop.getSold() == null ? 0 : shop.getSold();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("status", status);
+        m.put("processed", processed.get());
+        m.put("durationMs", durationMs);
+        return m;
+    }
+}
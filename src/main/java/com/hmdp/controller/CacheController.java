@@ -0,0 +1,153 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.config.ShopWarmUpRunner;
+import com.hmdp.dto.Result;
+import com.hmdp.service.IShopService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheMetrics;
+import com.hmdp.utils.CacheRebuildExecutor;
+import com.hmdp.utils.HotKeyDetector;
+import com.hmdp.utils.ShopGeoIndex;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+import java.util.Map;
+
+/**
+ * <p>
+ * 缓存运维接口
+ * </p>
+ */
+@RestController
+@RequestMapping("/cache")
+public class CacheController {
+
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private IShopService shopService;
+    @Resource
+    private CacheRebuildExecutor cacheRebuildExecutor;
+    @Resource
+    private ShopWarmUpRunner shopWarmUpRunner;
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+    @Resource
+    private CacheMetrics cacheMetrics;
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+
+    /**
+     * 查询一级缓存各key前缀的命中情况
+     * @return prefix -> 命中数、未命中数、命中率
+     */
+    @GetMapping("/local/stats")
+    public Result localCacheStats() {
+        return Result.ok(cacheClient.localCacheStats());
+    }
+
+    /**
+     * 查询缓存未命中时的合并加载情况
+     * @return 实际查库次数、被合并的调用次数、正在加载的key数量
+     */
+    @GetMapping("/single-flight/stats")
+    public Result singleFlightStats() {
+        return Result.ok(cacheClient.singleFlightStats());
+    }
+
+    /**
+     * 查询各前缀布隆过滤器的参数和拦截次数
+     * @return prefix -> 过滤器信息
+     */
+    @GetMapping("/bloom/stats")
+    public Result bloomFilterStats() {
+        return Result.ok(cacheClient.bloomFilterStats());
+    }
+
+    /**
+     * 按数据库重建店铺id布隆过滤器
+     * @return 写入的店铺数量
+     */
+    @PostMapping("/bloom/shop/rebuild")
+    public Result rebuildShopBloomFilter() {
+        long count = shopService.rebuildBloomFilter();
+        return count < 0 ? Result.fail("其他节点正在重建") : Result.ok(count);
+    }
+
+    /**
+     * 查询缓存后台重建线程池的状态
+     * @return 队列长度、重建耗时、丢弃次数等
+     */
+    @GetMapping("/rebuild/stats")
+    public Result rebuildStats() {
+        return Result.ok(cacheRebuildExecutor.stats());
+    }
+
+    /**
+     * 查询启动预热的进度
+     * @return 状态、已读取店铺数、耗时
+     */
+    @GetMapping("/warm-up/stats")
+    public Result warmUpStats() {
+        return Result.ok(shopWarmUpRunner.stats());
+    }
+
+    /**
+     * 查询热点key探测结果
+     * @return 上个窗口的top-K、已晋升的热点key、最近的晋升/降级事件
+     */
+    @GetMapping("/hot-keys")
+    public Result hotKeys() {
+        return Result.ok(hotKeyDetector.snapshot());
+    }
+
+    /**
+     * 查询各key前缀的命中统计和Redis调用耗时
+     * @return prefix -> 命中/未命中/空值命中/重建次数、耗时分位数(ms)
+     */
+    @GetMapping("/metrics")
+    public Result metrics() {
+        return Result.ok(cacheMetrics.snapshot());
+    }
+
+    /**
+     * 查询互斥锁模式下等待重建的情况
+     * @return 等待次数、超时次数、返回旧值次数、平均等待时间
+     */
+    @GetMapping("/mutex/stats")
+    public Result mutexStats() {
+        return Result.ok(cacheClient.mutexStats());
+    }
+
+    /**
+     * 查询各key前缀的压缩率和压缩/解压耗时
+     * @return prefix -> 压缩次数、压缩前后字节数、平均耗时(us)
+     */
+    @GetMapping("/compression/stats")
+    public Result compressionStats() {
+        return Result.ok(cacheClient.compressionStats());
+    }
+
+    /**
+     * 查询进程内店铺空间索引的状态
+     * @return 是否就绪、各类型的店铺数和格子数
+     */
+    @GetMapping("/geo-index/stats")
+    public Result geoIndexStats() {
+        return Result.ok(shopGeoIndex.stats());
+    }
+
+    /**
+     * 从数据库流式重建所有类型的店铺GEO集合，重建期间的增删改不会丢失
+     * @return 店铺数、类型数、耗时和每秒写入的店铺数
+     */
+    @PostMapping("/geo/shop/reload")
+    public Result reloadShopGeo() {
+        Map<String, Object> r = shopService.reloadGeo();
+        return r == null ? Result.fail("GEO集合正在重建") : Result.ok(r);
+    }
+}
@@ -10,6 +10,7 @@ import com.hmdp.utils.SystemConstants;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * <p>
@@ -32,9 +33,9 @@ public class ShopController {
      * @return 商铺详情数据
      */
     @GetMapping("/{id}")
-    public Result queryShopById(@PathVariable("id") Long id) {
+    public CompletableFuture<Result> queryShopById(@PathVariable("id") Long id) {
 //        return Result.ok(shopService.getById(id));
-        return shopService.queryById(id);
+        return shopService.queryByIdAsync(id);
     }
 
     /**
@@ -45,9 +46,7 @@ public class ShopController {
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
         // 写入数据库
-        shopService.save(shop);
-        // 返回店铺id
-        return Result.ok(shop.getId());
+        return shopService.saveShop(shop);
     }
 
     /**
@@ -63,6 +62,16 @@ public class ShopController {
         return shopService.update(shop);
     }
 
+    /**
+     * 删除商铺
+     * @param id 商铺id
+     * @return 无
+     */
+    @DeleteMapping("/{id}")
+    public Result deleteShop(@PathVariable("id") Long id) {
+        return shopService.deleteShop(id);
+    }
+
     /**
      * 根据商铺类型分页查询商铺信息
      * @param typeId 商铺类型
@@ -79,6 +88,22 @@ public class ShopController {
         return shopService.queryShopByType(typeId, current, x, y);
     }
 
+    /**
+     * 按距离滚动查询附近商铺，第一页传类型和坐标，之后传上一页返回的游标
+     * @param typeId 商铺类型
+     * @param cursor 上一页返回的游标
+     * @return 商铺列表和下一页的游标
+     */
+    @GetMapping("/of/type/scroll")
+    public Result queryShopByTypeScroll(
+            @RequestParam(value = "typeId", required = false) Integer typeId,
+            @RequestParam(value = "x", required = false) Double x,
+            @RequestParam(value = "y", required = false) Double y,
+            @RequestParam(value = "cursor", required = false) String cursor
+    ) {
+        return shopService.queryShopByTypeScroll(typeId, x, y, cursor);
+    }
+
     /**
      * 根据商铺名称关键字分页查询商铺信息
      * @param name 商铺名称关键字
@@ -3,6 +3,9 @@ package com.hmdp.controller;
 
 import com.hmdp.dto.Result;
 import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.OrderStreamConsumer;
+import com.hmdp.utils.SeckillStock;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -24,10 +27,32 @@ public class VoucherOrderController {
 
     @Resource
     private IVoucherOrderService voucherOrderService;
+    @Resource
+    private SeckillStock seckillStock;
+    @Resource
+    private OrderStreamConsumer orderStreamConsumer;
 
     @PostMapping("seckill/{id}")
     public Result seckillVoucher(@PathVariable("id") Long voucherId) {
 
         return voucherOrderService.seckillVoucher(voucherId);
     }
+
+    /**
+     * 查询本节点的秒杀售完标记和本地拒绝次数
+     * @return 已售完的券、本地拒绝次数、分片券数量
+     */
+    @GetMapping("seckill/stats")
+    public Result seckillStats() {
+        return Result.ok(seckillStock.stats());
+    }
+
+    /**
+     * 查询订单消费者的分区分配、吞吐，以及每个分区的积压和各消费者未确认的消息数
+     * @return 存活节点、各线程的分区、批量参数、吞吐和每条订单的平均耗时、每个分区的 length/pending/lag/consumers
+     */
+    @GetMapping("seckill/consumer/stats")
+    public Result consumerStats() {
+        return Result.ok(orderStreamConsumer.stats());
+    }
 }
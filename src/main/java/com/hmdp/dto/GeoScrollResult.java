@@ -0,0 +1,14 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class GeoScrollResult {
+    private List<?> list;
+    /**
+     * 下一页的游标，没有更多数据时为null
+     */
+    private String cursor;
+}
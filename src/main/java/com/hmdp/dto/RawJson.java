@@ -0,0 +1,22 @@
+package com.hmdp.dto;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * 已经是接口响应格式的JSON，作为 Result 的 data 时原样写入响应，不再反序列化和重新序列化
+ */
+public class RawJson {
+
+    private final String json;
+
+    public RawJson(String json) {
+        this.json = json;
+    }
+
+    @JsonValue
+    @JsonRawValue
+    public String getJson() {
+        return json;
+    }
+}
@@ -106,4 +106,27 @@ public class Shop implements Serializable {
 
     @TableField(exist = false)
     private Double distance;
+
+    /**
+     * 浅拷贝所有字段，缓存中共享的对象在设置距离前先复制
+     */
+    public Shop copy() {
+        return new Shop()
+                .setId(id)
+                .setName(name)
+                .setTypeId(typeId)
+                .setImages(images)
+                .setArea(area)
+                .setAddress(address)
+                .setX(x)
+                .setY(y)
+                .setAvgPrice(avgPrice)
+                .setSold(sold)
+                .setComments(comments)
+                .setScore(score)
+                .setOpenHours(openHours)
+                .setCreateTime(createTime)
+                .setUpdateTime(updateTime)
+                .setDistance(distance);
+    }
 }
@@ -2,6 +2,9 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +16,15 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface VoucherOrderMapper extends BaseMapper<VoucherOrder> {
 
+    /**
+     * 一条多行 INSERT IGNORE 写入一批订单，违反 (user_id, voucher_id) 唯一索引或主键的订单被忽略。
+     * IGNORE 也会把截断、NOT NULL之类的错误降为警告，三个字段都是调用方给出的BIGINT，不会出现这类错误
+     * @return 实际写入的订单数，不含被忽略的订单
+     */
+    int insertIgnoreBatch(@Param("orders") List<VoucherOrder> orders);
+
+    /**
+     * (user_id, voucher_id) 唯一索引 uk_user_voucher 的列数，索引不存在时为0
+     */
+    int countUniqueIndex();
 }
@@ -4,6 +4,9 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * <p>
  *  服务类
@@ -16,7 +19,33 @@ public interface IShopService extends IService<Shop> {
 
     Result queryById(Long id);
 
+    CompletableFuture<Result> queryByIdAsync(Long id);
+
+    Result saveShop(Shop shop);
+
     Result update(Shop shop);
 
+    Result deleteShop(Long id);
+
     Result queryShopByType(Integer typeId, Integer current, Double x, Double y);
+
+    Result queryShopByTypeScroll(Integer typeId, Double x, Double y, String cursor);
+
+    /**
+     * 重建店铺id布隆过滤器
+     * @return 店铺数，其他节点正在重建时返回-1
+     */
+    long rebuildBloomFilter();
+
+    /**
+     * 过滤器还不存在时才构建，已经存在(之前构建过或其他节点刚构建完成)时直接使用
+     * @return 店铺数，没有构建时返回-1
+     */
+    long buildBloomFilterIfAbsent();
+
+    /**
+     * 从 tb_shop 流式重建所有类型的GEO集合
+     * @return 店铺数、类型数、耗时和吞吐，已经有重建在进行时返回null
+     */
+    Map<String, Object> reloadGeo();
 }
@@ -4,6 +4,8 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -16,5 +18,10 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
 
     Result seckillVoucher(Long voucherId);
 
-    void createVouchOrder(VoucherOrder voucherOrder);
+    /**
+     * 在一个事务中批量创建订单：按优惠券分组，每组一条 INSERT IGNORE，再按实际写入数用一个UPDATE扣减库存，
+     * 一人一单由唯一索引保证，重复投递的订单不扣库存；库存不够扣减时这一组全部不创建
+     * @return 实际创建的订单数，已下过单和库存不足的被跳过
+     */
+    int createVoucherOrders(List<VoucherOrder> orders);
 }
@@ -17,6 +17,8 @@ import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.HotKeyDetector;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
@@ -28,7 +30,9 @@ import javax.annotation.Resource;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -50,6 +54,10 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     private IUserService userService;
     @Resource
     private IFollowService followService;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private HotKeyDetector hotKeyDetector;
 
     @Override
     public Result queryBlogById(Long id) {
@@ -57,7 +65,7 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         if (blog == null) {
             return Result.fail("笔记不存在！");
         }
-        queryBlogUser(blog);
+        queryBlogUsers(Collections.singletonList(blog));
         // 查询 blog 是否被点赞了
         isBlogliked(blog);
         return Result.ok(blog);
@@ -73,11 +81,9 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
                 .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
         // 获取当前页数据
         List<Blog> records = page.getRecords();
-        // 查询用户
-        records.forEach(blog -> {
-            this.queryBlogUser(blog);
-            this.isBlogliked(blog);
-        });
+        // 批量查询用户
+        queryBlogUsers(records);
+        records.forEach(this::isBlogliked);
         return Result.ok(records);
     }
 
@@ -88,6 +94,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
 
         //判断当前用户是否已经点赞
         String key = RedisConstants.BLOG_LIKED_KEY + id;
+        // 点赞集合按用户读写，不做本地副本，只统计热度
+        hotKeyDetector.record(key);
         Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
         if (score==null) {
             //如果未点赞，可以点赞
@@ -110,14 +118,16 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
 
     @Override
     public Result queryBlogLikes(Long id) {
+        hotKeyDetector.record(RedisConstants.BLOG_LIKED_KEY + id);
         Set<String> top5 = stringRedisTemplate.opsForZSet().range(RedisConstants.BLOG_LIKED_KEY+id, 0, 4);
         if (top5==null||top5.isEmpty()) {
             return Result.ok(Collections.emptyList());
         }
         List<Long> ids = top5.stream().map(Long::valueOf).collect(Collectors.toList());
-        List<UserDTO> userDTOS = userService.listByIds(ids)
+        // 按点赞时间顺序返回
+        List<UserDTO> userDTOS = queryUserDTOs(ids)
                 .stream()
-                .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
+                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
 
         return Result.ok(userDTOS);
@@ -170,8 +180,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         }
         String idStr = StrUtil.join(",", ids);
         List<Blog> blogs = query().in("id", ids).last("order by field(id," + idStr + ")").list();
+        queryBlogUsers(blogs);
         for (Blog blog : blogs) {
-            queryBlogUser(blog);
             isBlogliked(blog);
         }
         ScrollResult r = new ScrollResult();
@@ -181,11 +191,31 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         return Result.ok(r);
     }
 
-    private void queryBlogUser(Blog blog) {
-        Long userId = blog.getUserId();
-        User user = userService.getById(userId);
-        blog.setName(user.getNickName());
-        blog.setIcon(user.getIcon());
+    private void queryBlogUsers(List<Blog> blogs) {
+        if (blogs.isEmpty()) {
+            return;
+        }
+        List<Long> userIds = blogs.stream().map(Blog::getUserId).collect(Collectors.toList());
+        List<UserDTO> users = queryUserDTOs(userIds);
+        for (int i = 0; i < blogs.size(); i++) {
+            UserDTO user = users.get(i);
+            if (user == null) {
+                continue;
+            }
+            blogs.get(i).setName(user.getNickName());
+            blogs.get(i).setIcon(user.getIcon());
+        }
+    }
+
+    /**
+     * 批量查询用户的昵称和头像。通过 IUserService.updateById 修改用户时会删除缓存；
+     * 其他方式(update(wrapper)、直接改库)修改的昵称、头像不会通知缓存，最多 CACHE_USER_TTL 分钟后生效
+     */
+    private List<UserDTO> queryUserDTOs(List<Long> userIds) {
+        return cacheClient.queryBatchWithPassThrough(RedisConstants.CACHE_USER_KEY, userIds, UserDTO.class,
+                ids -> userService.listByIds(ids).stream()
+                        .collect(Collectors.toMap(User::getId, user -> BeanUtil.copyProperties(user, UserDTO.class))),
+                RedisConstants.CACHE_USER_TTL, TimeUnit.MINUTES);
     }
 
     private void isBlogliked(Blog blog) {
@@ -198,6 +228,7 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         Long userId = user.getId();
         //判断当前用户是否已经点赞
         String key = "blog:liked:" + blog.getId();
+        hotKeyDetector.record(key);
         Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
         blog.setIsLike(score !=null);
     }
@@ -1,33 +1,39 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.hmdp.dto.GeoScrollResult;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.AsyncCacheClient;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheInvalidator;
 import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.RedisBloomFilter;
 import com.hmdp.utils.RedisData;
+import com.hmdp.utils.GeoGridIndex;
+import com.hmdp.utils.ShopGeoIndex;
+import com.hmdp.utils.ShopGeoSnapshot;
+import com.hmdp.utils.ShopHydrator;
 import com.hmdp.utils.SystemConstants;
-import org.springframework.data.geo.Distance;
-import org.springframework.data.geo.GeoResult;
-import org.springframework.data.geo.GeoResults;
-import org.springframework.data.redis.connection.RedisGeoCommands;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.domain.geo.GeoReference;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -38,22 +44,70 @@ import java.util.concurrent.TimeUnit;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
 
+    private static final String GEO_LOAD_SUFFIX = ":load";
+    private static final int GEO_LOAD_BATCH = 1000;
+
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
     @Resource
     private CacheClient cacheClient;
+    @Resource
+    private CacheInvalidator cacheInvalidator;
+    @Resource
+    private AsyncCacheClient asyncCacheClient;
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+    @Resource
+    private ShopGeoSnapshot shopGeoSnapshot;
+    @Resource
+    private ShopHydrator shopHydrator;
+
+    @Value("${hmdp.cache.async.enabled:false}")
+    private boolean asyncEnabled;
+    @Value("${hmdp.cache.bloom.enabled:false}")
+    private boolean bloomEnabled;
+    @Value("${hmdp.cache.bloom.expected-insertions:1000000}")
+    private long bloomExpectedInsertions;
+    @Value("${hmdp.cache.bloom.fpp:0.01}")
+    private double bloomFpp;
+
+    /**
+     * 已存在店铺id的布隆过滤器，未开启时为null
+     */
+    private RedisBloomFilter shopBloomFilter;
 
-    private boolean tryLock(String key) {
-        Boolean b = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
-        return BooleanUtil.isTrue(b);
+    @PostConstruct
+    public void initBloomFilter() {
+        if (!bloomEnabled) {
+            return;
+        }
+        shopBloomFilter = new RedisBloomFilter(stringRedisTemplate, RedisConstants.SHOP_BLOOM_KEY, bloomExpectedInsertions, bloomFpp);
+        cacheClient.registerBloomFilter(RedisConstants.CACHE_SHOP_KEY, shopBloomFilter);
     }
 
-    private void unLock(String key) {
-        stringRedisTemplate.delete(key);
+    @Override
+    public long rebuildBloomFilter() {
+        if (shopBloomFilter == null) {
+            return 0;
+        }
+        // 按id分页流式读取，不一次把整张表读进内存
+        return shopBloomFilter.rebuild(lastId -> listObjs(
+                new QueryWrapper<Shop>().select("id").gt("id", lastId).orderByAsc("id").last("limit 1000"),
+                o -> ((Number) o).longValue()
+        ));
+    }
+
+    @Override
+    public long buildBloomFilterIfAbsent() {
+        if (shopBloomFilter == null || shopBloomFilter.isReady()) {
+            return -1;
+        }
+        return rebuildBloomFilter();
     }
 
 
@@ -71,6 +125,16 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         return Result.ok(shop);
     }
 
+    @Override
+    public CompletableFuture<Result> queryByIdAsync(Long id) {
+        if (!asyncEnabled) {
+            return CompletableFuture.completedFuture(queryById(id));
+        }
+        // Redis往返期间不占用请求线程，查库在 AsyncCacheClient 的线程池中执行；命中的JSON直接透传，不解码再序列化
+        return asyncCacheClient.queryRawWithPassThrough(RedisConstants.CACHE_SHOP_KEY, id, Shop.class, this::getById, RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES)
+                .thenApply(Result::ok);
+    }
+
     public Shop quaryWithPassThrough(Long id) {
         //TODO 在Redis中查询
         String shop_key = RedisConstants.CACHE_SHOP_KEY + id;
@@ -97,86 +161,14 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     }
 
     public Shop quaryWithMutex(Long id) {
-        //TODO 在Redis中查询
-        String shop_key = RedisConstants.CACHE_SHOP_KEY + id;
-        String shopJson = stringRedisTemplate.opsForValue().get(shop_key);
-        String lock_key = RedisConstants.LOCK_SHOP_KEY + id;
-        //如果存在返回
-        Shop shop = null;
-        if (StrUtil.isNotBlank(shopJson)) {
-            shop = JSONUtil.toBean(shopJson, Shop.class);
-            return shop;
-        }
-        if (shopJson != null) {
-            return null;
-        }
-        try {
-            //互斥锁解决缓存击穿
-            // 4.1 获取互斥锁
-            if (!tryLock(lock_key)) {
-                // 4.2 判断互斥锁是否成功获取
-                Thread.sleep(50);
-                return quaryWithMutex(id);
-            }
-            //获取锁后查询数据库
-            shop = getById(id);
-            Thread.sleep(200);
-            if (shop == null) {
-                stringRedisTemplate.opsForValue().set(shop_key, "", RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES);
-                return null;
-            }
-            //将数据放到redis中
-            stringRedisTemplate.opsForValue().set(shop_key, JSONUtil.toJsonStr(shop), RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }finally {
-            unLock(lock_key);
-        }
-
-        //返回
-        return shop;
+        // 抢不到锁的线程等待重建完成通知，不再 sleep 后递归重试
+        return cacheClient.quaryWithMutex(RedisConstants.CACHE_SHOP_KEY, id, Shop.class, this::getById, RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
     }
 
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
-
     public Shop quaryWithLogicalExpire(Long id) {
-        //TODO 在Redis中查询
-        String shop_key = RedisConstants.CACHE_SHOP_KEY + id;
-        String shopJson = stringRedisTemplate.opsForValue().get(shop_key);
-        //如果存在返回
-        if (StrUtil.isBlank(shopJson)) {
-            return null;
-        }
-        //4 将Json反序列化为对象
-        RedisData redisData = JSONUtil.toBean(shopJson, RedisData.class);
-        JSONObject data = (JSONObject) redisData.getData();
-        Shop shop = JSONUtil.toBean(data, Shop.class);
-        LocalDateTime expireTime = redisData.getExpireTime();
-        // 5 判断是否过期
-        if (expireTime.isAfter(LocalDateTime.now())) {
-            return shop;
-        }
-        //5.2 过期了，需要缓存重建
-        //5.2.1缓存重建
-        // 5.2.2 获取互斥锁
-        String lock_key = RedisConstants.LOCK_SHOP_KEY + id;
-        boolean isLock = tryLock(lock_key);
-        // 5.2.3 判断是否获取成功(成功开启独立线程，实现缓存重建)
-        if(isLock){
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    this.saveShop2Redis(id, 20L);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }finally {
-                    //释放锁
-                    unLock(lock_key);
-                }
-            });
-        }
-        // 5.2.3 失败直接返回
-        return shop;
+        // 逻辑过期由CacheClient统一处理，重建任务提交到共用的有界线程池
+        return cacheClient.quaryWithLogicalExpire(RedisConstants.CACHE_SHOP_KEY, id, Shop.class, this::getById, 20L, TimeUnit.SECONDS);
     }
 
 
@@ -189,6 +181,19 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         stringRedisTemplate.opsForValue().set(RedisConstants.CACHE_SHOP_KEY + id, JSONUtil.toJsonStr(redisData));
     }
 
+    @Override
+    public Result saveShop(Shop shop) {
+        save(shop);
+        Long id = shop.getId();
+        if (shopBloomFilter != null) {
+            shopBloomFilter.put(id);
+        }
+        // 清掉之前可能缓存的空值
+        cacheInvalidator.invalidate(RedisConstants.CACHE_SHOP_KEY + id);
+        shopGeoIndex.changed(null, shop);
+        return Result.ok(id);
+    }
+
     @Override
     @Transactional
     public Result update(Shop shop) {
@@ -196,13 +201,81 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         if (id == null) {
             return Result.fail("id不能为空");
         }
+        boolean moved = shop.getX() != null || shop.getY() != null || shop.getTypeId() != null;
+        // 改坐标或类型时锁住这一行，拿到修改前的类型；在锁内取得GEO版本，提交后各节点按版本写GEO，并发修改按提交顺序生效
+        Shop old = moved ? query().eq("id", id).last("for update").one() : null;
+        if (moved && old == null) {
+            return Result.fail("店铺不存在");
+        }
         updateById(shop);
-        stringRedisTemplate.delete(RedisConstants.CACHE_SHOP_KEY + id);
+        // 事务提交后再删缓存
+        cacheInvalidator.invalidate(RedisConstants.CACHE_SHOP_KEY + id);
+        if (moved) {
+            // 可能只更新了部分字段，按更新后的完整数据更新GEO集合和空间索引
+            shopGeoIndex.changed(old.getTypeId(), getById(id));
+        }
         return Result.ok();
 
 
     }
 
+    @Override
+    @Transactional
+    public Result deleteShop(Long id) {
+        Shop old = query().eq("id", id).last("for update").one();
+        if (old == null) {
+            return Result.fail("店铺不存在");
+        }
+        removeById(id);
+        // 布隆过滤器不支持删除，已删除的id之后按空值缓存处理
+        cacheInvalidator.invalidate(RedisConstants.CACHE_SHOP_KEY + id);
+        shopGeoIndex.removed(old.getTypeId(), id);
+        return Result.ok();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Map<String, Object> reloadGeo() {
+        if (!shopGeoIndex.beginLoad(GEO_LOAD_SUFFIX)) {
+            return null;
+        }
+        long begin = System.currentTimeMillis();
+        long count = 0;
+        Set<Long> typeIds = new HashSet<>();
+        boolean completed = false;
+        // 游标流式读取，事务保证读取期间连接不被归还
+        try (Cursor<Shop> cursor = getBaseMapper().scanLocations()) {
+            List<Shop> batch = new ArrayList<>(GEO_LOAD_BATCH);
+            for (Shop shop : cursor) {
+                batch.add(shop);
+                typeIds.add(shop.getTypeId());
+                if (batch.size() == GEO_LOAD_BATCH) {
+                    shopGeoIndex.loadBatch(batch);
+                    count += batch.size();
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                shopGeoIndex.loadBatch(batch);
+                count += batch.size();
+            }
+            completed = true;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            typeIds.remove(null);
+            shopGeoIndex.finishLoad(typeIds, completed);
+        }
+        long ms = Math.max(1, System.currentTimeMillis() - begin);
+        log.info("GEO集合重建完成, 店铺{}个, 类型{}个, 耗时{}ms, {}个/秒", count, typeIds.size(), ms, count * 1000 / ms);
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("shops", count);
+        m.put("types", typeIds.size());
+        m.put("ms", ms);
+        m.put("shopsPerSecond", count * 1000 / ms);
+        return m;
+    }
+
     @Override
     public Result queryShopByType(Integer typeId, Integer current, Double x, Double y) {
         //判断是否需要根据坐标查询
@@ -217,34 +290,40 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         // 计算分页参数
         int from = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
         int end = current * SystemConstants.DEFAULT_PAGE_SIZE;
-        String key = RedisConstants.SHOP_GEO_KEY + typeId;
-        // 查询Redis，按照距离排序，分页。结果: shopId、distance
-        GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo().search(key,
-                GeoReference.fromCoordinate(x, y),
-                new Distance(5000),
-                RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().limit(end)
-        );
-        if (results == null) {
-            return Result.ok(Collections.emptyList());
-        }
-        // 解析id
-        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> list = results.getContent();
-        if (list.size() <= from) {
-            return Result.ok(Collections.emptyList());
-        }
-        List<Long> ids = new ArrayList<>(list.size());
-        Map<String, Distance> distanceMap = new HashMap<>(list.size());
-        list.stream().skip(from).forEach(result->{
-            String shopIdStr = result.getContent().getName();
-            ids.add(Long.valueOf(shopIdStr));
-            Distance distance = result.getDistance();
-            distanceMap.put(shopIdStr, distance);
-        });
-        List<Shop> shops = query().in("id", ids).last("ORDER BY FIELD(id," + StrUtil.join(",", ids) + ")").list();
-        for (Shop shop : shops) {
-            shop.setDistance(distanceMap.get(shop.getId().toString()).getValue());
-        }
-        return Result.ok(shops);
+        if (end <= shopGeoSnapshot.getMaxSize()) {
+            // 同一格子内的用户共用搜索快照，翻页只截取快照
+            ShopGeoSnapshot.Slice slice = shopGeoSnapshot.slice(typeId, x, y, from, SystemConstants.DEFAULT_PAGE_SIZE);
+            return Result.ok(shopHydrator.hydrate(slice.getIds(), slice.getDistances()));
+        }
+        // 超出快照范围的页直接搜索
+        List<GeoGridIndex.Hit> hits = shopGeoIndex.search(typeId, x, y, shopGeoSnapshot.getRadiusMeters(), end);
+        int n = Math.max(0, hits.size() - from);
+        long[] ids = new long[n];
+        double[] distances = new double[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = hits.get(from + i).getId();
+            distances[i] = hits.get(from + i).getDistance();
+        }
+        return Result.ok(shopHydrator.hydrate(ids, distances));
+    }
 
+    @Override
+    public Result queryShopByTypeScroll(Integer typeId, Double x, Double y, String cursor) {
+        ShopGeoSnapshot.Slice slice;
+        if (StrUtil.isNotBlank(cursor)) {
+            slice = shopGeoSnapshot.next(cursor, SystemConstants.DEFAULT_PAGE_SIZE);
+            if (slice == null) {
+                return Result.fail("游标无效、已过期或搜索结果已更新，请重新查询");
+            }
+        } else {
+            if (typeId == null || x == null || y == null) {
+                return Result.fail("首次查询需要typeId和坐标");
+            }
+            slice = shopGeoSnapshot.slice(typeId, x, y, 0, SystemConstants.DEFAULT_PAGE_SIZE);
+        }
+        GeoScrollResult r = new GeoScrollResult();
+        r.setList(shopHydrator.hydrate(slice.getIds(), slice.getDistances()));
+        r.setCursor(slice.getCursor());
+        return Result.ok(r);
     }
 }
@@ -11,6 +11,7 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheInvalidator;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RegexUtils;
 import com.hmdp.utils.UserHolder;
@@ -48,6 +49,20 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
 
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private CacheInvalidator cacheInvalidator;
+
+    /**
+     * 修改用户后删除博客列表使用的用户缓存 cache:user:{id}，在事务中调用时提交后删除
+     */
+    @Override
+    public boolean updateById(User entity) {
+        boolean updated = super.updateById(entity);
+        if (updated) {
+            cacheInvalidator.invalidate(RedisConstants.CACHE_USER_KEY + entity.getId());
+        }
+        return updated;
+    }
 
     @Override
     public Result sendCode(String phone, HttpSession session) {
@@ -157,7 +172,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
     public Result logout(HttpServletRequest request) {
         String authorization = request.getHeader("authorization");
         String key = RedisConstants.LOGIN_USER_KEY + authorization;
-        stringRedisTemplate.delete(key);
+        // 热点token在各节点可能有本地副本，一起清掉
+        cacheInvalidator.invalidate(key);
         return Result.ok();
     }
 
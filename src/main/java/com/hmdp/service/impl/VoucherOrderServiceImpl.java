@@ -1,35 +1,30 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.CacheMetrics;
+import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.SeckillStock;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
-import org.springframework.core.io.ClassPathResource;
-import org.springframework.data.redis.connection.stream.*;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
-import java.time.Duration;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
 /**
  * <p>
@@ -46,96 +41,17 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Resource
     private ISeckillVoucherService seckillVoucherService;
     @Resource
-    private RedisIdWorker redisIdWorker;
-    @Resource
     private StringRedisTemplate stringRedisTemplate;
-
     @Resource
-    private RedissonClient redissionClient;
+    private CacheMetrics cacheMetrics;
+    @Resource
+    private SeckillStock seckillStock;
 
-    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
-    static {
-        SECKILL_SCRIPT = new DefaultRedisScript<>();
-        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
-        SECKILL_SCRIPT.setResultType(Long.class);
-    }
+    @Resource
+    private TransactionTemplate transactionTemplate;
 
 //    private BlockingQueue<VoucherOrder> orderTasks = new ArrayBlockingQueue<>(1024*1024);
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
-
-    private IVoucherOrderService proxy;
-
-    @PostConstruct
-    public  void  init(){
-        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
-    }
-
-
-
-    private class VoucherOrderHandler implements Runnable{
-        String queueName = "stream.orders";
-        @Override
-        public void run() {
-            while(true){
-                try {
-                    //1.获取消息队列中的订单信息 XREADGROUP GROUP g1 c1 COUNT 1 BLOCK 2000 STREAMS streams.order >
-                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
-                            StreamOffset.create(queueName, ReadOffset.lastConsumed())
-                    );
-                    // 判断消息是否获取成功
-                    if (list == null || list.isEmpty()) {
-                        // 如果为null，说明没有消息，继续下一次循环
-                        continue;
-                    }
-                    // 如果有订单，则开始下单.通知消息队列消息已被处理（ACK确认）
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> value = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(value, new VoucherOrder(), false);
-                    //2.创建订单
-                    handleVoucherOrder(voucherOrder);
-                    stringRedisTemplate.opsForStream().acknowledge(queueName,"g1",record.getId());
-                } catch (Exception e) {
-                    log.error("处理订单异常",e);
-                    handlePendingList();
-                }
-            }
-        }
-
-        private void handlePendingList(){
-            while(true){
-                try {
-                    //1.获取消息队列中的订单信息 XREADGROUP GROUP g1 c1 COUNT 1 BLOCK 2000 STREAMS streams.order 0
-                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1),
-                            StreamOffset.create(queueName, ReadOffset.from("0"))
-                    );
-                    // 判断消息是否获取成功
-                    if (list == null || list.isEmpty()) {
-                        // 如果为null，说明没有消息，继续下一次循环
-                        break;
-                    }
-                    // 如果有订单，则开始下单.通知消息队列消息已被处理（ACK确认）
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> value = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(value, new VoucherOrder(), false);
-                    //2.创建订单
-                    handleVoucherOrder(voucherOrder);
-                    stringRedisTemplate.opsForStream().acknowledge(queueName,"g1",record.getId());
-                } catch (Exception e) {
-                    log.error("处理pending_list异常",e);
-                    try {
-                        Thread.sleep(20);
-                    } catch (InterruptedException ex) {
-                        throw new RuntimeException(ex);
-                    }
-                }
-            }
-        }
-    }
-
+    // 订单消息由 OrderStreamConsumer 消费
 
 //    private class VoucherOrderHandler implements Runnable{
 //        @Override
@@ -154,27 +70,31 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 //    }
 
 
+    /**
+     * 一人一单和重复投递的订单都依赖唯一索引，缺少索引时 INSERT IGNORE 挡不住重复订单，启动直接失败。
+     * 已有的库执行 db/migration/tb_voucher_order_uk_user_voucher.sql 加索引
+     */
+    @PostConstruct
+    public void checkUniqueIndex() {
+        if (getBaseMapper().countUniqueIndex() == 0) {
+            throw new IllegalStateException("tb_voucher_order 缺少唯一索引 uk_user_voucher(user_id, voucher_id)，"
+                    + "请先执行 db/migration/tb_voucher_order_uk_user_voucher.sql");
+        }
+    }
+
     @Override
     public Result seckillVoucher(Long voucherId) {
         long userId = UserHolder.getUser().getId();
-        long orderId = redisIdWorker.nextId("order");
-        //1.执行lua脚本
-        Long result = stringRedisTemplate.execute(
-                SECKILL_SCRIPT,
-                Collections.emptyList(),
-                voucherId.toString(),
-                String.valueOf(userId),
-                String.valueOf(orderId)
-        );
-        //2.判断结果是否为0（不为0代表没有购买资格）
-        int r = result.intValue();
-        if(r!=0){
-            return Result.fail(r == 1 ? "库存不足" : "不能重复下单");
+        //1.执行lua脚本，已知售完的券在本地直接拒绝；通过资格判断后才在脚本里分配订单id
+        long start = System.nanoTime();
+        long orderId = seckillStock.tryAcquire(voucherId, userId);
+        cacheMetrics.latency(RedisConstants.SECKILL_STOCK_KEY, start);
+        //2.判断结果（小于0代表没有购买资格）
+        if(orderId<0){
+            return Result.fail(orderId == SeckillStock.SOLD_OUT ? "库存不足" : "不能重复下单");
         }
         //为0，有购买资格，把下单信息保存到阻塞队列
         log.info("用户:"+UserHolder.getUser().getId().toString()+"正在下单");
-        //获取代理对象
-        proxy = (IVoucherOrderService)AopContext.currentProxy();
 
         return Result.ok(orderId);
     }
@@ -209,100 +129,50 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 //        return Result.ok(orderId);
 //    }
 
-    private void handleVoucherOrder(VoucherOrder voucherOrder) {
-        //创建锁对象
-        //SimpleRedisLock simpleRedisLock = new SimpleRedisLock("order:" + userId, stringRedisTemplate);
-        Long userId = voucherOrder.getUserId();
-        RLock lock = redissionClient.getLock("lock:order:" + userId);
-        boolean isLock = lock.tryLock();
+    @Override
+    public int createVoucherOrders(List<VoucherOrder> orders) {
+        Integer created = transactionTemplate.execute(status -> {
+            Map<Long, List<VoucherOrder>> byVoucher = orders.stream()
+                    .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, LinkedHashMap::new, Collectors.toList()));
+            int total = 0;
+            for (Map.Entry<Long, List<VoucherOrder>> entry : byVoucher.entrySet()) {
+                total += createVoucherOrders(status, entry.getKey(), entry.getValue());
+            }
+            return total;
+        });
+        return created == null ? 0 : created;
+    }
 
-        if (!isLock) {
-            log.error("不允许重复下单");
-            return;
+    /**
+     * 同一张券的一组订单：先用 INSERT IGNORE 写入，影响行数不含被唯一索引忽略的重复订单，再按实际写入数扣减库存。
+     * 每组一条多行INSERT和一个UPDATE，重复判断由唯一索引完成，不依赖隔离级别；库存不够时只回滚这一组
+     */
+    private int createVoucherOrders(TransactionStatus status, Long voucherId, List<VoucherOrder> group) {
+        // 同一批内同一用户的重复消息只保留一条
+        Map<Long, VoucherOrder> byUser = new LinkedHashMap<>(group.size());
+        for (VoucherOrder order : group) {
+            byUser.putIfAbsent(order.getUserId(), order);
         }
-        // 获取代理对象
-        // Transactional事物注解由SpringBoot代理实现，所以无法直接使用this.[method]需要先获取代理对象再调用方法
-        try{
-            proxy.createVouchOrder(voucherOrder);
-        }finally {
-            lock.unlock();
+        Object savepoint = status.createSavepoint();
+        int inserted = getBaseMapper().insertIgnoreBatch(new ArrayList<>(byUser.values()));
+        if (inserted < byUser.size()) {
+            log.info("优惠券{}有{}个订单已经处理过", voucherId, byUser.size() - inserted);
         }
-
-    }
-
-//    @Override
-//    public Result seckillVoucher(Long voucherId) {
-//        // 1. 查询优惠券
-//        SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
-//        // 2. 判断秒杀是否开始
-//        if (voucher.getBeginTime().isAfter(LocalDateTime.now())) {
-//            return Result.fail("秒杀尚未开始");
-//        }
-//        // 3. 判断秒杀是否结束
-//        if (voucher.getEndTime().isBefore(LocalDateTime.now())) {
-//            return Result.fail("秒杀已经结束");
-//        }
-//        // 4. 判断库存是否充足 - 扣减库存
-//        if (voucher.getStock() < 1) {
-//            return Result.fail("库存不足");
-//        }
-//        boolean success = seckillVoucherService.update()
-//                .setSql("stock = stock - 1")
-//                .eq("voucher_id", voucherId)
-//                .gt("stock", 0)
-//                .update();
-//        if (!success) {
-//            return Result.fail("库存不足");
-//        }
-//        //一人一单
-//        Long userId = UserHolder.getUser().getId();
-//        //创建锁对象
-//        //SimpleRedisLock simpleRedisLock = new SimpleRedisLock("order:" + userId, stringRedisTemplate);
-//        RLock lock = redissionClient.getLock("lock:order:" + userId);
-//        boolean isLock = lock.tryLock();
-//
-//        if (!isLock) {
-//            return Result.fail("不允许重复下单");
-//        }
-//        // 获取代理对象
-//        // Transactional事物注解由SpringBoot代理实现，所以无法直接使用this.[method]需要先获取代理对象再调用方法
-//        try{
-//            IVoucherOrderService proxy = (IVoucherOrderService)AopContext.currentProxy();
-//            return proxy.createVouchOrder(voucherId);
-//        }finally {
-//            lock.unlock();
-//        }
-//
-//    }
-
-
-
-    @Transactional
-    public void createVouchOrder(VoucherOrder voucherOrder) {
-        Long userId = voucherOrder.getUserId();
-
-        int count = query().eq("user_id", userId)
-                .eq("voucher_id", voucherOrder.getVoucherId())
-                .count();
-        if (count > 0) {
-            log.error("用户已经购买过一次！");
-            return;
+        if (inserted == 0) {
+            status.releaseSavepoint(savepoint);
+            return 0;
         }
-
-        // 6. 扣减库存
-        boolean success = seckillVoucherService.update()
-                .setSql("stock = stock - 1")
-                .eq("voucher_id", voucherOrder.getVoucherId())
-                .gt("stock", 0)
-                .update();
-        if (!success) {
-            log.error("库存不足！");
-            return;
+        if (!seckillVoucherService.update()
+                .setSql("stock = stock - " + inserted)
+                .eq("voucher_id", voucherId)
+                .ge("stock", inserted)
+                .update()) {
+            status.rollbackToSavepoint(savepoint);
+            log.error("库存不足！优惠券{}的{}个订单没有创建", voucherId, inserted);
+            return 0;
         }
-        log.info("用户:"+userId+"下单成功");
-        // 5. 创建订单
-        save(voucherOrder);
-
-
+        status.releaseSavepoint(savepoint);
+        return inserted;
     }
+
 }
@@ -0,0 +1,334 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.RawJson;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * CacheClient 的异步版本，基于 Lettuce 异步命令，Redis 往返期间不占用请求线程。
+ * 数据格式、空值、布隆过滤器、本地副本和逻辑过期的语义都与 CacheClient 一致，两者写入的数据可以互相读取。
+ * 查库是阻塞的JDBC调用，放在单独的有界线程池里执行，同一节点同一key的并发查库会合并为一次。
+ * 解压和解码在解码线程池中执行，Lettuce 的IO线程只负责收发命令。
+ */
+@Slf4j
+@Component
+public class AsyncCacheClient {
+
+    private static final byte[] NULL_VALUE = new byte[0];
+    private static final byte[] LOCK_VALUE = "1".getBytes(StandardCharsets.UTF_8);
+
+    @Resource
+    private RedisClusterAsyncCommands<String, byte[]> commands;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private CacheRebuildExecutor rebuildExecutor;
+    @Resource
+    private CacheMetrics cacheMetrics;
+    @Resource
+    private CacheCompressor cacheCompressor;
+    @Resource
+    private CacheBucketLayout bucketLayout;
+
+    @Value("${hmdp.cache.async.db-threads:20}")
+    private int dbThreads;
+    @Value("${hmdp.cache.async.db-queue-capacity:1000}")
+    private int dbQueueCapacity;
+    @Value("${hmdp.cache.async.decode-threads:4}")
+    private int decodeThreads;
+    @Value("${hmdp.cache.async.decode-queue-capacity:10000}")
+    private int decodeQueueCapacity;
+
+    /**
+     * 执行数据库查询的线程池，队列满时直接让调用失败，不阻塞 Lettuce 的IO线程
+     */
+    private ThreadPoolExecutor dbExecutor;
+    /**
+     * 解压和解码Redis返回值的线程池，队列满时让调用失败
+     */
+    private ThreadPoolExecutor decodeExecutor;
+
+    /**
+     * 正在查库的key -> 查询结果
+     */
+    private final Map<String, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger seq = new AtomicInteger();
+        dbExecutor = new ThreadPoolExecutor(dbThreads, dbThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(dbQueueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "cache-db-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        AtomicInteger decodeSeq = new AtomicInteger();
+        decodeExecutor = new ThreadPoolExecutor(decodeThreads, decodeThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(decodeQueueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "cache-decode-" + decodeSeq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        dbExecutor.shutdown();
+        decodeExecutor.shutdown();
+    }
+
+    /**
+     * 异步缓存穿透查询，布隆过滤器的GETBIT和GET同时发出
+     */
+    public <R,ID> CompletableFuture<R> queryWithPassThrough(String keyPrefix, ID id, Class<R> type,
+                                                          Function<ID,R> dbFallback, Long time, TimeUnit unit) {
+        return passThrough(keyPrefix, id, type, dbFallback, time, unit, false).thenApply(type::cast);
+    }
+
+    /**
+     * 同 queryWithPassThrough，但Redis命中且值已是响应格式的JSON时不解码，直接返回 {@link RawJson}。
+     * 热点key仍解码一次写入本地副本；其余key把 RawJson 放进一级缓存，之后的透传请求直接从一级缓存返回。
+     * 按类型读取的调用方读到 RawJson 时当作一级缓存未命中，解码后用对象替换它。
+     * @return RawJson、R 或 null
+     */
+    public <R,ID> CompletableFuture<Object> queryRawWithPassThrough(String keyPrefix, ID id, Class<R> type,
+                                                                  Function<ID,R> dbFallback, Long time, TimeUnit unit) {
+        return passThrough(keyPrefix, id, type, dbFallback, time, unit, true);
+    }
+
+    private <R,ID> CompletableFuture<Object> passThrough(String keyPrefix, ID id, Class<R> type,
+                                                         Function<ID,R> dbFallback, Long time, TimeUnit unit, boolean raw) {
+        String key = keyPrefix + id;
+        // 透传时一级缓存里的对象和 RawJson 都可以直接返回
+        Class<?> localType = raw ? Object.class : type;
+        Object local = cacheClient.getLocal(keyPrefix, key, localType);
+        if (local != null && (type.isInstance(local) || local instanceof RawJson)) {
+            cacheMetrics.hit(keyPrefix);
+            return CompletableFuture.completedFuture(local);
+        }
+        long start = System.nanoTime();
+        CompletableFuture<Boolean> mightContain = mightContain(keyPrefix, id);
+        CompletableFuture<byte[]> value = getRaw(key);
+        // 布隆过滤器的回复可能最后到达，合并后的解码同样放到解码线程池
+        return mightContain.thenCombineAsync(value, (exists, bytes) -> {
+            cacheMetrics.latency(keyPrefix, start);
+            if (!exists) {
+                cacheMetrics.nullHit(keyPrefix);
+                return CompletableFuture.completedFuture(null);
+            }
+            if (bytes != null && bytes.length == 0) {
+                cacheMetrics.nullHit(keyPrefix);
+                return CompletableFuture.completedFuture(null);
+            }
+            if (bytes != null) {
+                if (raw && !cacheClient.isHot(key)) {
+                    String json = cacheClient.getCodec().toRawJson(bytes);
+                    if (json != null) {
+                        cacheMetrics.hit(keyPrefix);
+                        RawJson rawJson = new RawJson(json);
+                        cacheClient.putLocal(key, rawJson);
+                        return CompletableFuture.<Object>completedFuture(rawJson);
+                    }
+                }
+                R bean = cacheClient.getCodec().decode(bytes, type);
+                if (bean != null) {
+                    cacheMetrics.hit(keyPrefix);
+                    cacheClient.putLocal(key, bean);
+                    return CompletableFuture.<Object>completedFuture(bean);
+                }
+            }
+            cacheMetrics.miss(keyPrefix);
+            return load(key, id, type, dbFallback, time, unit).<Object>thenApply(r -> r);
+        }, decodeExecutor).thenCompose(Function.identity());
+    }
+
+    /**
+     * 异步逻辑过期查询，过期时提交后台重建并立即返回旧值
+     */
+    public <R,ID> CompletableFuture<R> queryWithLogicalExpire(String keyPrefix, ID id, Class<R> type,
+                                                            Function<ID,R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        long start = System.nanoTime();
+        return getRaw(key).thenApply(bytes -> {
+            cacheMetrics.latency(keyPrefix, start);
+            if (bytes == null || bytes.length == 0) {
+                if (bytes == null) {
+                    cacheMetrics.miss(keyPrefix);
+                } else {
+                    cacheMetrics.nullHit(keyPrefix);
+                }
+                return null;
+            }
+            RedisData redisData = cacheClient.getCodec().decodeWithExpire(bytes, type);
+            if (redisData == null) {
+                cacheMetrics.miss(keyPrefix);
+                return null;
+            }
+            cacheMetrics.hit(keyPrefix);
+            R r = type.cast(redisData.getData());
+            if (redisData.getExpireTime().isBefore(LocalDateTime.now())) {
+                rebuildAsync(keyPrefix, key, CacheClient.lockKey(keyPrefix, id), () -> {
+                    R fresh = dbFallback.apply(id);
+                    if (fresh == null) {
+                        setRaw(key, NULL_VALUE, TimeUnit.MINUTES.toMillis(RedisConstants.CACHE_NULL_TTL));
+                        return;
+                    }
+                    cacheClient.setWithLogicalExpire(key, fresh, time, unit);
+                });
+            }
+            return r;
+        });
+    }
+
+    /**
+     * 读取原始字节，在解码线程池中按存储布局去掉过期时间戳并解压，之后的解码也在该线程上执行
+     */
+    private CompletableFuture<byte[]> getRaw(String key) {
+        CompletableFuture<byte[]> reply = bucketLayout.isBucketed(key)
+                ? commands.hget(bucketLayout.bucketKey(key), bucketLayout.fieldName(key)).toCompletableFuture()
+                : commands.get(key).toCompletableFuture();
+        return reply.thenApplyAsync(bytes -> cacheCompressor.decompress(key, bucketLayout.read(key, bytes)), decodeExecutor);
+    }
+
+    /**
+     * 压缩后按存储布局写入
+     */
+    private CompletableFuture<?> setRaw(String key, byte[] bytes, long ttlMillis) {
+        byte[] value = cacheCompressor.compress(key, bytes);
+        if (bucketLayout.isBucketed(key)) {
+            byte[][] args = {bucketLayout.field(key), bucketLayout.wrap(value, ttlMillis),
+                    String.valueOf(ttlMillis).getBytes(StandardCharsets.UTF_8)};
+            return evalBucketScript(new String[]{bucketLayout.bucketKey(key)}, args);
+        }
+        return commands.psetex(key, ttlMillis, value).toCompletableFuture();
+    }
+
+    /**
+     * 和 Spring 的 ScriptUtils 一样先 EVALSHA，节点上没有该脚本(NOSCRIPT)时用 EVAL 发送一次，之后都只发SHA1
+     */
+    private CompletableFuture<Long> evalBucketScript(String[] keys, byte[][] args) {
+        return commands.<Long>evalsha(bucketLayout.getScriptSha1(), ScriptOutputType.INTEGER, keys, args).toCompletableFuture()
+                .handle((r, e) -> {
+                    if (e == null) {
+                        return CompletableFuture.completedFuture(r);
+                    }
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof RedisNoScriptException) {
+                        return commands.<Long>eval(bucketLayout.getScript(), ScriptOutputType.INTEGER, keys, args).toCompletableFuture();
+                    }
+                    CompletableFuture<Long> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(cause);
+                    return failed;
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private <ID> CompletableFuture<Boolean> mightContain(String keyPrefix, ID id) {
+        RedisBloomFilter bloomFilter = cacheClient.getBloomFilter(keyPrefix);
+        if (bloomFilter == null || !bloomFilter.isReady()) {
+            return CompletableFuture.completedFuture(true);
+        }
+        long[] offsets = bloomFilter.offsets(id);
+        List<CompletableFuture<Long>> bits = new ArrayList<>(offsets.length);
+        for (long offset : offsets) {
+            bits.add(commands.getbit(bloomFilter.getKey(), offset).toCompletableFuture());
+        }
+        return CompletableFuture.allOf(bits.toArray(new CompletableFuture[0])).thenApply(v -> {
+            List<Object> replies = new ArrayList<>(bits.size());
+            for (CompletableFuture<Long> bit : bits) {
+                replies.add(bit.join() == 1L);
+            }
+            return bloomFilter.checkBits(replies, 0);
+        });
+    }
+
+    /**
+     * 在查库线程池中加载并写回Redis，同一key并发加载只执行一次
+     */
+    private <R,ID> CompletableFuture<R> load(String key, ID id, Class<R> type,
+                                            Function<ID,R> dbFallback, Long time, TimeUnit unit) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = loading.putIfAbsent(key, future);
+        if (inFlight != null) {
+            return inFlight.thenApply(type::cast);
+        }
+        try {
+            dbExecutor.execute(() -> {
+                try {
+                    R r = dbFallback.apply(id);
+                    byte[] bytes = r == null ? NULL_VALUE : cacheClient.getCodec().encode(r);
+                    long ttlMillis = r == null ? TimeUnit.MINUTES.toMillis(RedisConstants.CACHE_NULL_TTL) : unit.toMillis(time);
+                    cacheClient.putLocal(key, r);
+                    future.complete(r);
+                    // 写回确认后才移除，期间到达的请求直接复用结果
+                    setRaw(key, bytes, ttlMillis).whenComplete((ok, e) -> {
+                        loading.remove(key, future);
+                        if (e != null) {
+                            log.error("缓存写回失败, key={}", key, e);
+                        }
+                    });
+                } catch (Exception e) {
+                    loading.remove(key, future);
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            loading.remove(key, future);
+            future.completeExceptionally(e);
+        }
+        return future.thenApply(type::cast);
+    }
+
+    /**
+     * 异步抢锁，抢到后把重建任务交给共用的重建线程池，任务结束或被拒绝都会释放锁
+     */
+    private void rebuildAsync(String keyPrefix, String key, String lockKey, Runnable rebuild) {
+        if (rebuildExecutor.isPending(key)) {
+            return;
+        }
+        commands.set(lockKey, LOCK_VALUE, SetArgs.Builder.nx().ex(10)).thenAccept(ok -> {
+            if (!"OK".equals(ok)) {
+                return;
+            }
+            boolean accepted = rebuildExecutor.submit(key, () -> {
+                try {
+                    rebuild.run();
+                } finally {
+                    commands.del(lockKey);
+                }
+            });
+            if (accepted) {
+                cacheMetrics.rebuild(keyPrefix);
+            } else {
+                commands.del(lockKey);
+            }
+        });
+    }
+}
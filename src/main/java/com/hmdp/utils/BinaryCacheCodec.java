@@ -0,0 +1,379 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 紧凑的二进制编解码，适用于 Shop、User 这类字段都是基本类型/字符串/时间的实体。
+ * <pre>
+ * [MAGIC 1字节][flags 1字节][schema hash 4字节][逻辑过期时间 8字节][加载耗时 变长][null位图][各字段值]
+ * </pre>
+ * 逻辑过期时间和加载耗时只在 flags 带对应标记时存在。字段按名字排序，整数用 zigzag 变长编码，字符串为 变长长度+UTF-8。
+ * 实体字段变化后 schema hash 不一致，旧数据解码为null按未命中处理；不是以 MAGIC 开头的数据按JSON解码，兼容切换前的缓存。
+ */
+@Component
+public class BinaryCacheCodec implements CacheCodec {
+
+    private static final byte MAGIC = (byte) 0xB1;
+    private static final byte FLAG_EXPIRE = 1;
+    private static final byte FLAG_DELTA = 2;
+
+    private final JsonCacheCodec jsonCodec = new JsonCacheCodec();
+    private final Map<Class<?>, Schema> schemas = new ConcurrentHashMap<>();
+
+    @Override
+    public String name() {
+        return "binary";
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return write(value, false, 0, 0);
+    }
+
+    @Override
+    public <R> R decode(byte[] bytes, Class<R> type) {
+        if (bytes.length == 0 || bytes[0] != MAGIC) {
+            return jsonCodec.decode(bytes, type);
+        }
+        Reader in = new Reader(bytes);
+        byte flags = in.readByte();
+        int hash = in.readInt();
+        if ((flags & FLAG_EXPIRE) != 0) {
+            in.readLong();
+        }
+        if ((flags & FLAG_DELTA) != 0) {
+            in.readVarLong();
+        }
+        return readFields(in, hash, type);
+    }
+
+    @Override
+    public byte[] encodeWithExpire(Object value, LocalDateTime expireTime, long delta) {
+        return write(value, true, expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), delta);
+    }
+
+    @Override
+    public <R> RedisData decodeWithExpire(byte[] bytes, Class<R> type) {
+        if (bytes.length == 0 || bytes[0] != MAGIC) {
+            return jsonCodec.decodeWithExpire(bytes, type);
+        }
+        Reader in = new Reader(bytes);
+        byte flags = in.readByte();
+        int hash = in.readInt();
+        if ((flags & FLAG_EXPIRE) == 0) {
+            return null;
+        }
+        long expireMillis = in.readLong();
+        Long delta = (flags & FLAG_DELTA) != 0 ? in.readVarLong() : null;
+        R data = readFields(in, hash, type);
+        if (data == null) {
+            return null;
+        }
+        RedisData redisData = new RedisData();
+        redisData.setExpireTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(expireMillis), ZoneId.systemDefault()));
+        redisData.setData(data);
+        redisData.setDelta(delta);
+        return redisData;
+    }
+
+    private byte[] write(Object value, boolean withExpire, long expireMillis, long delta) {
+        Schema schema = schemaOf(value.getClass());
+        Writer out = new Writer(128);
+        out.writeByte(MAGIC);
+        out.writeByte((withExpire ? FLAG_EXPIRE : 0) | (delta > 0 ? FLAG_DELTA : 0));
+        out.writeInt(schema.hash);
+        if (withExpire) {
+            out.writeLong(expireMillis);
+        }
+        if (delta > 0) {
+            out.writeVarLong(delta);
+        }
+        FieldCodec[] fields = schema.fields;
+        Object[] values = new Object[fields.length];
+        byte[] nullBits = new byte[(fields.length + 7) >>> 3];
+        for (int i = 0; i < fields.length; i++) {
+            values[i] = fields[i].get(value);
+            if (values[i] == null) {
+                nullBits[i >>> 3] |= (byte) (1 << (i & 7));
+            }
+        }
+        out.writeBytes(nullBits);
+        for (int i = 0; i < fields.length; i++) {
+            if (values[i] != null) {
+                fields[i].write(out, values[i]);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private <R> R readFields(Reader in, int hash, Class<R> type) {
+        Schema schema = schemaOf(type);
+        if (schema.hash != hash) {
+            return null;
+        }
+        R bean;
+        try {
+            bean = type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("无法实例化 " + type.getName(), e);
+        }
+        FieldCodec[] fields = schema.fields;
+        byte[] nullBits = in.readBytes((fields.length + 7) >>> 3);
+        for (int i = 0; i < fields.length; i++) {
+            if ((nullBits[i >>> 3] & (1 << (i & 7))) == 0) {
+                fields[i].set(bean, fields[i].read(in));
+            }
+        }
+        return bean;
+    }
+
+    private Schema schemaOf(Class<?> type) {
+        Schema schema = schemas.get(type);
+        return schema != null ? schema : schemas.computeIfAbsent(type, Schema::new);
+    }
+
+    private static class Schema {
+        final FieldCodec[] fields;
+        final int hash;
+
+        Schema(Class<?> type) {
+            List<Field> all = new ArrayList<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field f : c.getDeclaredFields()) {
+                    int mod = f.getModifiers();
+                    if (!Modifier.isStatic(mod) && !Modifier.isTransient(mod)) {
+                        all.add(f);
+                    }
+                }
+            }
+            all.sort(Comparator.comparing(Field::getName));
+            StringBuilder signature = new StringBuilder(type.getName());
+            fields = new FieldCodec[all.size()];
+            for (int i = 0; i < fields.length; i++) {
+                Field f = all.get(i);
+                f.setAccessible(true);
+                fields[i] = new FieldCodec(f);
+                signature.append(';').append(f.getName()).append(':').append(f.getType().getName());
+            }
+            hash = signature.toString().hashCode();
+        }
+    }
+
+    private enum Kind {
+        LONG, INT, SHORT, BYTE, BOOLEAN, DOUBLE, FLOAT, STRING, LOCAL_DATE_TIME, LOCAL_DATE, BIG_DECIMAL, OTHER
+    }
+
+    private static class FieldCodec {
+        final Field field;
+        final Kind kind;
+
+        FieldCodec(Field field) {
+            this.field = field;
+            this.kind = kindOf(field.getType());
+        }
+
+        Object get(Object bean) {
+            try {
+                return field.get(bean);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void set(Object bean, Object value) {
+            try {
+                field.set(bean, value);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void write(Writer out, Object value) {
+            switch (kind) {
+                case LONG: out.writeVarLong(((Long) value)); break;
+                case INT: out.writeVarLong(((Integer) value)); break;
+                case SHORT: out.writeVarLong(((Short) value)); break;
+                case BYTE: out.writeByte((Byte) value); break;
+                case BOOLEAN: out.writeByte((Boolean) value ? 1 : 0); break;
+                case DOUBLE: out.writeLong(Double.doubleToLongBits((Double) value)); break;
+                case FLOAT: out.writeInt(Float.floatToIntBits((Float) value)); break;
+                case STRING: out.writeString((String) value); break;
+                case LOCAL_DATE_TIME:
+                    LocalDateTime time = (LocalDateTime) value;
+                    out.writeVarLong(time.toEpochSecond(ZoneOffset.UTC));
+                    out.writeVarLong(time.getNano());
+                    break;
+                case LOCAL_DATE: out.writeVarLong(((LocalDate) value).toEpochDay()); break;
+                case BIG_DECIMAL: out.writeString(value.toString()); break;
+                default: out.writeString(JSONUtil.toJsonStr(value));
+            }
+        }
+
+        Object read(Reader in) {
+            switch (kind) {
+                case LONG: return in.readVarLong();
+                case INT: return (int) in.readVarLong();
+                case SHORT: return (short) in.readVarLong();
+                case BYTE: return in.readByte();
+                case BOOLEAN: return in.readByte() != 0;
+                case DOUBLE: return Double.longBitsToDouble(in.readLong());
+                case FLOAT: return Float.intBitsToFloat(in.readInt());
+                case STRING: return in.readString();
+                case LOCAL_DATE_TIME:
+                    long seconds = in.readVarLong();
+                    int nanos = (int) in.readVarLong();
+                    return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+                case LOCAL_DATE: return LocalDate.ofEpochDay(in.readVarLong());
+                case BIG_DECIMAL: return new BigDecimal(in.readString());
+                default: return JSONUtil.toBean(in.readString(), field.getType());
+            }
+        }
+
+        private static Kind kindOf(Class<?> t) {
+            if (t == Long.class || t == long.class) return Kind.LONG;
+            if (t == Integer.class || t == int.class) return Kind.INT;
+            if (t == Short.class || t == short.class) return Kind.SHORT;
+            if (t == Byte.class || t == byte.class) return Kind.BYTE;
+            if (t == Boolean.class || t == boolean.class) return Kind.BOOLEAN;
+            if (t == Double.class || t == double.class) return Kind.DOUBLE;
+            if (t == Float.class || t == float.class) return Kind.FLOAT;
+            if (t == String.class) return Kind.STRING;
+            if (t == LocalDateTime.class) return Kind.LOCAL_DATE_TIME;
+            if (t == LocalDate.class) return Kind.LOCAL_DATE;
+            if (t == BigDecimal.class) return Kind.BIG_DECIMAL;
+            return Kind.OTHER;
+        }
+    }
+
+    private static class Writer {
+        private byte[] buf;
+        private int pos;
+
+        Writer(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        private void ensure(int n) {
+            if (pos + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + n));
+            }
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        void writeBytes(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        void writeInt(int v) {
+            ensure(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                buf[pos++] = (byte) (v >>> shift);
+            }
+        }
+
+        void writeLong(long v) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[pos++] = (byte) (v >>> shift);
+            }
+        }
+
+        void writeVarLong(long v) {
+            long zigzag = (v << 1) ^ (v >> 63);
+            ensure(10);
+            while ((zigzag & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buf[pos++] = (byte) zigzag;
+        }
+
+        void writeString(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            writeBytes(bytes);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    private static class Reader {
+        private final byte[] buf;
+        // 跳过 MAGIC
+        private int pos = 1;
+
+        Reader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        byte readByte() {
+            return buf[pos++];
+        }
+
+        byte[] readBytes(int n) {
+            byte[] bytes = Arrays.copyOfRange(buf, pos, pos + n);
+            pos += n;
+            return bytes;
+        }
+
+        int readInt() {
+            int v = 0;
+            for (int i = 0; i < 4; i++) {
+                v = (v << 8) | (buf[pos++] & 0xFF);
+            }
+            return v;
+        }
+
+        long readLong() {
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v = (v << 8) | (buf[pos++] & 0xFF);
+            }
+            return v;
+        }
+
+        long readVarLong() {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buf[pos++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        String readString() {
+            int len = (int) readVarLong();
+            String s = new String(buf, pos, len, StandardCharsets.UTF_8);
+            pos += len;
+            return s;
+        }
+    }
+}
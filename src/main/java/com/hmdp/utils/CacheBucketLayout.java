@@ -0,0 +1,155 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 缓存条目的存储布局。默认每个条目是一个独立的 String key；
+ * 配置在 hmdp.cache.bucket.prefixes 中的前缀改为分桶存储：cache:shop:{id} 存到 hash cache:shop:b:{id/size} 的字段 {id}，
+ * 小 hash 使用 listpack/ziplist 编码，省掉每个顶层key的元数据开销。
+ * hash 字段没有独立TTL，值前面嵌入8字节的过期时间戳(0表示不过期)，读到已过期的字段按不存在处理；
+ * 桶本身的TTL不短于其中最晚过期的条目。
+ * 要让桶保持紧凑编码，Redis 的 hash-max-listpack-entries(ziplist) 需不小于 size，hash-max-listpack-value 需大于单个条目的字节数。
+ */
+@Component
+public class CacheBucketLayout {
+
+    private static final int TIMESTAMP_LENGTH = 8;
+    private static final byte[] EMPTY = new byte[0];
+
+    private static final DefaultRedisScript<Long> BUCKET_SET_SCRIPT;
+    static {
+        BUCKET_SET_SCRIPT = new DefaultRedisScript<>();
+        BUCKET_SET_SCRIPT.setLocation(new ClassPathResource("cache_bucket_set.lua"));
+        BUCKET_SET_SCRIPT.setResultType(Long.class);
+    }
+
+    @Value("${hmdp.cache.bucket.prefixes:}")
+    private String prefixes;
+    @Value("${hmdp.cache.bucket.size:1000}")
+    private long bucketSize;
+
+    private final Set<String> bucketedPrefixes = new HashSet<>();
+    private byte[] script;
+
+    @PostConstruct
+    public void init() {
+        for (String prefix : StrUtil.split(prefixes, ',', true, true)) {
+            bucketedPrefixes.add(prefix);
+        }
+        script = BUCKET_SET_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * key 的前缀开启了分桶且后缀是数字id
+     */
+    public boolean isBucketed(String key) {
+        if (bucketedPrefixes.isEmpty()) {
+            return false;
+        }
+        String prefix = CacheMetrics.prefixOf(key);
+        return bucketedPrefixes.contains(prefix) && StrUtil.isNumeric(key.substring(prefix.length()));
+    }
+
+    public String bucketKey(String key) {
+        String prefix = CacheMetrics.prefixOf(key);
+        long id = Long.parseLong(key.substring(prefix.length()));
+        return prefix + "b:" + id / bucketSize;
+    }
+
+    public String fieldName(String key) {
+        return key.substring(CacheMetrics.prefixOf(key).length());
+    }
+
+    public byte[] field(String key) {
+        return fieldName(key).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 在值前面加上过期时间戳
+     */
+    public byte[] wrap(byte[] value, long ttlMillis) {
+        long expireAt = ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : 0;
+        return ByteBuffer.allocate(TIMESTAMP_LENGTH + value.length).putLong(expireAt).put(value).array();
+    }
+
+    /**
+     * 去掉过期时间戳，已过期或格式不对返回null
+     */
+    public byte[] unwrap(byte[] stored) {
+        if (stored == null || stored.length < TIMESTAMP_LENGTH) {
+            return null;
+        }
+        long expireAt = ByteBuffer.wrap(stored).getLong();
+        if (expireAt != 0 && expireAt < System.currentTimeMillis()) {
+            return null;
+        }
+        return stored.length == TIMESTAMP_LENGTH ? EMPTY : Arrays.copyOfRange(stored, TIMESTAMP_LENGTH, stored.length);
+    }
+
+    public byte[] getScript() {
+        return script;
+    }
+
+    /**
+     * 写入脚本的SHA1，异步客户端先用 EVALSHA 发送，节点上还没有脚本时再 EVAL
+     */
+    public String getScriptSha1() {
+        return BUCKET_SET_SCRIPT.getSha1();
+    }
+
+    /**
+     * 读取一个条目，在pipeline中调用时返回null，结果在pipeline返回列表中，需要再经过 {@link #read}
+     */
+    public byte[] get(RedisConnection connection, String key) {
+        if (isBucketed(key)) {
+            return connection.hashCommands().hGet(bucketKey(key).getBytes(StandardCharsets.UTF_8), field(key));
+        }
+        return connection.stringCommands().get(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 把 {@link #get} 的返回值还原成写入时的字节，分桶条目已过期时返回null
+     */
+    public byte[] read(String key, byte[] reply) {
+        return isBucketed(key) ? unwrap(reply) : reply;
+    }
+
+    /**
+     * @param ttlMillis 小于等于0表示不过期
+     */
+    public void set(RedisConnection connection, String key, byte[] value, long ttlMillis) {
+        if (isBucketed(key)) {
+            connection.scriptingCommands().eval(script, ReturnType.INTEGER, 1,
+                    bucketKey(key).getBytes(StandardCharsets.UTF_8), field(key), wrap(value, ttlMillis),
+                    String.valueOf(ttlMillis).getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        if (ttlMillis > 0) {
+            connection.stringCommands().pSetEx(rawKey, ttlMillis, value);
+        } else {
+            connection.stringCommands().set(rawKey, value);
+        }
+    }
+
+    public void delete(RedisConnection connection, String key) {
+        if (isBucketed(key)) {
+            connection.hashCommands().hDel(bucketKey(key).getBytes(StandardCharsets.UTF_8), field(key));
+            return;
+        }
+        connection.keyCommands().unlink(key.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -2,19 +2,35 @@ package com.hmdp.utils;
 
 
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
-import com.hmdp.entity.Shop;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 
 @Slf4j
@@ -23,7 +39,133 @@ public class CacheClient {
 
     private StringRedisTemplate stringRedisTemplate;
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    @Resource
+    private CacheRebuildExecutor rebuildExecutor;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+
+    @Resource
+    private CacheMetrics cacheMetrics;
+
+    @Resource
+    private CacheCompressor cacheCompressor;
+
+    @Resource
+    private CacheBucketLayout bucketLayout;
+
+    @Value("${hmdp.cache.local.enabled:false}")
+    private boolean localCacheEnabled;
+    @Value("${hmdp.cache.local.max-size:1000}")
+    private int localCacheMaxSize;
+    @Value("${hmdp.cache.local.ttl-seconds:10}")
+    private long localCacheTtlSeconds;
+
+    @Value("${hmdp.cache.single-flight.enabled:false}")
+    private boolean singleFlightEnabled;
+
+    @Value("${hmdp.cache.early-refresh.beta:1.0}")
+    private double earlyRefreshBeta;
+
+    @Value("${hmdp.cache.mutex.wait-millis:1000}")
+    private long mutexWaitMillis;
+
+    @Value("${hmdp.cache.codec:json}")
+    private String codecName;
+    @Resource
+    private List<CacheCodec> codecs;
+
+    /**
+     * 值的编解码方式，默认JSON
+     */
+    private CacheCodec codec;
+
+    /**
+     * 空值标记，防止缓存穿透
+     */
+    private static final byte[] NULL_VALUE = new byte[0];
+
+    /**
+     * 失效通知中多个key之间的分隔符
+     */
+    private static final String INVALIDATE_SEPARATOR = "\n";
+
+    /**
+     * 进程内一级缓存，未开启时为null
+     */
+    private LocalCache localCache;
+
+    /**
+     * 未命中时合并同一节点上对同一key的并发加载，未开启时为null
+     */
+    private SingleFlight singleFlight;
+
+    /**
+     * key前缀 -> 该类数据id的布隆过滤器
+     */
+    private final Map<String, RedisBloomFilter> bloomFilters = new ConcurrentHashMap<>();
+
+    /**
+     * 互斥锁模式下正在重建的key -> 重建完成信号。
+     * 本节点抢到锁的线程写完缓存后用新值完成它；别的节点重建完成时通过 pub/sub 通知，用null完成，等待者自己再读一次Redis
+     */
+    private final Map<String, CompletableFuture<Object>> rebuildSignals = new ConcurrentHashMap<>();
+
+    private final LongAdder mutexWaits = new LongAdder();
+    private final LongAdder mutexTimeouts = new LongAdder();
+    private final LongAdder mutexStaleReturns = new LongAdder();
+    private final LongAdder mutexWaitNanos = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        codec = codecs.stream().filter(c -> c.name().equals(codecName)).findFirst()
+                .orElseThrow(() -> new IllegalStateException("未知的缓存编解码: " + codecName));
+        if (singleFlightEnabled) {
+            singleFlight = new SingleFlight();
+        }
+        if (localCacheEnabled) {
+            localCache = new LocalCache(localCacheMaxSize, TimeUnit.SECONDS.toMillis(localCacheTtlSeconds));
+        }
+        // 任何节点重建完成后唤醒本节点等待同一个key的线程
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> {
+                    CompletableFuture<Object> signal = rebuildSignals.get(new String(message.getBody(), StandardCharsets.UTF_8));
+                    if (signal != null) {
+                        signal.complete(null);
+                    }
+                },
+                new ChannelTopic(RedisConstants.CACHE_REBUILT_CHANNEL)
+        );
+        if (!hasLocalCopies()) {
+            return;
+        }
+        // 订阅失效通知，任何节点删除缓存后所有节点都清掉本地副本，一条消息可以带多个key，用换行分隔
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> {
+                    for (String key : new String(message.getBody(), StandardCharsets.UTF_8).split(INVALIDATE_SEPARATOR)) {
+                        evictLocal(key);
+                    }
+                },
+                new ChannelTopic(RedisConstants.CACHE_INVALIDATE_CHANNEL)
+        );
+    }
+
+    /**
+     * 一级缓存或热点key本地副本至少开启了一个
+     */
+    private boolean hasLocalCopies() {
+        return localCache != null || hotKeyDetector.isEnabled();
+    }
+
+    private void evictLocal(String key) {
+        if (localCache != null) {
+            localCache.invalidate(key);
+        }
+        hotKeyDetector.invalidate(key);
+    }
 
     private boolean tryLock(String key) {
         Boolean b = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
@@ -39,84 +181,711 @@ public class CacheClient {
     }
 
     public void set(String key, Object value, Long time, TimeUnit unit){
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        setRaw(key, codec.encode(value), unit.toMillis(time));
+    }
+
+    private static byte[] rawKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] getRaw(String key) {
+        byte[] reply = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> bucketLayout.get(connection, key));
+        return readRaw(key, reply);
+    }
+
+    /**
+     * 把Redis返回的原始字节还原成编解码器写出的字节：去掉分桶的过期时间戳，再解压
+     */
+    private byte[] readRaw(String key, byte[] reply) {
+        return cacheCompressor.decompress(key, bucketLayout.read(key, reply));
+    }
+
+    /**
+     * @param ttlMillis 小于等于0表示不过期
+     */
+    private void setRaw(String key, byte[] bytes, long ttlMillis) {
+        byte[] value = cacheCompressor.compress(key, bytes);
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            bucketLayout.set(connection, key, value, ttlMillis);
+            return null;
+        });
+    }
+
+    /**
+     * 删除缓存，并广播失效通知让所有节点清除一级缓存
+     */
+    public void delete(String key) {
+        deleteAll(Collections.singletonList(key));
+    }
+
+    /**
+     * 批量删除缓存：一次pipeline发送UNLINK，本地副本清除后只广播一条失效通知
+     */
+    public void deleteAll(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                bucketLayout.delete(connection, key);
+            }
+            return null;
+        });
+        if (hasLocalCopies()) {
+            keys.forEach(this::evictLocal);
+            stringRedisTemplate.convertAndSend(RedisConstants.CACHE_INVALIDATE_CHANNEL, String.join(INVALIDATE_SEPARATOR, keys));
+        }
+    }
+
+    /**
+     * 一级缓存各前缀的命中统计，未开启时返回空
+     */
+    public Map<String, Map<String, Object>> localCacheStats() {
+        return localCache == null ? Collections.emptyMap() : localCache.statsSnapshot();
+    }
+
+    /**
+     * 为某个key前缀注册布隆过滤器，查询时先用它过滤掉一定不存在的id
+     */
+    public void registerBloomFilter(String keyPrefix, RedisBloomFilter bloomFilter) {
+        bloomFilters.put(keyPrefix, bloomFilter);
+    }
+
+    /**
+     * 合并加载统计，未开启时返回空
+     */
+    public Map<String, Object> singleFlightStats() {
+        return singleFlight == null ? Collections.emptyMap() : singleFlight.stats();
+    }
+
+    /**
+     * 各前缀布隆过滤器的参数和拦截次数
+     */
+    public Map<String, Map<String, Object>> bloomFilterStats() {
+        Map<String, Map<String, Object>> m = new LinkedHashMap<>();
+        bloomFilters.forEach((prefix, filter) -> m.put(prefix, filter.stats()));
+        return m;
     }
 
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit){
         //设置逻辑过期
-        RedisData redisData = new RedisData();
-        redisData.setData(value);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        setRaw(key, codec.encodeWithExpire(value, LocalDateTime.now().plusSeconds(unit.toSeconds(time))), 0);
+    }
+
+    /**
+     * 用一次pipeline批量写入逻辑过期格式的数据。
+     * 同时设置逻辑TTL两倍的真实TTL，写入的数据对穿透、逻辑过期、提前刷新三种查询方式都可用
+     */
+    public void setBatchWithLogicalExpire(Map<String, ?> values, Long time, TimeUnit unit) {
+        if (values.isEmpty()) {
+            return;
+        }
+        LocalDateTime expireTime = LocalDateTime.now().plusSeconds(unit.toSeconds(time));
+        long ttlMillis = unit.toMillis(time) * 2;
+        Map<String, byte[]> encoded = new LinkedHashMap<>(values.size());
+        values.forEach((k, v) -> encoded.put(k, cacheCompressor.compress(k, codec.encodeWithExpire(v, expireTime))));
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            encoded.forEach((k, v) -> bucketLayout.set(connection, k, v, ttlMillis));
+            return null;
+        });
     }
 
     public <R,ID> R quaryWithPassThrough(String keyPrefix,ID id,Class<R> type,
                                          Function<ID,R> dbFallback, Long time, TimeUnit unit) {
-        //TODO 在Redis中查询
         String key = keyPrefix+id;
-        String json = stringRedisTemplate.opsForValue().get(key);
-        //如果存在返回
-        if (StrUtil.isNotBlank(json)) {
-            R bean = JSONUtil.toBean(json, type);
-            return bean;
+        //先查热点key的本地副本，再查一级缓存
+        R hot = readHot(key, type);
+        if (hot != null) {
+            cacheMetrics.hit(keyPrefix);
+            return hot;
+        }
+        if (localCache != null) {
+            R local = localCache.get(keyPrefix, key, type);
+            if (local != null) {
+                cacheMetrics.hit(keyPrefix);
+                return local;
+            }
+        }
+        RedisBloomFilter bloomFilter = bloomFilters.get(keyPrefix);
+        byte[] bytes;
+        long start = System.nanoTime();
+        if (bloomFilter != null && bloomFilter.isReady()) {
+            //布隆过滤器的GETBIT和GET放在同一个pipeline里，不增加往返次数
+            long[] offsets = bloomFilter.offsets(id);
+            byte[] bloomKey = rawKey(bloomFilter.getKey());
+            List<Object> replies = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (long offset : offsets) {
+                    connection.stringCommands().getBit(bloomKey, offset);
+                }
+                bucketLayout.get(connection, key);
+                return null;
+            }, RedisSerializer.byteArray());
+            cacheMetrics.latency(keyPrefix, start);
+            if (!bloomFilter.checkBits(replies, 0)) {
+                //一定不存在，不查Redis也不查数据库
+                cacheMetrics.nullHit(keyPrefix);
+                return null;
+            }
+            bytes = readRaw(key, (byte[]) replies.get(offsets.length));
+        } else {
+            bytes = getRaw(key);
+            cacheMetrics.latency(keyPrefix, start);
         }
-        if (json != null) {
+        //如果存在返回
+        if (bytes != null && bytes.length > 0) {
+            R bean = codec.decode(bytes, type);
+            if (bean != null) {
+                cacheMetrics.hit(keyPrefix);
+                putLocal(key, bean);
+                return bean;
+            }
+            //数据格式已过时，按未命中重新加载
+        } else if (bytes != null) {
+            cacheMetrics.nullHit(keyPrefix);
             return null;
         }
         //如果不存在查询数据库
+        cacheMetrics.miss(keyPrefix);
+        if (singleFlight != null) {
+            //同一节点只有一个线程去加载，其余线程等待它的结果
+            return singleFlight.execute(key, () -> loadWithLock(keyPrefix, id, type, dbFallback, time, unit));
+        }
+        return load(key, id, dbFallback, time, unit);
+    }
+
+    private <R,ID> R load(String key, ID id, Function<ID,R> dbFallback, Long time, TimeUnit unit) {
         R r= dbFallback.apply(id);
         if (r == null) {
-            stringRedisTemplate.opsForValue().set(key, "", RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES);
+            setRaw(key, NULL_VALUE, TimeUnit.MINUTES.toMillis(RedisConstants.CACHE_NULL_TTL));
             return null;
         }
 
         //将数据放到redis中
         this.set(key, r, time, unit);
+        putLocal(key, r);
         //返回
         return r;
     }
 
+    /**
+     * 节点内的加载者再去抢Redis互斥锁，保证整个集群对同一个key大约只查一次库。
+     * 抢不到锁时不轮询，和互斥锁模式一样等待该key的重建完成信号，最多等待 mutex.wait-millis，仍没有结果则自己查库。
+     */
+    private <R,ID> R loadWithLock(String keyPrefix, ID id, Class<R> type,
+                                  Function<ID,R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        //先登记再抢锁，持锁节点在登记之后发出的通知不会漏掉
+        CompletableFuture<Object> signal = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = rebuildSignals.putIfAbsent(key, signal);
+        if (inFlight != null) {
+            return awaitLoad(key, id, type, inFlight, dbFallback, time, unit);
+        }
+        String lockKey = lockKey(keyPrefix, id);
+        Object value = null;
+        try {
+            if (!tryLock(lockKey)) {
+                R r = awaitLoad(key, id, type, signal, dbFallback, time, unit);
+                value = r;
+                return r;
+            }
+            try {
+                //拿到锁后再查一次，可能别的节点已经写回
+                byte[] bytes = getRaw(key);
+                if (bytes != null) {
+                    R r = bytes.length == 0 ? null : codec.decode(bytes, type);
+                    if (r != null || bytes.length == 0) {
+                        putLocal(key, r);
+                        value = r;
+                        return r;
+                    }
+                }
+                R r = load(key, id, dbFallback, time, unit);
+                value = r;
+                stringRedisTemplate.convertAndSend(RedisConstants.CACHE_REBUILT_CHANNEL, key);
+                return r;
+            } finally {
+                unLock(lockKey);
+            }
+        } finally {
+            rebuildSignals.remove(key, signal);
+            signal.complete(value);
+        }
+    }
+
+    /**
+     * 有界等待别的线程或节点写回：抢锁失败时对方可能已经写回并发过通知，先读一次Redis；
+     * 没有再等信号，信号带值直接用，不带值再读一次Redis，超时或仍没有结果时自己查库
+     */
+    private <R,ID> R awaitLoad(String key, ID id, Class<R> type, CompletableFuture<Object> signal,
+                               Function<ID,R> dbFallback, Long time, TimeUnit unit) {
+        byte[] bytes = getRaw(key);
+        if (bytes == null) {
+            mutexWaits.increment();
+            long start = System.nanoTime();
+            try {
+                Object value = signal.get(mutexWaitMillis, TimeUnit.MILLISECONDS);
+                if (type.isInstance(value)) {
+                    return type.cast(value);
+                }
+            } catch (TimeoutException e) {
+                mutexTimeouts.increment();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                //加载者失败，下面自己读Redis或查库
+            } finally {
+                mutexWaitNanos.add(System.nanoTime() - start);
+            }
+            bytes = getRaw(key);
+        }
+        if (bytes != null) {
+            if (bytes.length == 0) {
+                return null;
+            }
+            R r = codec.decode(bytes, type);
+            if (r != null) {
+                putLocal(key, r);
+                return r;
+            }
+        }
+        return load(key, id, dbFallback, time, unit);
+    }
+
+    /**
+     * 互斥锁模式：值按逻辑过期格式写入，真实TTL为逻辑TTL的两倍。
+     * 未命中或逻辑过期时，集群内只有抢到Redis锁的线程查库；其余线程不轮询、不递归，
+     * 而是等待该key的重建完成信号(本节点用future，其他节点通过 pub/sub 通知)，最多等待 mutex.wait-millis。
+     * 超时后有旧值返回旧值，没有旧值才自己查库。
+     */
+    public <R,ID> R quaryWithMutex(String keyPrefix, ID id, Class<R> type,
+                                   Function<ID,R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        R hot = readHot(key, type);
+        if (hot != null) {
+            cacheMetrics.hit(keyPrefix);
+            return hot;
+        }
+        long start = System.nanoTime();
+        byte[] bytes = getRaw(key);
+        cacheMetrics.latency(keyPrefix, start);
+        if (bytes != null && bytes.length == 0) {
+            cacheMetrics.nullHit(keyPrefix);
+            return null;
+        }
+        RedisData redisData = bytes == null ? null : codec.decodeWithExpire(bytes, type);
+        R stale = null;
+        if (redisData != null) {
+            stale = type.cast(redisData.getData());
+            if (redisData.getExpireTime().isAfter(LocalDateTime.now())) {
+                cacheMetrics.hit(keyPrefix);
+                hotKeyDetector.putLocal(key, stale);
+                return stale;
+            }
+        }
+        cacheMetrics.miss(keyPrefix);
+        //本节点第一个未命中的线程负责抢锁，其余线程直接等它
+        CompletableFuture<Object> signal = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = rebuildSignals.putIfAbsent(key, signal);
+        if (inFlight != null) {
+            return awaitRebuild(keyPrefix, key, id, type, inFlight, stale, dbFallback, time, unit);
+        }
+        String lockKey = lockKey(keyPrefix, id);
+        Object value = null;
+        try {
+            if (!tryLock(lockKey)) {
+                //别的节点在重建，等它的通知
+                R r = awaitRebuild(keyPrefix, key, id, type, signal, stale, dbFallback, time, unit);
+                value = r;
+                return r;
+            }
+            try {
+                //拿到锁后再查一次，可能刚被别的节点写回
+                bytes = getRaw(key);
+                redisData = bytes == null || bytes.length == 0 ? null : codec.decodeWithExpire(bytes, type);
+                if (bytes != null && bytes.length == 0) {
+                    return null;
+                }
+                if (redisData != null && redisData.getExpireTime().isAfter(LocalDateTime.now())) {
+                    R r = type.cast(redisData.getData());
+                    value = r;
+                    return r;
+                }
+                cacheMetrics.rebuild(keyPrefix);
+                R r = loadWithLogicalExpire(key, id, dbFallback, time, unit);
+                value = r;
+                stringRedisTemplate.convertAndSend(RedisConstants.CACHE_REBUILT_CHANNEL, key);
+                return r;
+            } finally {
+                unLock(lockKey);
+            }
+        } finally {
+            rebuildSignals.remove(key, signal);
+            signal.complete(value);
+        }
+    }
+
+    /**
+     * 互斥锁模式的查库写回：按逻辑过期格式写入，真实TTL为逻辑TTL的两倍
+     */
+    private <R,ID> R loadWithLogicalExpire(String key, ID id, Function<ID,R> dbFallback, Long time, TimeUnit unit) {
+        R r = dbFallback.apply(id);
+        if (r == null) {
+            setRaw(key, NULL_VALUE, TimeUnit.MINUTES.toMillis(RedisConstants.CACHE_NULL_TTL));
+        } else {
+            LocalDateTime expireTime = LocalDateTime.now().plusSeconds(unit.toSeconds(time));
+            setRaw(key, codec.encodeWithExpire(r, expireTime), unit.toMillis(time) * 2);
+        }
+        return r;
+    }
+
+    /**
+     * 有界等待重建完成：信号带值直接用，不带值再读一次Redis；超时返回旧值，没有旧值则自己查库。
+     * 自己查库时和正常重建一样按逻辑过期格式写回，否则下一次 {@link #quaryWithMutex} 读到的是普通格式
+     */
+    private <R,ID> R awaitRebuild(String keyPrefix, String key, ID id, Class<R> type, CompletableFuture<Object> signal,
+                                  R stale, Function<ID,R> dbFallback, Long time, TimeUnit unit) {
+        mutexWaits.increment();
+        long start = System.nanoTime();
+        Object value;
+        try {
+            value = signal.get(mutexWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            mutexTimeouts.increment();
+            if (stale != null) {
+                mutexStaleReturns.increment();
+                return stale;
+            }
+            return loadWithLogicalExpire(key, id, dbFallback, time, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return stale;
+        } catch (ExecutionException e) {
+            value = null;
+        } finally {
+            mutexWaitNanos.add(System.nanoTime() - start);
+        }
+        if (type.isInstance(value)) {
+            return type.cast(value);
+        }
+        byte[] bytes = getRaw(key);
+        if (bytes == null) {
+            return stale;
+        }
+        if (bytes.length == 0) {
+            return null;
+        }
+        RedisData redisData = codec.decodeWithExpire(bytes, type);
+        return redisData != null ? type.cast(redisData.getData()) : stale;
+    }
+
+    /**
+     * 各前缀的压缩率和压缩耗时
+     */
+    public Map<String, Map<String, Object>> compressionStats() {
+        return cacheCompressor.stats();
+    }
+
+    /**
+     * 互斥锁模式的等待统计
+     */
+    public Map<String, Object> mutexStats() {
+        long waits = mutexWaits.sum();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("rebuilding", rebuildSignals.size());
+        m.put("waits", waits);
+        m.put("timeouts", mutexTimeouts.sum());
+        m.put("staleReturns", mutexStaleReturns.sum());
+        m.put("avgWaitMs", waits == 0 ? 0D : mutexWaitNanos.sum() / 1e6 / waits);
+        return m;
+    }
+
+    /**
+     * 本节点没有在重建该key、且抢到Redis互斥锁时提交后台重建，任务结束或被线程池拒绝都会释放锁
+     */
+    private void rebuildAsync(String keyPrefix, String key, String lockKey, Runnable rebuild) {
+        if (rebuildExecutor.isPending(key) || !tryLock(lockKey)) {
+            return;
+        }
+        boolean accepted = rebuildExecutor.submit(key, () -> {
+            try {
+                rebuild.run();
+            } finally {
+                unLock(lockKey);
+            }
+        });
+        if (accepted) {
+            cacheMetrics.rebuild(keyPrefix);
+        } else {
+            unLock(lockKey);
+        }
+    }
+
+    /**
+     * 由缓存前缀推导锁的key，例如 cache:shop: -> lock:shop:
+     */
+    static String lockKey(String keyPrefix, Object id) {
+        String name = keyPrefix.startsWith("cache:") ? keyPrefix.substring("cache:".length()) : keyPrefix;
+        return "lock:" + name + id;
+    }
+
+    /**
+     * 批量缓存穿透查询：一次MGET查Redis，未命中的id一次性交给数据库查询，再用一次pipeline写回Redis，
+     * 数据库中不存在的id写入空值防止穿透。
+     * @return 与ids顺序一一对应的结果，不存在的id对应位置为null
+     */
+    public <R,ID> List<R> queryBatchWithPassThrough(String keyPrefix, Collection<ID> ids, Class<R> type,
+                                                    Function<Collection<ID>, Map<ID,R>> dbFallback, Long time, TimeUnit unit) {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<ID> idList = new ArrayList<>(ids);
+        int n = idList.size();
+        List<R> result = new ArrayList<>(Collections.nCopies(n, (R) null));
+        //1.先查一级缓存，剩下的去Redis
+        List<Integer> remoteIndexes = new ArrayList<>(n);
+        List<String> remoteKeys = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            String key = keyPrefix + idList.get(i);
+            R local = readHot(key, type);
+            if (local == null && localCache != null) {
+                local = localCache.get(keyPrefix, key, type);
+            }
+            if (local != null) {
+                cacheMetrics.hit(keyPrefix);
+                result.set(i, local);
+            } else {
+                remoteIndexes.add(i);
+                remoteKeys.add(key);
+            }
+        }
+        if (remoteKeys.isEmpty()) {
+            return result;
+        }
+        //2.一次MGET，分桶存储时改为一个pipeline里的多个HGET
+        long start = System.nanoTime();
+        List<?> values;
+        if (bucketLayout.isBucketed(remoteKeys.get(0))) {
+            values = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                remoteKeys.forEach(key -> bucketLayout.get(connection, key));
+                return null;
+            }, RedisSerializer.byteArray());
+        } else {
+            byte[][] rawKeys = new byte[remoteKeys.size()][];
+            for (int j = 0; j < rawKeys.length; j++) {
+                rawKeys[j] = rawKey(remoteKeys.get(j));
+            }
+            values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.stringCommands().mGet(rawKeys));
+        }
+        cacheMetrics.latency(keyPrefix, start);
+        Set<ID> missIds = new LinkedHashSet<>();
+        for (int j = 0; j < remoteKeys.size(); j++) {
+            byte[] bytes = values == null ? null : readRaw(remoteKeys.get(j), (byte[]) values.get(j));
+            int i = remoteIndexes.get(j);
+            R bean = bytes == null || bytes.length == 0 ? null : codec.decode(bytes, type);
+            if (bean != null) {
+                cacheMetrics.hit(keyPrefix);
+                putLocal(remoteKeys.get(j), bean);
+                result.set(i, bean);
+            } else if (bytes == null || bytes.length > 0) {
+                //不存在或数据格式已过时
+                missIds.add(idList.get(i));
+            } else {
+                cacheMetrics.nullHit(keyPrefix);
+            }
+        }
+        //布隆过滤器判定一定不存在的id不查库也不写空值
+        RedisBloomFilter bloomFilter = bloomFilters.get(keyPrefix);
+        if (bloomFilter != null && bloomFilter.isReady() && !missIds.isEmpty()) {
+            List<ID> candidates = new ArrayList<>(missIds);
+            int hashes = bloomFilter.getNumHashes();
+            byte[] bloomKey = rawKey(bloomFilter.getKey());
+            List<Object> bits = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (ID id : candidates) {
+                    for (long offset : bloomFilter.offsets(id)) {
+                        connection.stringCommands().getBit(bloomKey, offset);
+                    }
+                }
+                return null;
+            });
+            for (int j = 0; j < candidates.size(); j++) {
+                if (!bloomFilter.checkBits(bits, j * hashes)) {
+                    missIds.remove(candidates.get(j));
+                    cacheMetrics.nullHit(keyPrefix);
+                }
+            }
+        }
+        if (missIds.isEmpty()) {
+            return result;
+        }
+        //3.未命中的一次查库
+        cacheMetrics.miss(keyPrefix, missIds.size());
+        Map<ID, R> loaded = dbFallback.apply(missIds);
+        if (loaded == null) {
+            loaded = Collections.emptyMap();
+        }
+        for (int i = 0; i < n; i++) {
+            if (result.get(i) == null) {
+                result.set(i, loaded.get(idList.get(i)));
+            }
+        }
+        //4.pipeline写回，不存在的写空值
+        Map<String, byte[]> toWrite = new LinkedHashMap<>(missIds.size());
+        for (ID id : missIds) {
+            String key = keyPrefix + id;
+            R r = loaded.get(id);
+            toWrite.put(key, r == null ? NULL_VALUE : cacheCompressor.compress(key, codec.encode(r)));
+            putLocal(key, r);
+        }
+        long ttlMillis = unit.toMillis(time);
+        long nullTtlMillis = TimeUnit.MINUTES.toMillis(RedisConstants.CACHE_NULL_TTL);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            toWrite.forEach((k, v) -> bucketLayout.set(connection, k, v, v.length == 0 ? nullTtlMillis : ttlMillis));
+            return null;
+        });
+        return result;
+    }
+
+    void putLocal(String key, Object value) {
+        if (localCache != null) {
+            localCache.put(key, value);
+        }
+        hotKeyDetector.putLocal(key, value);
+    }
+
+    /**
+     * 记录一次访问供热点探测，若该key已是热点则返回本地副本
+     */
+    private <R> R readHot(String key, Class<R> type) {
+        hotKeyDetector.record(key);
+        return hotKeyDetector.getLocal(key, type);
+    }
+
+    /**
+     * 依次查热点key本地副本和一级缓存，供 AsyncCacheClient 复用
+     */
+    <R> R getLocal(String keyPrefix, String key, Class<R> type) {
+        R r = readHot(key, type);
+        if (r == null && localCache != null) {
+            r = localCache.get(keyPrefix, key, type);
+        }
+        return r;
+    }
+
+    boolean isHot(String key) {
+        return hotKeyDetector.isHot(key);
+    }
+
+    CacheCodec getCodec() {
+        return codec;
+    }
+
+    RedisBloomFilter getBloomFilter(String keyPrefix) {
+        return bloomFilters.get(keyPrefix);
+    }
+
 
     public <R,ID> R quaryWithLogicalExpire(String keyPrefix,ID id,Class<R> type,
                                            Function<ID,R> dbFallback, Long time, TimeUnit unit) {
-        //TODO 在Redis中查询
         String key = keyPrefix + id;
-        String json = stringRedisTemplate.opsForValue().get(key);
+        R hot = readHot(key, type);
+        if (hot != null) {
+            cacheMetrics.hit(keyPrefix);
+            return hot;
+        }
+        long start = System.nanoTime();
+        byte[] bytes = getRaw(key);
+        cacheMetrics.latency(keyPrefix, start);
         //如果存在返回
-        if (StrUtil.isBlank(json)) {
+        if (bytes == null || bytes.length == 0) {
+            if (bytes == null) {
+                cacheMetrics.miss(keyPrefix);
+            } else {
+                cacheMetrics.nullHit(keyPrefix);
+            }
             return null;
         }
-        //4 将Json反序列化为对象
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        JSONObject data = (JSONObject) redisData.getData();
-        R r = JSONUtil.toBean(data, type);
+        //4 反序列化，过期时间和数据一次解出
+        RedisData redisData = codec.decodeWithExpire(bytes, type);
+        if (redisData == null) {
+            cacheMetrics.miss(keyPrefix);
+            return null;
+        }
+        cacheMetrics.hit(keyPrefix);
+        R r = type.cast(redisData.getData());
         LocalDateTime expireTime = redisData.getExpireTime();
         // 5 判断是否过期
         if (expireTime.isAfter(LocalDateTime.now())) {
             //5.1 没过期直接返回
+            hotKeyDetector.putLocal(key, r);
             return r;
         }
         //5.2 过期了，需要缓存重建
-        //5.2.1缓存重建
-        // 5.2.2 获取互斥锁
-        String lock_key = RedisConstants.LOCK_SHOP_KEY + id;
-        boolean isLock = tryLock(lock_key);
-        // 5.2.3 判断是否获取成功(成功开启独立线程，实现缓存重建)
-        if(isLock){
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    dbFallback.apply(id);
-                    this.setWithLogicalExpire(key, r, time, unit);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }finally {
-                    //释放锁
-                    unLock(lock_key);
-                }
-            });
-        }
+        //5.2.1 获取互斥锁，成功则提交后台重建，写入新查出的数据
+        rebuildAsync(keyPrefix, key, lockKey(keyPrefix, id), () -> {
+            R fresh = dbFallback.apply(id);
+            if (fresh == null) {
+                setRaw(key, NULL_VALUE, TimeUnit.MINUTES.toMillis(RedisConstants.CACHE_NULL_TTL));
+                return;
+            }
+            this.setWithLogicalExpire(key, fresh, time, unit);
+        });
         // 5.2.3 失败直接返回
         return r;
     }
 
+    /**
+     * 概率提前刷新(XFetch)：缓存中除了值还存逻辑过期时间和加载耗时delta，
+     * 每次读取时若 now - delta * beta * ln(rand) >= 过期时间 就在后台重建，
+     * 越接近过期、加载越慢，提前刷新的概率越大，热点key在过期前就被续期，调用方不会阻塞。
+     * Redis 中的真实TTL是逻辑TTL的两倍，长期没人访问的key会自然过期，此时同步加载一次。
+     */
+    public <R,ID> R quaryWithEarlyRefresh(String keyPrefix, ID id, Class<R> type,
+                                          Function<ID,R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        R hot = readHot(key, type);
+        if (hot != null) {
+            cacheMetrics.hit(keyPrefix);
+            return hot;
+        }
+        long start = System.nanoTime();
+        byte[] bytes = getRaw(key);
+        cacheMetrics.latency(keyPrefix, start);
+        if (bytes != null && bytes.length == 0) {
+            cacheMetrics.nullHit(keyPrefix);
+            return null;
+        }
+        RedisData redisData = bytes == null ? null : codec.decodeWithExpire(bytes, type);
+        if (redisData == null) {
+            //不存在，同步加载
+            cacheMetrics.miss(keyPrefix);
+            if (singleFlight != null) {
+                return singleFlight.execute(key, () -> loadWithDelta(key, id, dbFallback, time, unit));
+            }
+            return loadWithDelta(key, id, dbFallback, time, unit);
+        }
+        cacheMetrics.hit(keyPrefix);
+        R r = type.cast(redisData.getData());
+        long expireAt = redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long delta = redisData.getDelta() == null ? 0 : redisData.getDelta();
+        double gap = -delta * earlyRefreshBeta * Math.log(ThreadLocalRandom.current().nextDouble());
+        if (System.currentTimeMillis() + gap >= expireAt) {
+            rebuildAsync(keyPrefix, key, lockKey(keyPrefix, id), () -> loadWithDelta(key, id, dbFallback, time, unit));
+        } else {
+            hotKeyDetector.putLocal(key, r);
+        }
+        return r;
+    }
+
+    private <R,ID> R loadWithDelta(String key, ID id, Function<ID,R> dbFallback, Long time, TimeUnit unit) {
+        long begin = System.currentTimeMillis();
+        R r = dbFallback.apply(id);
+        if (r == null) {
+            setRaw(key, NULL_VALUE, TimeUnit.MINUTES.toMillis(RedisConstants.CACHE_NULL_TTL));
+            return null;
+        }
+        long delta = Math.max(1, System.currentTimeMillis() - begin);
+        LocalDateTime expireTime = LocalDateTime.now().plusSeconds(unit.toSeconds(time));
+        setRaw(key, codec.encodeWithExpire(r, expireTime, delta), unit.toMillis(time) * 2);
+        return r;
+    }
 }
@@ -0,0 +1,44 @@
+package com.hmdp.utils;
+
+import java.time.LocalDateTime;
+
+/**
+ * CacheClient 写入Redis的值的编解码方式，通过 hmdp.cache.codec 按名字选择
+ */
+public interface CacheCodec {
+
+    String name();
+
+    byte[] encode(Object value);
+
+    /**
+     * 解码普通值，逻辑过期格式的数据也要能读出其中的对象
+     * @return 解码出的对象，数据格式与当前类型不匹配时返回null，调用方按未命中处理
+     */
+    <R> R decode(byte[] bytes, Class<R> type);
+
+    /**
+     * 编码带逻辑过期时间的值
+     */
+    default byte[] encodeWithExpire(Object value, LocalDateTime expireTime) {
+        return encodeWithExpire(value, expireTime, 0);
+    }
+
+    /**
+     * 编码带逻辑过期时间的值
+     * @param delta 加载这条数据花费的毫秒数，提前刷新时使用，0表示不记录
+     */
+    byte[] encodeWithExpire(Object value, LocalDateTime expireTime, long delta);
+
+    /**
+     * 解码带逻辑过期时间的值，data 为 type 类型的对象，无法解码时返回null
+     */
+    <R> RedisData decodeWithExpire(byte[] bytes, Class<R> type);
+
+    /**
+     * 值已经是接口响应格式的JSON时返回该JSON，调用方可以不解码直接写入响应；其他情况返回null，按普通方式解码
+     */
+    default String toRawJson(byte[] bytes) {
+        return null;
+    }
+}
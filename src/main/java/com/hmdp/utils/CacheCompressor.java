@@ -0,0 +1,132 @@
+package com.hmdp.utils;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存值压缩：编码后超过阈值的值用LZ4压缩，开头加一个标记字节，读取时按标记自动解压。
+ * <pre>
+ * [MARKER 1字节][原始长度 4字节][LZ4压缩数据]
+ * </pre>
+ * JSON以 '{' 或 '"' 开头，二进制编码以 0xB1 开头，不会与标记冲突。
+ * hmdp.cache.compression.mode: off 不压缩；report 只试压缩并按key前缀统计压缩率和耗时，仍写入原始数据；on 压缩写入并统计。
+ * 无论哪种模式，读到带标记的数据都会解压。
+ */
+@Component
+public class CacheCompressor {
+
+    private static final byte MARKER = (byte) 0xC4;
+    private static final int HEADER_LENGTH = 5;
+
+    @Value("${hmdp.cache.compression.mode:off}")
+    private String mode;
+    @Value("${hmdp.cache.compression.threshold-bytes:512}")
+    private int thresholdBytes;
+
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+    private final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+    /**
+     * key前缀 -> 压缩统计
+     */
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * 写入前调用，不满足压缩条件时原样返回
+     */
+    public byte[] compress(String key, byte[] raw) {
+        if ("off".equals(mode) || raw.length < thresholdBytes) {
+            return raw;
+        }
+        Stats s = statsOf(CacheMetrics.prefixOf(key));
+        long start = System.nanoTime();
+        byte[] out = new byte[HEADER_LENGTH + compressor.maxCompressedLength(raw.length)];
+        int n = compressor.compress(raw, 0, raw.length, out, HEADER_LENGTH, out.length - HEADER_LENGTH);
+        s.compressNanos.add(System.nanoTime() - start);
+        s.compressed.increment();
+        s.rawBytes.add(raw.length);
+        if (n + HEADER_LENGTH >= raw.length) {
+            // 压不小就不压
+            s.noGain.increment();
+            s.storedBytes.add(raw.length);
+            return raw;
+        }
+        if (!"on".equals(mode)) {
+            s.storedBytes.add(n + HEADER_LENGTH);
+            return raw;
+        }
+        out[0] = MARKER;
+        out[1] = (byte) (raw.length >>> 24);
+        out[2] = (byte) (raw.length >>> 16);
+        out[3] = (byte) (raw.length >>> 8);
+        out[4] = (byte) raw.length;
+        s.storedBytes.add(n + HEADER_LENGTH);
+        return Arrays.copyOf(out, n + HEADER_LENGTH);
+    }
+
+    /**
+     * 读取后调用，不带压缩标记的数据原样返回
+     */
+    public byte[] decompress(String key, byte[] stored) {
+        if (stored == null || stored.length < HEADER_LENGTH || stored[0] != MARKER) {
+            return stored;
+        }
+        long start = System.nanoTime();
+        int length = ((stored[1] & 0xFF) << 24) | ((stored[2] & 0xFF) << 16) | ((stored[3] & 0xFF) << 8) | (stored[4] & 0xFF);
+        byte[] raw = new byte[length];
+        decompressor.decompress(stored, HEADER_LENGTH, raw, 0, length);
+        Stats s = statsOf(CacheMetrics.prefixOf(key));
+        s.decompressNanos.add(System.nanoTime() - start);
+        s.decompressed.increment();
+        return raw;
+    }
+
+    /**
+     * 各前缀的压缩率和CPU耗时: ratio 为压缩后/压缩前的字节比，report 模式下是假设开启压缩时的值
+     */
+    public Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> snapshot = new TreeMap<>();
+        stats.forEach((prefix, s) -> {
+            long compressed = s.compressed.sum();
+            long decompressed = s.decompressed.sum();
+            long raw = s.rawBytes.sum();
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("mode", mode);
+            m.put("compressed", compressed);
+            m.put("noGain", s.noGain.sum());
+            m.put("rawBytes", raw);
+            m.put("storedBytes", s.storedBytes.sum());
+            m.put("ratio", raw == 0 ? 1D : (double) s.storedBytes.sum() / raw);
+            m.put("avgCompressUs", compressed == 0 ? 0D : s.compressNanos.sum() / 1e3 / compressed);
+            m.put("decompressed", decompressed);
+            m.put("avgDecompressUs", decompressed == 0 ? 0D : s.decompressNanos.sum() / 1e3 / decompressed);
+            snapshot.put(prefix, m);
+        });
+        return snapshot;
+    }
+
+    private Stats statsOf(String prefix) {
+        Stats s = stats.get(prefix);
+        return s != null ? s : stats.computeIfAbsent(prefix, k -> new Stats());
+    }
+
+    private static class Stats {
+        final LongAdder compressed = new LongAdder();
+        final LongAdder noGain = new LongAdder();
+        final LongAdder rawBytes = new LongAdder();
+        final LongAdder storedBytes = new LongAdder();
+        final LongAdder compressNanos = new LongAdder();
+        final LongAdder decompressed = new LongAdder();
+        final LongAdder decompressNanos = new LongAdder();
+    }
+}
@@ -0,0 +1,113 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存失效队列：在事务中调用时先记下要删除的key，事务提交后一次性批量删除，回滚则什么都不做；
+ * 不在事务中调用时立即删除。删除后可以按配置延迟再删一次，清掉提交前后并发读取写回的旧值。
+ */
+@Slf4j
+@Component
+public class CacheInvalidator {
+
+    @Resource
+    private CacheClient cacheClient;
+
+    /**
+     * 延迟双删的间隔，小于等于0表示不做第二次删除
+     */
+    @Value("${hmdp.cache.invalidate.second-delete-delay-millis:0}")
+    private long secondDeleteDelayMillis;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        if (secondDeleteDelayMillis <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cache-invalidator");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    public void invalidate(String... keys) {
+        invalidate(Arrays.asList(keys));
+    }
+
+    public void invalidate(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            deleteNow(new ArrayList<>(keys));
+            return;
+        }
+        pendingKeys().addAll(keys);
+    }
+
+    /**
+     * 当前事务待删除的key，第一次调用时注册事务同步
+     */
+    @SuppressWarnings("unchecked")
+    private Set<String> pendingKeys() {
+        Set<String> keys = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        if (keys != null) {
+            return keys;
+        }
+        Set<String> created = new LinkedHashSet<>();
+        TransactionSynchronizationManager.bindResource(this, created);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                deleteNow(new ArrayList<>(created));
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(CacheInvalidator.this);
+            }
+        });
+        return created;
+    }
+
+    private void deleteNow(List<String> keys) {
+        cacheClient.deleteAll(keys);
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.schedule(() -> {
+            try {
+                cacheClient.deleteAll(keys);
+            } catch (Exception e) {
+                log.error("延迟删除缓存失败, keys={}", keys, e);
+            }
+        }, secondDeleteDelayMillis, TimeUnit.MILLISECONDS);
+    }
+}
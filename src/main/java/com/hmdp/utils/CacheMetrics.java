@@ -0,0 +1,134 @@
+package com.hmdp.utils;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按key前缀(RedisConstants 中的前缀)统计缓存命中情况和Redis调用耗时。
+ * 计数用 LongAdder，耗时按微秒落到以2为底的指数桶里，记录时只做数组下标计算和原子加，不分配对象。
+ */
+@Component
+public class CacheMetrics {
+
+    /**
+     * 第i个桶记录耗时在 [2^(i-1), 2^i) 微秒的调用，最后一个桶兜底
+     */
+    private static final int BUCKETS = 32;
+
+    private final Map<String, PrefixMetrics> metrics = new ConcurrentHashMap<>();
+
+    public void hit(String prefix) {
+        of(prefix).hits.increment();
+    }
+
+    public void miss(String prefix) {
+        of(prefix).misses.increment();
+    }
+
+    public void miss(String prefix, long n) {
+        of(prefix).misses.add(n);
+    }
+
+    /**
+     * 命中了空值或被布隆过滤器拦截
+     */
+    public void nullHit(String prefix) {
+        of(prefix).nullHits.increment();
+    }
+
+    public void rebuild(String prefix) {
+        of(prefix).rebuilds.increment();
+    }
+
+    /**
+     * 记录一次Redis调用耗时
+     * @param startNanos 调用前的 System.nanoTime()
+     */
+    public void latency(String prefix, long startNanos) {
+        of(prefix).record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * 各前缀的计数和耗时分位数快照，耗时单位毫秒，分位数取所在桶的上界
+     */
+    public Map<String, Map<String, Object>> snapshot() {
+        Map<String, Map<String, Object>> snapshot = new TreeMap<>();
+        metrics.forEach((prefix, pm) -> snapshot.put(prefix, pm.snapshot()));
+        return snapshot;
+    }
+
+    /**
+     * 由key得到统计用的前缀，cache:shop:1 -> cache:shop:
+     */
+    static String prefixOf(String key) {
+        int i = key.lastIndexOf(':');
+        return i < 0 ? key : key.substring(0, i + 1);
+    }
+
+    private PrefixMetrics of(String prefix) {
+        PrefixMetrics pm = metrics.get(prefix);
+        return pm != null ? pm : metrics.computeIfAbsent(prefix, k -> new PrefixMetrics());
+    }
+
+    private static class PrefixMetrics {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder nullHits = new LongAdder();
+        final LongAdder rebuilds = new LongAdder();
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        final LongAdder totalNanos = new LongAdder();
+
+        void record(long nanos) {
+            long micros = nanos / 1000;
+            int i = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            buckets.incrementAndGet(i);
+            totalNanos.add(nanos);
+        }
+
+        Map<String, Object> snapshot() {
+            long[] counts = new long[BUCKETS];
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                count += counts[i];
+            }
+            long h = hits.sum();
+            long m = misses.sum();
+            long n = nullHits.sum();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("hits", h);
+            map.put("misses", m);
+            map.put("nullHits", n);
+            map.put("rebuilds", rebuilds.sum());
+            map.put("hitRatio", h + m + n == 0 ? 0D : (double) (h + n) / (h + m + n));
+            map.put("calls", count);
+            map.put("avgMs", count == 0 ? 0D : totalNanos.sum() / 1e6 / count);
+            map.put("p50Ms", percentile(counts, count, 0.50));
+            map.put("p90Ms", percentile(counts, count, 0.90));
+            map.put("p99Ms", percentile(counts, count, 0.99));
+            map.put("p999Ms", percentile(counts, count, 0.999));
+            return map;
+        }
+
+        private static double percentile(long[] counts, long count, double p) {
+            if (count == 0) {
+                return 0D;
+            }
+            long rank = (long) Math.ceil(count * p);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return (1L << i) / 1000D;
+                }
+            }
+            return (1L << (BUCKETS - 1)) / 1000D;
+        }
+    }
+}
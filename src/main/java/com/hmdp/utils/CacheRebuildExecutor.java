@@ -0,0 +1,124 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 所有缓存后台重建共用的有界线程池。
+ * 同一个key在排队或执行中时不会重复提交；队列满时直接丢弃任务，调用方继续返回旧数据。
+ */
+@Slf4j
+@Component
+public class CacheRebuildExecutor {
+
+    @Value("${hmdp.cache.rebuild.threads:10}")
+    private int threads;
+    @Value("${hmdp.cache.rebuild.queue-capacity:1000}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * 排队或执行中的key
+     */
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder runNanos = new LongAdder();
+    private final AtomicLong maxRunNanos = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger seq = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "cache-rebuild-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    public boolean isPending(String key) {
+        return pendingKeys.contains(key);
+    }
+
+    /**
+     * 提交重建任务
+     * @return 是否被接受，key已在重建中或队列已满时返回false
+     */
+    public boolean submit(String key, Runnable task) {
+        if (!pendingKeys.add(key)) {
+            deduplicated.increment();
+            return false;
+        }
+        long enqueueAt = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                waitNanos.add(start - enqueueAt);
+                try {
+                    task.run();
+                    completed.increment();
+                } catch (Exception e) {
+                    failed.increment();
+                    log.error("缓存重建失败, key={}", key, e);
+                } finally {
+                    pendingKeys.remove(key);
+                    long cost = System.nanoTime() - start;
+                    runNanos.add(cost);
+                    maxRunNanos.accumulateAndGet(cost, Math::max);
+                }
+            });
+            submitted.increment();
+            return true;
+        } catch (RejectedExecutionException e) {
+            pendingKeys.remove(key);
+            dropped.increment();
+            return false;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long done = completed.sum() + failed.sum();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("queueDepth", executor.getQueue().size());
+        m.put("queueCapacity", queueCapacity);
+        m.put("active", executor.getActiveCount());
+        m.put("submitted", submitted.sum());
+        m.put("completed", completed.sum());
+        m.put("failed", failed.sum());
+        m.put("dropped", dropped.sum());
+        m.put("deduplicated", deduplicated.sum());
+        m.put("avgWaitMs", done == 0 ? 0D : waitNanos.sum() / 1e6 / done);
+        m.put("avgRebuildMs", done == 0 ? 0D : runNanos.sum() / 1e6 / done);
+        m.put("maxRebuildMs", maxRunNanos.get() / 1e6);
+        return m;
+    }
+}
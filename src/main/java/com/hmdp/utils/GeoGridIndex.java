@@ -0,0 +1,385 @@
+package com.hmdp.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内的经纬度网格索引：按 cellDegrees 把经纬度切成格子，每个格子用三个数组保存 id、经度、纬度。
+ * 查询从查询点所在格子开始一圈圈向外扫描，用有界大顶堆保留最近的 limit 个点，
+ * 已找满且下一圈的最近可能距离超过堆顶时提前结束，不需要像 GEOSEARCH 那样排序半径内的全部点。
+ * 格子不可变，写入时复制整个格子再替换，读不加锁；写操作用 synchronized 串行，
+ * 另外记录每个点所在的格子，删除和移动只复制该点所在的格子，与总点数无关。
+ * 距离用与 Redis 相同的地球半径和 haversine 公式计算，单位米。
+ */
+public class GeoGridIndex {
+
+    /**
+     * 与 Redis geohashGetDistance 使用的地球半径一致
+     */
+    private static final double EARTH_RADIUS_METERS = 6372797.560856;
+    private static final double METERS_PER_DEGREE = Math.PI * EARTH_RADIUS_METERS / 180;
+
+    private final double cellDegrees;
+    private final long lonCells;
+    private final Map<Long, Cell> cells = new ConcurrentHashMap<>();
+    /**
+     * id -> 所在格子，只在持有锁的写操作中访问
+     */
+    private LongLongMap cellOf = new LongLongMap(16);
+    private volatile int size;
+
+    public GeoGridIndex(double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+        this.lonCells = (long) Math.ceil(360 / cellDegrees);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int cellCount() {
+        return cells.size();
+    }
+
+    public synchronized boolean contains(long id) {
+        return cellOf.get(id, -1) >= 0;
+    }
+
+    /**
+     * 新增或移动一个点，已存在的同id点会先删除
+     */
+    public synchronized void put(long id, double x, double y) {
+        remove(id);
+        long key = cellKey(x, y);
+        Cell old = cells.get(key);
+        cells.put(key, old == null ? new Cell(new long[]{id}, new double[]{x}, new double[]{y}) : old.append(id, x, y));
+        cellOf.put(id, key);
+        size++;
+    }
+
+    /**
+     * 删除一个点，只访问它所在的格子
+     */
+    public synchronized boolean remove(long id) {
+        long key = cellOf.remove(id, -1);
+        if (key < 0) {
+            return false;
+        }
+        Cell cell = cells.get(key);
+        int i = cell.indexOf(id);
+        if (cell.ids.length == 1) {
+            cells.remove(key);
+        } else {
+            cells.put(key, cell.without(i));
+        }
+        size--;
+        return true;
+    }
+
+    /**
+     * 半径内距离最近的 limit 个点，按距离升序
+     */
+    public List<Hit> search(double x, double y, double radiusMeters, int limit) {
+        if (limit <= 0 || size == 0) {
+            return new ArrayList<>(0);
+        }
+        long latIndex = latIndex(y);
+        long lonIndex = lonIndex(x);
+        // 经度方向的格子宽度随纬度变窄，按半径范围内最高纬度处的宽度估算每圈的最近距离
+        double maxLat = Math.min(89.9, Math.abs(y) + radiusMeters / METERS_PER_DEGREE + cellDegrees);
+        double minCellMeters = cellDegrees * METERS_PER_DEGREE * Math.cos(Math.toRadians(maxLat));
+        long maxRing = (long) Math.ceil(radiusMeters / minCellMeters) + 1;
+        BoundedHeap heap = new BoundedHeap(limit);
+        for (long ring = 0; ring <= maxRing; ring++) {
+            // 第 ring 圈的点与查询点至少相隔 ring-1 个完整格子
+            double ringMin = (ring - 1) * minCellMeters;
+            if (ringMin > radiusMeters || (heap.isFull() && ringMin > heap.maxDistance())) {
+                break;
+            }
+            for (long dLat = -ring; dLat <= ring; dLat++) {
+                long lat = latIndex + dLat;
+                if (lat < 0 || lat * cellDegrees > 180) {
+                    continue;
+                }
+                long step = Math.abs(dLat) == ring ? 1 : Math.max(1, 2 * ring);
+                for (long dLon = -ring; dLon <= ring; dLon += step) {
+                    Cell cell = cells.get(lat * lonCells + Math.floorMod(lonIndex + dLon, lonCells));
+                    if (cell != null) {
+                        cell.collect(x, y, radiusMeters, heap);
+                    }
+                }
+            }
+        }
+        return heap.sorted();
+    }
+
+    /**
+     * 批量构建用，调用方保证id不重复，比逐个 put 少了格子复制
+     */
+    public static class Builder {
+        private final GeoGridIndex index;
+        private final Map<Long, CellBuffer> buffers = new HashMap<>();
+
+        public Builder(double cellDegrees) {
+            this.index = new GeoGridIndex(cellDegrees);
+        }
+
+        public void add(long id, double x, double y) {
+            buffers.computeIfAbsent(index.cellKey(x, y), k -> new CellBuffer()).add(id, x, y);
+        }
+
+        public GeoGridIndex build() {
+            int total = 0;
+            for (CellBuffer buffer : buffers.values()) {
+                total += buffer.size;
+            }
+            LongLongMap cellOf = new LongLongMap(total);
+            for (Map.Entry<Long, CellBuffer> entry : buffers.entrySet()) {
+                CellBuffer buffer = entry.getValue();
+                index.cells.put(entry.getKey(), new Cell(Arrays.copyOf(buffer.ids, buffer.size),
+                        Arrays.copyOf(buffer.xs, buffer.size), Arrays.copyOf(buffer.ys, buffer.size)));
+                for (int i = 0; i < buffer.size; i++) {
+                    cellOf.put(buffer.ids[i], entry.getKey());
+                }
+            }
+            synchronized (index) {
+                index.cellOf = cellOf;
+            }
+            index.size = total;
+            return index;
+        }
+    }
+
+    private static final class CellBuffer {
+        long[] ids = new long[4];
+        double[] xs = new double[4];
+        double[] ys = new double[4];
+        int size;
+
+        void add(long id, double x, double y) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                xs = Arrays.copyOf(xs, size * 2);
+                ys = Arrays.copyOf(ys, size * 2);
+            }
+            ids[size] = id;
+            xs[size] = x;
+            ys[size] = y;
+            size++;
+        }
+    }
+
+    public static final class Hit {
+        private final long id;
+        private final double distance;
+        private final double x;
+        private final double y;
+
+        public Hit(long id, double distance, double x, double y) {
+            this.id = id;
+            this.distance = distance;
+            this.x = x;
+            this.y = y;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * 距离，单位米
+         */
+        public double getDistance() {
+            return distance;
+        }
+
+        public double getX() {
+            return x;
+        }
+
+        public double getY() {
+            return y;
+        }
+    }
+
+    /**
+     * 两点间的球面距离，单位米，与 Redis GEODIST 的算法一致
+     */
+    public static double distance(double x1, double y1, double x2, double y2) {
+        double lat1 = Math.toRadians(y1);
+        double lat2 = Math.toRadians(y2);
+        double u = Math.sin((lat2 - lat1) / 2);
+        double v = Math.sin(Math.toRadians(x2 - x1) / 2);
+        return 2.0 * EARTH_RADIUS_METERS * Math.asin(Math.sqrt(u * u + Math.cos(lat1) * Math.cos(lat2) * v * v));
+    }
+
+    private long cellKey(double x, double y) {
+        return latIndex(y) * lonCells + lonIndex(x);
+    }
+
+    private long latIndex(double y) {
+        return (long) Math.floor((y + 90) / cellDegrees);
+    }
+
+    private long lonIndex(double x) {
+        return Math.floorMod((long) Math.floor((x + 180) / cellDegrees), lonCells);
+    }
+
+    private static final class Cell {
+        final long[] ids;
+        final double[] xs;
+        final double[] ys;
+
+        Cell(long[] ids, double[] xs, double[] ys) {
+            this.ids = ids;
+            this.xs = xs;
+            this.ys = ys;
+        }
+
+        int indexOf(long id) {
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        Cell append(long id, double x, double y) {
+            int n = ids.length;
+            long[] newIds = Arrays.copyOf(ids, n + 1);
+            double[] newXs = Arrays.copyOf(xs, n + 1);
+            double[] newYs = Arrays.copyOf(ys, n + 1);
+            newIds[n] = id;
+            newXs[n] = x;
+            newYs[n] = y;
+            return new Cell(newIds, newXs, newYs);
+        }
+
+        Cell without(int index) {
+            int n = ids.length;
+            long[] newIds = new long[n - 1];
+            double[] newXs = new double[n - 1];
+            double[] newYs = new double[n - 1];
+            System.arraycopy(ids, 0, newIds, 0, index);
+            System.arraycopy(ids, index + 1, newIds, index, n - index - 1);
+            System.arraycopy(xs, 0, newXs, 0, index);
+            System.arraycopy(xs, index + 1, newXs, index, n - index - 1);
+            System.arraycopy(ys, 0, newYs, 0, index);
+            System.arraycopy(ys, index + 1, newYs, index, n - index - 1);
+            return new Cell(newIds, newXs, newYs);
+        }
+
+        void collect(double x, double y, double radiusMeters, BoundedHeap heap) {
+            double bound = heap.isFull() ? Math.min(radiusMeters, heap.maxDistance()) : radiusMeters;
+            for (int i = 0; i < ids.length; i++) {
+                // 球面距离不小于纬度差对应的经线弧长，先用它排除，省掉三角函数
+                if (Math.abs(ys[i] - y) * METERS_PER_DEGREE > bound) {
+                    continue;
+                }
+                double d = distance(x, y, xs[i], ys[i]);
+                if (d <= bound) {
+                    heap.offer(ids[i], d, xs[i], ys[i]);
+                    if (heap.isFull()) {
+                        bound = Math.min(radiusMeters, heap.maxDistance());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 按距离的大顶堆，只保留最近的 capacity 个
+     */
+    private static final class BoundedHeap {
+        final long[] ids;
+        final double[] distances;
+        final double[] xs;
+        final double[] ys;
+        int size;
+
+        BoundedHeap(int capacity) {
+            ids = new long[capacity];
+            distances = new double[capacity];
+            xs = new double[capacity];
+            ys = new double[capacity];
+        }
+
+        boolean isFull() {
+            return size == ids.length;
+        }
+
+        double maxDistance() {
+            return distances[0];
+        }
+
+        void offer(long id, double distance, double x, double y) {
+            if (size < ids.length) {
+                int i = size++;
+                // 上浮
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (distances[parent] >= distance) {
+                        break;
+                    }
+                    move(parent, i);
+                    i = parent;
+                }
+                set(i, id, distance, x, y);
+                return;
+            }
+            if (distance >= distances[0]) {
+                return;
+            }
+            siftDown(0, id, distance, x, y, size);
+        }
+
+        void siftDown(int i, long id, double distance, double x, double y, int n) {
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= n) {
+                    break;
+                }
+                if (child + 1 < n && distances[child + 1] > distances[child]) {
+                    child++;
+                }
+                if (distances[child] <= distance) {
+                    break;
+                }
+                move(child, i);
+                i = child;
+            }
+            set(i, id, distance, x, y);
+        }
+
+        private void move(int from, int to) {
+            set(to, ids[from], distances[from], xs[from], ys[from]);
+        }
+
+        private void set(int i, long id, double distance, double x, double y) {
+            ids[i] = id;
+            distances[i] = distance;
+            xs[i] = x;
+            ys[i] = y;
+        }
+
+        /**
+         * 依次弹出堆顶，得到升序结果
+         */
+        List<Hit> sorted() {
+            Hit[] hits = new Hit[size];
+            for (int n = size; n > 0; n--) {
+                hits[n - 1] = new Hit(ids[0], distances[0], xs[0], ys[0]);
+                if (n > 1) {
+                    siftDown(0, ids[n - 1], distances[n - 1], xs[n - 1], ys[n - 1], n - 1);
+                }
+            }
+            size = 0;
+            return Arrays.asList(hits);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.hmdp.utils;
+
+import java.util.Arrays;
+
+/**
+ * 标准 base32 geohash 编码，用来把坐标量化成格子：同一格子内的坐标得到相同的字符串。
+ * 6位精度的格子约 1.2km x 0.6km。
+ */
+public class GeoHash {
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+    private static final int[] DECODE = new int[128];
+    static {
+        Arrays.fill(DECODE, -1);
+        for (int i = 0; i < BASE32.length; i++) {
+            DECODE[BASE32[i]] = i;
+        }
+    }
+
+    private GeoHash() {
+    }
+
+    public static String encode(double x, double y, int precision) {
+        double minLon = -180, maxLon = 180, minLat = -90, maxLat = 90;
+        char[] hash = new char[precision];
+        boolean even = true;
+        int bit = 0, ch = 0, n = 0;
+        while (n < precision) {
+            if (even) {
+                double mid = (minLon + maxLon) / 2;
+                if (x >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLon = mid;
+                } else {
+                    ch <<= 1;
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (y >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                } else {
+                    ch <<= 1;
+                    maxLat = mid;
+                }
+            }
+            even = !even;
+            if (++bit == 5) {
+                hash[n++] = BASE32[ch];
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return new String(hash);
+    }
+
+    /**
+     * 格子中心点
+     * @return {经度, 纬度}，不是合法geohash时返回null
+     */
+    public static double[] center(String hash) {
+        double[] b = bounds(hash);
+        return b == null ? null : new double[]{(b[0] + b[2]) / 2, (b[1] + b[3]) / 2};
+    }
+
+    /**
+     * 格子的经纬度范围
+     * @return {最小经度, 最小纬度, 最大经度, 最大纬度}，不是合法geohash时返回null
+     */
+    public static double[] bounds(String hash) {
+        double minLon = -180, maxLon = 180, minLat = -90, maxLat = 90;
+        boolean even = true;
+        for (int i = 0; i < hash.length(); i++) {
+            char c = hash.charAt(i);
+            int value = c < DECODE.length ? DECODE[c] : -1;
+            if (value < 0) {
+                return null;
+            }
+            for (int mask = 16; mask > 0; mask >>= 1) {
+                if (even) {
+                    double mid = (minLon + maxLon) / 2;
+                    if ((value & mask) != 0) {
+                        minLon = mid;
+                    } else {
+                        maxLon = mid;
+                    }
+                } else {
+                    double mid = (minLat + maxLat) / 2;
+                    if ((value & mask) != 0) {
+                        minLat = mid;
+                    } else {
+                        maxLat = mid;
+                    }
+                }
+                even = !even;
+            }
+        }
+        return new double[]{minLon, minLat, maxLon, maxLat};
+    }
+}
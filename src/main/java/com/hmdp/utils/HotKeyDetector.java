@@ -0,0 +1,330 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 热点key探测：在Redis访问路径上按比例抽样，用 count-min sketch 统计每个时间窗口内的访问次数，
+ * 窗口结束时按估算QPS排出 top-K，超过阈值的key晋升为热点，其值放入短TTL的进程内缓存；
+ * 连续若干个窗口不再热的key被降级并清掉本地副本。
+ */
+@Slf4j
+@Component
+public class HotKeyDetector {
+
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 1 << 12;
+    private static final int MAX_EVENTS = 100;
+
+    @Value("${hmdp.cache.hot-key.enabled:false}")
+    private boolean enabled;
+    @Value("${hmdp.cache.hot-key.sample-rate:0.1}")
+    private double sampleRate;
+    @Value("${hmdp.cache.hot-key.window-seconds:5}")
+    private int windowSeconds;
+    @Value("${hmdp.cache.hot-key.top-k:20}")
+    private int topK;
+    @Value("${hmdp.cache.hot-key.threshold-qps:100}")
+    private double thresholdQps;
+    @Value("${hmdp.cache.hot-key.cool-down-windows:2}")
+    private int coolDownWindows;
+    @Value("${hmdp.cache.hot-key.local-ttl-seconds:2}")
+    private long localTtlSeconds;
+
+    /**
+     * 当前窗口的计数，窗口切换时整体替换
+     */
+    private volatile Window window;
+
+    /**
+     * 已晋升的热点key -> 连续未达到阈值的窗口数
+     */
+    private final Map<String, Integer> promoted = new ConcurrentHashMap<>();
+
+    /**
+     * 热点key的值，只有晋升后的key才会写入
+     */
+    private LocalCache hotCache;
+
+    private volatile List<Map<String, Object>> lastTopK = Collections.emptyList();
+    private final Deque<Map<String, Object>> events = new ArrayDeque<>();
+    private final LongAdder sampled = new LongAdder();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        window = new Window(topK * 8);
+        hotCache = new LocalCache(topK * 4, TimeUnit.SECONDS.toMillis(localTtlSeconds));
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "hot-key-detector");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(this::rotate, windowSeconds, windowSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 记录一次访问，按 sample-rate 抽样，未抽中的访问只有一次随机数开销
+     */
+    public void record(String key) {
+        if (!enabled || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        sampled.increment();
+        window.add(key);
+    }
+
+    public boolean isHot(String key) {
+        return enabled && promoted.containsKey(key);
+    }
+
+    /**
+     * 读取热点key的本地副本，不是热点或已过期返回null
+     */
+    public <R> R getLocal(String key, Class<R> type) {
+        if (!isHot(key)) {
+            return null;
+        }
+        return hotCache.get(CacheMetrics.prefixOf(key), key, type);
+    }
+
+    /**
+     * 只有热点key才写入本地副本
+     */
+    public void putLocal(String key, Object value) {
+        if (isHot(key)) {
+            hotCache.put(key, value);
+        }
+    }
+
+    public void invalidate(String key) {
+        if (enabled) {
+            hotCache.invalidate(key);
+        }
+    }
+
+    /**
+     * 窗口结束：排出 top-K，晋升超过阈值的key，降级连续冷却的key
+     */
+    private void rotate() {
+        try {
+            Window finished = window;
+            window = new Window(topK * 8);
+            double scale = 1 / (sampleRate * windowSeconds);
+            List<Map.Entry<String, Long>> ranked = finished.candidates.keySet().stream()
+                    .map(key -> new AbstractMap.SimpleEntry<>(key, finished.estimate(key)))
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .limit(topK)
+                    .collect(Collectors.toList());
+            List<Map<String, Object>> top = new ArrayList<>(ranked.size());
+            Set<String> hot = new HashSet<>();
+            for (Map.Entry<String, Long> e : ranked) {
+                double qps = e.getValue() * scale;
+                Map<String, Object> m = new LinkedHashMap<>();
+                m.put("key", e.getKey());
+                m.put("qps", Math.round(qps));
+                top.add(m);
+                if (qps >= thresholdQps) {
+                    hot.add(e.getKey());
+                }
+            }
+            lastTopK = top;
+            for (String key : hot) {
+                if (promoted.put(key, 0) == null) {
+                    event("promote", key);
+                }
+            }
+            for (Map.Entry<String, Integer> e : promoted.entrySet()) {
+                String key = e.getKey();
+                if (hot.contains(key)) {
+                    continue;
+                }
+                int cold = e.getValue() + 1;
+                if (cold >= coolDownWindows) {
+                    promoted.remove(key);
+                    hotCache.invalidate(key);
+                    event("demote", key);
+                } else {
+                    e.setValue(cold);
+                }
+            }
+        } catch (Exception e) {
+            log.error("热点key统计失败", e);
+        }
+    }
+
+    private void event(String type, String key) {
+        log.info("热点key{}: {}", "promote".equals(type) ? "晋升" : "降级", key);
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("type", type);
+        m.put("key", key);
+        m.put("time", LocalDateTime.now().toString());
+        synchronized (events) {
+            events.addFirst(m);
+            if (events.size() > MAX_EVENTS) {
+                events.removeLast();
+            }
+        }
+    }
+
+    /**
+     * 上个窗口的 top-K、当前热点key和最近的晋升/降级事件
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("enabled", enabled);
+        if (!enabled) {
+            return m;
+        }
+        m.put("windowSeconds", windowSeconds);
+        m.put("sampleRate", sampleRate);
+        m.put("thresholdQps", thresholdQps);
+        m.put("sampled", sampled.sum());
+        m.put("topK", lastTopK);
+        m.put("promoted", new ArrayList<>(promoted.keySet()));
+        m.put("localStats", hotCache.statsSnapshot());
+        synchronized (events) {
+            m.put("events", new ArrayList<>(events));
+        }
+        return m;
+    }
+
+    /**
+     * 一个时间窗口的 count-min sketch，加上按估算值排序的候选key最小堆(数量有上限)，
+     * 堆满后新key的估算值超过堆顶才会挤掉估算值最小的候选
+     */
+    private static class Window {
+        final AtomicLongArray counters = new AtomicLongArray(SKETCH_DEPTH * SKETCH_WIDTH);
+        final Map<String, Boolean> candidates = new ConcurrentHashMap<>();
+        final PriorityQueue<Candidate> heap = new PriorityQueue<>(Comparator.comparingLong(c -> c.count));
+        final int maxCandidates;
+        /**
+         * 堆顶估算值的下界，堆满后估算值不超过它的新key不用加锁就能跳过
+         */
+        volatile long floor;
+
+        Window(int maxCandidates) {
+            this.maxCandidates = maxCandidates;
+        }
+
+        void add(String key) {
+            long estimate = Long.MAX_VALUE;
+            int[] idx = indexes(key);
+            for (int i = 0; i < SKETCH_DEPTH; i++) {
+                estimate = Math.min(estimate, counters.incrementAndGet(idx[i]));
+            }
+            if (candidates.containsKey(key)
+                    || (candidates.size() >= maxCandidates && estimate <= floor)) {
+                return;
+            }
+            synchronized (heap) {
+                admit(key, estimate);
+            }
+        }
+
+        /**
+         * 堆里记录的是入堆时的估算值，只会偏小：淘汰前先把堆顶刷新成当前估算值，
+         * 直到堆顶是真正的最小值，再和新key比较
+         */
+        private void admit(String key, long estimate) {
+            if (candidates.containsKey(key)) {
+                return;
+            }
+            if (heap.size() < maxCandidates) {
+                heap.offer(new Candidate(key, estimate));
+                candidates.put(key, Boolean.TRUE);
+                floor = heap.peek().count;
+                return;
+            }
+            Candidate min = heap.peek();
+            long actual;
+            while ((actual = estimate(min.key)) != min.count) {
+                heap.poll();
+                min.count = actual;
+                heap.offer(min);
+                min = heap.peek();
+            }
+            floor = min.count;
+            if (estimate <= min.count) {
+                return;
+            }
+            heap.poll();
+            candidates.remove(min.key);
+            heap.offer(new Candidate(key, estimate));
+            candidates.put(key, Boolean.TRUE);
+            floor = heap.peek().count;
+        }
+
+        long estimate(String key) {
+            long estimate = Long.MAX_VALUE;
+            int[] idx = indexes(key);
+            for (int i = 0; i < SKETCH_DEPTH; i++) {
+                estimate = Math.min(estimate, counters.get(idx[i]));
+            }
+            return estimate;
+        }
+
+        private static int[] indexes(String key) {
+            long hash = MurmurHash.hash64(key);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            int[] idx = new int[SKETCH_DEPTH];
+            for (int i = 0; i < SKETCH_DEPTH; i++) {
+                int combined = h1 + (i + 1) * h2;
+                idx[i] = i * SKETCH_WIDTH + ((combined & Integer.MAX_VALUE) % SKETCH_WIDTH);
+            }
+            return idx;
+        }
+
+        private static class Candidate {
+            final String key;
+            long count;
+
+            Candidate(String key, long count) {
+                this.key = key;
+                this.count = count;
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.hmdp.utils;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * 用 Spring MVC 的 ObjectMapper 编解码，写入的JSON与接口响应完全一致，命中时可以不经解码直接透传给响应(见 {@link #toRawJson})。
+ * 写入的值以一个标记字节开头，后面是JSON；逻辑过期格式为 {"expireTime":...,"data":...,"delta":...}，字段顺序固定，靠开头即可区分。
+ * 只有带标记的值才透传，JSONUtil 写入的值(日期是毫秒数)和响应格式不同，一律解码。
+ * 切换编解码前用 JSONUtil 写入的数据 Jackson 解析不了时交给 {@link JsonCacheCodec}，切换期间旧缓存仍可读。
+ */
+@Component
+public class JacksonCacheCodec implements CacheCodec {
+
+    private static final byte[] EXPIRE_PREFIX = "{\"expireTime\"".getBytes(StandardCharsets.UTF_8);
+    /**
+     * 本编解码写入的值的第一个字节，不是合法的JSON开头，也不同于 BinaryCacheCodec 的 MAGIC
+     */
+    private static final byte MARKER = (byte) 0xA7;
+
+    private final ObjectMapper objectMapper;
+    private final JsonCacheCodec jsonCodec = new JsonCacheCodec();
+
+    /**
+     * 不在Spring容器中使用时(如基准测试)，构造与 Spring Boot 默认配置加上 non_null 等价的 ObjectMapper
+     */
+    public JacksonCacheCodec() {
+        this(Jackson2ObjectMapperBuilder.json()
+                .serializationInclusion(JsonInclude.Include.NON_NULL)
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build());
+    }
+
+    @Autowired
+    public JacksonCacheCodec(ObjectMapper objectMapper) {
+        // 多出的字段说明不是本编解码写入的数据，交给 JsonCacheCodec 兼容处理
+        this.objectMapper = objectMapper.copy().enable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    @Override
+    public String name() {
+        return "jackson";
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        out.write(MARKER);
+        try {
+            objectMapper.writeValue(out, value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public <R> R decode(byte[] bytes, Class<R> type) {
+        int offset = offset(bytes);
+        if (startsWith(bytes, offset, EXPIRE_PREFIX)) {
+            RedisData redisData = decodeWithExpire(bytes, type);
+            return redisData == null ? null : type.cast(redisData.getData());
+        }
+        try {
+            return objectMapper.readValue(bytes, offset, bytes.length - offset, type);
+        } catch (IOException e) {
+            return offset == 0 ? jsonCodec.decode(bytes, type) : null;
+        }
+    }
+
+    @Override
+    public byte[] encodeWithExpire(Object value, LocalDateTime expireTime, long delta) {
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(expireTime);
+        if (delta > 0) {
+            redisData.setDelta(delta);
+        }
+        return encode(redisData);
+    }
+
+    @Override
+    public <R> RedisData decodeWithExpire(byte[] bytes, Class<R> type) {
+        int offset = offset(bytes);
+        if (!startsWith(bytes, offset, EXPIRE_PREFIX)) {
+            return offset == 0 ? jsonCodec.decodeWithExpire(bytes, type) : null;
+        }
+        try {
+            JsonNode json = objectMapper.readTree(new ByteArrayInputStream(bytes, offset, bytes.length - offset));
+            JsonNode expireTime = json.get("expireTime");
+            JsonNode data = json.get("data");
+            if (expireTime == null || expireTime.isNull() || data == null || data.isNull()) {
+                return null;
+            }
+            RedisData redisData = new RedisData();
+            redisData.setExpireTime(LocalDateTime.parse(expireTime.asText()));
+            JsonNode delta = json.get("delta");
+            redisData.setDelta(delta == null || delta.isNull() ? null : delta.asLong());
+            redisData.setData(objectMapper.treeToValue(data, type));
+            return redisData;
+        } catch (IOException | DateTimeParseException e) {
+            return offset == 0 ? jsonCodec.decodeWithExpire(bytes, type) : null;
+        }
+    }
+
+    /**
+     * 本编解码写入的普通值去掉标记就是响应格式的JSON；逻辑过期格式要先取出 data，其他来源的值格式不一定相同，返回null走解码
+     */
+    @Override
+    public String toRawJson(byte[] bytes) {
+        if (offset(bytes) == 0 || startsWith(bytes, 1, EXPIRE_PREFIX)) {
+            return null;
+        }
+        return new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * JSON的起始位置：带标记时为1，其他来源(JSONUtil、加标记之前写入)的值为0
+     */
+    private static int offset(byte[] bytes) {
+        return bytes.length > 0 && bytes[0] == MARKER ? 1 : 0;
+    }
+
+    private static boolean startsWith(byte[] bytes, int offset, byte[] prefix) {
+        if (bytes.length - offset < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
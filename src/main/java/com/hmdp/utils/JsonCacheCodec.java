@@ -0,0 +1,76 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONException;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+/**
+ * 默认的JSON编解码，与之前直接用 JSONUtil 写入的数据格式一致
+ */
+@Component
+public class JsonCacheCodec implements CacheCodec {
+
+    @Override
+    public String name() {
+        return "json";
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <R> R decode(byte[] bytes, Class<R> type) {
+        JSONObject json;
+        try {
+            json = JSONUtil.parseObj(new String(bytes, StandardCharsets.UTF_8));
+        } catch (JSONException e) {
+            // 切换编解码后其他格式(二进制、带标记的Jackson)的旧值，按未命中处理
+            return null;
+        }
+        // 逻辑过期格式的数据(例如预热写入的)也能按普通值读取
+        Object data = json.get("data");
+        if (data instanceof JSONObject && json.containsKey("expireTime")) {
+            return ((JSONObject) data).toBean(type);
+        }
+        return json.toBean(type);
+    }
+
+    @Override
+    public byte[] encodeWithExpire(Object value, LocalDateTime expireTime, long delta) {
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(expireTime);
+        if (delta > 0) {
+            redisData.setDelta(delta);
+        }
+        return JSONUtil.toJsonStr(redisData).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <R> RedisData decodeWithExpire(byte[] bytes, Class<R> type) {
+        // 只解析一次字符串，data 直接从 JSONObject 转成目标类型
+        JSONObject json;
+        try {
+            json = JSONUtil.parseObj(new String(bytes, StandardCharsets.UTF_8));
+        } catch (JSONException e) {
+            return null;
+        }
+        LocalDateTime expireTime = json.get("expireTime", LocalDateTime.class);
+        JSONObject data = json.getJSONObject("data");
+        if (expireTime == null || data == null) {
+            // 普通格式的值(穿透模式写入的)没有逻辑过期时间，按未命中处理
+            return null;
+        }
+        RedisData redisData = new RedisData();
+        redisData.setExpireTime(expireTime);
+        redisData.setDelta(json.getLong("delta"));
+        redisData.setData(data.toBean(type));
+        return redisData;
+    }
+}
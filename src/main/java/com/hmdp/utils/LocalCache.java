@@ -0,0 +1,150 @@
+package com.hmdp.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内的一级缓存(L1)，放在 Redis 前面。
+ * 按 key 的 hash 分段，每段是一个按访问顺序排列的 LinkedHashMap，超过容量淘汰最久未访问的条目(LRU)，
+ * 每个条目带写入时间，超过 ttl 视为未命中。
+ */
+public class LocalCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final long ttlMillis;
+
+    /**
+     * 按 key 前缀统计的命中/未命中次数
+     */
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    public LocalCache(int maxSize, long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        int segmentSize = Math.max(1, maxSize / SEGMENTS);
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+    }
+
+    public <R> R get(String keyPrefix, String key, Class<R> type) {
+        CacheEntry entry = segmentFor(key).get(key);
+        Stats s = statsOf(keyPrefix);
+        if (entry == null || !type.isInstance(entry.value)) {
+            s.misses.increment();
+            return null;
+        }
+        if (entry.expireAt < System.currentTimeMillis()) {
+            segmentFor(key).remove(key);
+            s.misses.increment();
+            return null;
+        }
+        s.hits.increment();
+        return type.cast(entry.value);
+    }
+
+    public void put(String key, Object value) {
+        if (value == null) {
+            return;
+        }
+        segmentFor(key).put(key, new CacheEntry(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    public void invalidate(String key) {
+        segmentFor(key).remove(key);
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * 各前缀的命中统计快照: prefix -> {hits, misses, hitRatio}
+     */
+    public Map<String, Map<String, Object>> statsSnapshot() {
+        Map<String, Map<String, Object>> snapshot = new TreeMap<>();
+        stats.forEach((prefix, s) -> {
+            long hits = s.hits.sum();
+            long misses = s.misses.sum();
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("hits", hits);
+            m.put("misses", misses);
+            m.put("hitRatio", hits + misses == 0 ? 0D : (double) hits / (hits + misses));
+            snapshot.put(prefix, m);
+        });
+        return snapshot;
+    }
+
+    private Stats statsOf(String keyPrefix) {
+        Stats s = stats.get(keyPrefix);
+        return s != null ? s : stats.computeIfAbsent(keyPrefix, k -> new Stats());
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private static class CacheEntry {
+        final Object value;
+        final long expireAt;
+
+        CacheEntry(Object value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private static class Stats {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+    }
+
+    private static class Segment {
+        private final LinkedHashMap<String, CacheEntry> map;
+
+        Segment(int maxSize) {
+            this.map = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        synchronized CacheEntry get(String key) {
+            return map.get(key);
+        }
+
+        synchronized void put(String key, CacheEntry entry) {
+            map.put(key, entry);
+        }
+
+        synchronized void remove(String key) {
+            map.remove(key);
+        }
+
+        synchronized void clear() {
+            map.clear();
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+    }
+}
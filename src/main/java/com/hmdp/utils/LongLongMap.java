@@ -0,0 +1,112 @@
+package com.hmdp.utils;
+
+import java.util.Arrays;
+
+/**
+ * long -> long 的开放寻址哈希表(线性探测，删除时后移填补空位)，不装箱，
+ * 百万级店铺时比 HashMap&lt;Long, Long&gt; 少占几倍内存。key 不能是 Long.MIN_VALUE；不是线程安全的，由调用方加锁
+ */
+final class LongLongMap {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+
+    LongLongMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return key 对应的值，不存在时返回 missing
+     */
+    long get(long key, long missing) {
+        for (int i = index(key); keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return missing;
+    }
+
+    void put(long key, long value) {
+        if ((size + 1) * 2 > keys.length) {
+            resize();
+        }
+        int i = index(key);
+        for (; keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+    }
+
+    /**
+     * @return 删除前的值，不存在时返回 missing
+     */
+    long remove(long key, long missing) {
+        for (int i = index(key); keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                long value = values[i];
+                shiftBack(i);
+                size--;
+                return value;
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * 把空位之后探测链上的元素前移，查找时不会在空位处提前中断
+     */
+    private void shiftBack(int gap) {
+        for (int i = (gap + 1) & mask; keys[i] != EMPTY; i = (i + 1) & mask) {
+            // 空位在该元素的探测路径上(从它的起始位置到当前位置之间)时才能前移
+            if (((i - index(keys[i])) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        keys[gap] = EMPTY;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int j = index(oldKeys[i]);
+                while (keys[j] != EMPTY) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    private int index(long key) {
+        // 连续的自增id乘黄金分割常数后高位分布均匀
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+}
@@ -0,0 +1,486 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisZSetCommands.Limit;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 秒杀订单消息的消费者。
+ * 订单消息可以按优惠券或用户分到N个分区：分区0沿用 stream.orders(hmdp.seckill.stream.key)，其余为 stream.orders:{i}，
+ * 从1个分区改成多个时原有消息仍在分区0中被消费。
+ * 各节点定时在 seckill:consumer:nodes 中心跳，按节点id排序后把分区轮流分给存活节点，节点内再轮流分给各线程，
+ * 节点加入或离开后下一次心跳自动重新分配，期间最多一个心跳周期内可能有两个消费者读同一分区，消费者组保证同一条消息只投递一次。
+ * 离开的节点未确认的消息空闲超过 claim-idle-seconds 后，由分区的新主人 XCLAIM 接管再处理，并删除离开的消费者。
+ * 消费者名为 {节点id}-{线程序号}。每个线程一次读一批，用 {@link IVoucherOrderService#createVoucherOrders} 一个事务写入后一次确认。
+ */
+@Slf4j
+@Component
+public class OrderStreamConsumer {
+
+    public static final String GROUP = "g1";
+    /**
+     * Redis 7 以前 XINFO GROUPS 没有lag字段，需要数一下最后投递位置之后的消息，最多数这么多
+     */
+    private static final int LAG_SCAN_LIMIT = 10000;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    @Value("${hmdp.seckill.consumer.enabled:true}")
+    private boolean enabled;
+    @Value("${hmdp.seckill.consumer.threads:1}")
+    private int threads;
+    @Value("${hmdp.seckill.consumer.node-id:}")
+    private String nodeId;
+    @Value("${hmdp.seckill.consumer.batch-size:100}")
+    private int batchSize;
+    @Value("${hmdp.seckill.consumer.linger-millis:20}")
+    private long lingerMillis;
+    @Value("${hmdp.seckill.consumer.heartbeat-seconds:3}")
+    private long heartbeatSeconds;
+    @Value("${hmdp.seckill.consumer.claim-idle-seconds:30}")
+    private long claimIdleSeconds;
+    @Value("${hmdp.seckill.stream.key:" + RedisConstants.SECKILL_ORDER_STREAM + "}")
+    private String stream;
+    @Value("${hmdp.seckill.stream.partitions:1}")
+    private int partitions;
+
+    private ExecutorService workers;
+    private ScheduledExecutorService heartbeatExecutor;
+    private volatile boolean running = true;
+    /**
+     * 每个线程负责的分区，由心跳线程计算
+     */
+    private volatile int[][] assignment;
+    private volatile List<String> liveNodes = Collections.emptyList();
+    /**
+     * 线程需要先处理自己名下未确认的消息：启动、分区变化、处理失败、接管了别人的消息之后
+     */
+    private AtomicBoolean[] checkPending;
+
+    private final LongAdder consumedBatches = new LongAdder();
+    private final LongAdder consumedRecords = new LongAdder();
+    private final LongAdder createdOrders = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder dbNanos = new LongAdder();
+
+    /**
+     * 第 partition 个分区的stream key，stream 为分区0的key
+     */
+    public static String streamKey(String stream, int partition) {
+        return partition == 0 ? stream : stream + ":" + partition;
+    }
+
+    private String streamKey(int partition) {
+        return streamKey(stream, partition);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.info("订单消费者未开启");
+            return;
+        }
+        if (StrUtil.isBlank(nodeId)) {
+            // pid@hostname
+            nodeId = ManagementFactory.getRuntimeMXBean().getName();
+        }
+        assignment = new int[threads][0];
+        checkPending = new AtomicBoolean[threads];
+        for (int t = 0; t < threads; t++) {
+            checkPending[t] = new AtomicBoolean(true);
+        }
+        for (int p = 0; p < partitions; p++) {
+            createGroup(streamKey(p));
+        }
+        heartbeat();
+        heartbeatExecutor = Executors.newSingleThreadScheduledExecutor();
+        heartbeatExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                heartbeat();
+            } catch (Exception e) {
+                log.error("订单消费者心跳异常", e);
+            }
+        }, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+        workers = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            workers.submit(() -> work(index));
+        }
+        log.info("订单消费者启动, 节点={}, 线程{}个, 分区{}个", nodeId, threads, partitions);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        heartbeatExecutor.shutdownNow();
+        workers.shutdownNow();
+        // 主动离开，其他节点下一次心跳就重新分配，不必等超时
+        stringRedisTemplate.opsForZSet().remove(RedisConstants.SECKILL_CONSUMER_NODES_KEY, nodeId);
+    }
+
+    private void createGroup(String key) {
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands()
+                    .xGroupCreate(key.getBytes(StandardCharsets.UTF_8), GROUP, ReadOffset.from("0"), true));
+        } catch (Exception e) {
+            // BUSYGROUP: 组已经存在
+            log.debug("消费者组已存在, stream={}", key);
+        }
+    }
+
+    private void heartbeat() {
+        long now = System.currentTimeMillis();
+        String nodesKey = RedisConstants.SECKILL_CONSUMER_NODES_KEY;
+        stringRedisTemplate.opsForZSet().add(nodesKey, nodeId, now);
+        // 超过3个心跳周期没有更新的节点视为已离开
+        stringRedisTemplate.opsForZSet().removeRangeByScore(nodesKey, 0, now - TimeUnit.SECONDS.toMillis(heartbeatSeconds * 3));
+        Set<String> nodes = stringRedisTemplate.opsForZSet().range(nodesKey, 0, -1);
+        List<String> live = nodes == null ? new ArrayList<>() : new ArrayList<>(nodes);
+        if (!live.contains(nodeId)) {
+            live.add(nodeId);
+        }
+        Collections.sort(live);
+        int[][] next = assign(live.size(), live.indexOf(nodeId));
+        if (!Arrays.deepEquals(next, assignment)) {
+            log.info("订单分区重新分配, 存活节点{}, 本节点各线程的分区{}", live, Arrays.deepToString(next));
+            assignment = next;
+            for (AtomicBoolean flag : checkPending) {
+                flag.set(true);
+            }
+        }
+        liveNodes = live;
+        claimOrphans(new HashSet<>(live));
+    }
+
+    /**
+     * 分区 p 属于第 p % 节点数 个节点，节点分到的分区再轮流分给各线程
+     */
+    private int[][] assign(int nodeCount, int nodeIndex) {
+        List<List<Integer>> perThread = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            perThread.add(new ArrayList<>());
+        }
+        int n = 0;
+        for (int p = 0; p < partitions; p++) {
+            if (p % nodeCount == nodeIndex) {
+                perThread.get(n++ % threads).add(p);
+            }
+        }
+        int[][] result = new int[threads][];
+        for (int t = 0; t < threads; t++) {
+            result[t] = perThread.get(t).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return result;
+    }
+
+    /**
+     * 本节点负责的分区中，已离开节点的消费者名下空闲足够久的消息转给负责该分区的线程，没有未确认消息的离开者从组中删除
+     */
+    private void claimOrphans(Set<String> live) {
+        int[][] current = assignment;
+        for (int t = 0; t < current.length; t++) {
+            String owner = consumerName(t);
+            for (int p : current[t]) {
+                String key = streamKey(p);
+                StreamInfo.XInfoConsumers consumers = stringRedisTemplate.opsForStream().consumers(key, GROUP);
+                for (StreamInfo.XInfoConsumer consumer : consumers.stream().collect(Collectors.toList())) {
+                    String name = consumer.consumerName();
+                    if (!isOrphan(name, live)) {
+                        continue;
+                    }
+                    if (consumer.pendingCount() == 0) {
+                        stringRedisTemplate.opsForStream().deleteConsumer(key, Consumer.from(GROUP, name));
+                        log.info("删除已离开的消费者{}, stream={}", name, key);
+                        continue;
+                    }
+                    claim(key, name, owner, t);
+                }
+            }
+        }
+    }
+
+    private void claim(String key, String from, String to, int thread) {
+        PendingMessages pending = stringRedisTemplate.opsForStream()
+                .pending(key, Consumer.from(GROUP, from), Range.unbounded(), batchSize);
+        Duration minIdle = Duration.ofSeconds(claimIdleSeconds);
+        List<RecordId> ids = new ArrayList<>(pending.size());
+        for (PendingMessage message : pending) {
+            if (message.getElapsedTimeSinceLastDelivery().compareTo(minIdle) >= 0) {
+                ids.add(message.getId());
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        List<RecordId> claimed = stringRedisTemplate.execute((RedisCallback<List<RecordId>>) connection ->
+                connection.streamCommands().xClaimJustId(key.getBytes(StandardCharsets.UTF_8), GROUP, to,
+                        RedisStreamCommands.XClaimOptions.minIdle(minIdle).ids(ids)));
+        if (claimed != null && !claimed.isEmpty()) {
+            log.warn("接管已离开的消费者{}的{}条消息, stream={}, 新消费者={}", from, claimed.size(), key, to);
+            checkPending[thread].set(true);
+        }
+    }
+
+    private void work(int thread) {
+        String consumer = consumerName(thread);
+        while (running) {
+            try {
+                if (checkPending[thread].getAndSet(false)) {
+                    handlePendingList(consumer);
+                }
+                int[] owned = assignment[thread];
+                if (owned.length == 0) {
+                    // 分区比线程少，等下一次重新分配
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(heartbeatSeconds));
+                    continue;
+                }
+                //1.获取消息队列中的订单信息 XREADGROUP GROUP g1 {consumer} COUNT batchSize BLOCK 2000 STREAMS ... >
+                List<MapRecord<String, Object, Object>> list = readBatch(consumer, owned);
+                if (list.isEmpty()) {
+                    continue;
+                }
+                //2.批量创建订单，每个分区一次ACK
+                handleBatch(list);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                log.error("处理订单异常", e);
+                checkPending[thread].set(true);
+            }
+        }
+    }
+
+    /**
+     * 读到第一条消息后，不满一批时最多再等 lingerMillis 凑批
+     */
+    private List<MapRecord<String, Object, Object>> readBatch(String consumer, int[] owned) {
+        List<MapRecord<String, Object, Object>> first = read(consumer, owned, batchSize, Duration.ofSeconds(2));
+        if (first == null || first.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<MapRecord<String, Object, Object>> batch = new ArrayList<>(first);
+        long deadline = System.currentTimeMillis() + lingerMillis;
+        while (batch.size() < batchSize) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            List<MapRecord<String, Object, Object>> more = read(consumer, owned, batchSize - batch.size(), Duration.ofMillis(remaining));
+            if (more == null || more.isEmpty()) {
+                break;
+            }
+            batch.addAll(more);
+        }
+        return batch;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<MapRecord<String, Object, Object>> read(String consumer, int[] owned, int count, Duration block) {
+        StreamOffset<String>[] offsets = new StreamOffset[owned.length];
+        for (int i = 0; i < owned.length; i++) {
+            offsets[i] = StreamOffset.create(streamKey(owned[i]), ReadOffset.lastConsumed());
+        }
+        return stringRedisTemplate.opsForStream().read(
+                Consumer.from(GROUP, consumer),
+                StreamReadOptions.empty().count(count).block(block),
+                offsets
+        );
+    }
+
+    /**
+     * 处理自己名下未确认的消息，包括已经分给别人的分区中的
+     */
+    private void handlePendingList(String consumer) throws InterruptedException {
+        for (int p = 0; p < partitions; p++) {
+            String key = streamKey(p);
+            while (running) {
+                try {
+                    //1.获取自己名下未确认的消息 XREADGROUP GROUP g1 {consumer} COUNT batchSize STREAMS {key} 0
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            Consumer.from(GROUP, consumer),
+                            StreamReadOptions.empty().count(batchSize),
+                            StreamOffset.create(key, ReadOffset.from("0"))
+                    );
+                    if (list == null || list.isEmpty()) {
+                        break;
+                    }
+                    //2.批量创建订单，一次ACK
+                    handleBatch(list);
+                } catch (Exception e) {
+                    log.error("处理pending_list异常", e);
+                    Thread.sleep(20);
+                }
+            }
+        }
+    }
+
+    private void handleBatch(List<MapRecord<String, Object, Object>> records) {
+        long start = System.nanoTime();
+        List<VoucherOrder> orders = new ArrayList<>(records.size());
+        Map<String, List<RecordId>> idsByStream = new LinkedHashMap<>();
+        for (MapRecord<String, Object, Object> record : records) {
+            orders.add(BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), false));
+            idsByStream.computeIfAbsent(record.getStream(), k -> new ArrayList<>()).add(record.getId());
+        }
+        long dbStart = System.nanoTime();
+        int created = voucherOrderService.createVoucherOrders(orders);
+        dbNanos.add(System.nanoTime() - dbStart);
+        // 事务提交后每个分区一次确认
+        idsByStream.forEach((stream, ids) ->
+                stringRedisTemplate.opsForStream().acknowledge(stream, GROUP, ids.toArray(new RecordId[0])));
+        consumedBatches.increment();
+        consumedRecords.add(records.size());
+        createdOrders.add(created);
+        busyNanos.add(System.nanoTime() - start);
+    }
+
+    private String consumerName(int thread) {
+        return nodeId + "-" + thread;
+    }
+
+    /**
+     * 消费者名去掉线程序号就是节点id，旧版本的 c1 这类名字本身当作节点id。
+     * 节点已离开，或者是本节点减少线程数后不再使用的名字，都没有人会再处理它名下的消息
+     */
+    private boolean isOrphan(String consumerName, Set<String> live) {
+        int i = consumerName.lastIndexOf('-');
+        String node = i < 0 ? consumerName : consumerName.substring(0, i);
+        if (node.equals(nodeId)) {
+            return !consumerName.substring(i + 1).matches("\\d+") || Integer.parseInt(consumerName.substring(i + 1)) >= threads;
+        }
+        return !live.contains(node);
+    }
+
+    /**
+     * 消费者的参数、吞吐，以及每个分区的积压和各消费者未确认的消息数
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("enabled", enabled);
+        if (!enabled) {
+            return m;
+        }
+        m.put("nodeId", nodeId);
+        m.put("liveNodes", liveNodes);
+        int[][] current = assignment;
+        Map<String, Object> owned = new LinkedHashMap<>();
+        for (int t = 0; t < current.length; t++) {
+            owned.put(consumerName(t), current[t]);
+        }
+        m.put("assignment", owned);
+        m.put("batchSize", batchSize);
+        m.put("lingerMillis", lingerMillis);
+        long batches = consumedBatches.sum();
+        long records = consumedRecords.sum();
+        long busyMs = TimeUnit.NANOSECONDS.toMillis(busyNanos.sum());
+        m.put("batches", batches);
+        m.put("records", records);
+        m.put("orders", createdOrders.sum());
+        m.put("avgBatch", batches == 0 ? 0 : (double) records / batches);
+        // 处理消息期间的吞吐，不含等待消息的时间
+        m.put("ordersPerSecond", busyMs == 0 ? 0 : records * 1000 / busyMs);
+        // 每条订单分摊的处理耗时，以及其中写数据库的部分
+        m.put("avgOrderMicros", records == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(busyNanos.sum()) / records);
+        m.put("avgOrderDbMicros", records == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(dbNanos.sum()) / records);
+        List<Map<String, Object>> streams = new ArrayList<>(partitions);
+        for (int p = 0; p < partitions; p++) {
+            streams.add(partitionStats(streamKey(p)));
+        }
+        m.put("partitions", streams);
+        return m;
+    }
+
+    private Map<String, Object> partitionStats(String key) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("stream", key);
+        m.put("length", stringRedisTemplate.opsForStream().size(key));
+        for (StreamInfo.XInfoGroup group : stringRedisTemplate.opsForStream().groups(key).stream().collect(Collectors.toList())) {
+            if (!GROUP.equals(group.groupName())) {
+                continue;
+            }
+            m.put("lastDeliveredId", group.lastDeliveredId());
+            m.put("pending", group.pendingCount());
+            m.put("lag", lag(key, group));
+        }
+        Map<String, Object> consumers = new LinkedHashMap<>();
+        for (StreamInfo.XInfoConsumer consumer : stringRedisTemplate.opsForStream().consumers(key, GROUP).stream().collect(Collectors.toList())) {
+            Map<String, Object> c = new LinkedHashMap<>();
+            c.put("pending", consumer.pendingCount());
+            c.put("idleMs", consumer.idleTimeMs());
+            consumers.put(consumer.consumerName(), c);
+        }
+        m.put("consumers", consumers);
+        return m;
+    }
+
+    /**
+     * 还没有投递给任何消费者的消息数
+     */
+    private long lag(String key, StreamInfo.XInfoGroup group) {
+        Object lag = group.getRaw().get("lag");
+        if (lag instanceof Number) {
+            return ((Number) lag).longValue();
+        }
+        String lastDelivered = group.lastDeliveredId();
+        List<MapRecord<String, Object, Object>> after = stringRedisTemplate.opsForStream().range(key,
+                Range.rightUnbounded(Range.Bound.inclusive(lastDelivered)), Limit.limit().count(LAG_SCAN_LIMIT + 1));
+        if (after == null) {
+            return 0;
+        }
+        int n = after.size();
+        if (n > 0 && after.get(0).getId().getValue().equals(lastDelivered)) {
+            n--;
+        }
+        return n;
+    }
+}
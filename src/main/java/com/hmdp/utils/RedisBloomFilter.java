@@ -0,0 +1,217 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.lang.hash.MurmurHash;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 基于Redis bitmap的布隆过滤器。
+ * 位数和hash函数个数由预计元素数量和期望误判率计算，k个位置用 murmur3 128 位的两个 hash 做双重散列得到。
+ * 实际的key为 {前缀}:{位数}:{hash函数个数}：修改配置后参数不同的节点读写各自的bitmap，按旧参数构建的bitmap不会被当成已就绪，
+ * 滚动发布期间未升级的节点继续使用旧bitmap；所有节点切换后旧bitmap不再被访问，可以手动删除。
+ * 重建时先拿到Redis锁，在本次独有的临时key上构建，并把临时key名写入 {key}:building，
+ * 期间任何节点的 {@link #put} 都同时写入临时key，rename时不会丢掉其他节点新增的元素。
+ */
+public class RedisBloomFilter {
+
+    /**
+     * Redis 单个 string 最多 2^32 位
+     */
+    private static final long MAX_BITS = 1L << 32;
+    /**
+     * 重建锁、临时key名和临时key的过期时间，每写完一页续期一次，重建进程崩溃后自动清理
+     */
+    private static final long BUILD_TTL_SECONDS = 60;
+    /**
+     * 没有就绪时，隔多久再去Redis看一下其他节点是否已经构建完成
+     */
+    private static final long READY_CHECK_MILLIS = 5000;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String key;
+    private final String buildingKey;
+    private final String lockKey;
+    private final long numBits;
+    private final int numHashes;
+
+    /**
+     * 第一次构建完成前不能用来拦截请求，否则所有id都会被判定为不存在
+     */
+    private volatile boolean ready;
+    private volatile long nextReadyCheck;
+
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param keyPrefix key前缀，实际的key后面加上位数和hash函数个数
+     */
+    public RedisBloomFilter(StringRedisTemplate stringRedisTemplate, String keyPrefix, long expectedInsertions, double fpp) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        long bits = (long) (-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.numBits = Math.min(MAX_BITS, Math.max(64, bits));
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+        this.key = keyPrefix + ":" + numBits + ":" + numHashes;
+        this.buildingKey = key + ":building";
+        this.lockKey = "lock:" + key;
+        // 之前用相同参数构建过的bitmap可以直接使用
+        this.ready = Boolean.TRUE.equals(stringRedisTemplate.hasKey(key));
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public int getNumHashes() {
+        return numHashes;
+    }
+
+    public boolean isReady() {
+        if (!ready && System.currentTimeMillis() >= nextReadyCheck) {
+            // 可能由其他节点构建完成
+            nextReadyCheck = System.currentTimeMillis() + READY_CHECK_MILLIS;
+            ready = Boolean.TRUE.equals(stringRedisTemplate.hasKey(key));
+        }
+        return ready;
+    }
+
+    /**
+     * 元素对应的k个bit位置
+     */
+    public long[] offsets(Object value) {
+        long[] hash = MurmurHash.hash128(value.toString());
+        long[] offsets = new long[numHashes];
+        for (int i = 0; i < numHashes; i++) {
+            long combined = hash[0] + i * hash[1];
+            offsets[i] = (combined & Long.MAX_VALUE) % numBits;
+        }
+        return offsets;
+    }
+
+    /**
+     * 判断pipeline返回的一组GETBIT结果是否全部为1，不是则计一次拦截
+     */
+    public boolean checkBits(List<Object> bits, int from) {
+        for (int i = from; i < from + numHashes; i++) {
+            if (!Boolean.TRUE.equals(bits.get(i))) {
+                rejected.increment();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean mightContain(Object value) {
+        if (!isReady()) {
+            return true;
+        }
+        long[] offsets = offsets(value);
+        List<Object> bits = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (long offset : offsets) {
+                conn.getBit(key, offset);
+            }
+            return null;
+        });
+        return checkBits(bits, 0);
+    }
+
+    /**
+     * 元素写入数据库之后调用。有节点正在重建时同时写入它的临时key
+     */
+    public void put(Object value) {
+        long[] offsets = offsets(value);
+        String building = stringRedisTemplate.opsForValue().get(buildingKey);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (long offset : offsets) {
+                conn.setBit(key, offset, true);
+                if (building != null) {
+                    conn.setBit(building, offset, true);
+                }
+            }
+            if (building != null) {
+                // 重建刚好结束时不会留下永久的临时key
+                conn.expire(building, BUILD_TTL_SECONDS);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 在临时key上重新构建，完成后rename替换，重建期间旧的过滤器继续生效。同一时刻只有一个节点在重建
+     * @param nextPage 传入上一页最后一个id，返回按id升序的下一页，没有数据时返回空列表
+     * @return 写入的元素个数，其他节点正在重建时返回-1
+     */
+    public synchronized long rebuild(Function<Long, List<Long>> nextPage) {
+        String token = UUID.randomUUID().toString(true);
+        if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+                .setIfAbsent(lockKey, token, BUILD_TTL_SECONDS, TimeUnit.SECONDS))) {
+            return -1;
+        }
+        String tmpKey = key + ":building:" + token;
+        long count = 0;
+        try {
+            // 先公布临时key，之后新增的元素各节点都会写入；之前新增的已经在数据库中，会被下面的扫描读到
+            stringRedisTemplate.opsForValue().set(buildingKey, tmpKey, BUILD_TTL_SECONDS, TimeUnit.SECONDS);
+            Long lastId = 0L;
+            List<Long> ids;
+            while (!(ids = nextPage.apply(lastId)).isEmpty()) {
+                putAll(tmpKey, ids);
+                count += ids.size();
+                lastId = ids.get(ids.size() - 1);
+            }
+            if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(tmpKey))) {
+                stringRedisTemplate.rename(tmpKey, key);
+                // 临时key带着续期用的TTL
+                stringRedisTemplate.persist(key);
+            } else {
+                // 表中没有数据
+                stringRedisTemplate.delete(key);
+            }
+            ready = true;
+        } finally {
+            stringRedisTemplate.delete(Arrays.asList(buildingKey, tmpKey));
+            if (token.equals(stringRedisTemplate.opsForValue().get(lockKey))) {
+                stringRedisTemplate.delete(lockKey);
+            }
+        }
+        return count;
+    }
+
+    private void putAll(String targetKey, Collection<Long> ids) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Long id : ids) {
+                for (long offset : offsets(id)) {
+                    conn.setBit(targetKey, offset, true);
+                }
+            }
+            // 续期
+            conn.expire(targetKey, BUILD_TTL_SECONDS);
+            conn.expire(buildingKey, BUILD_TTL_SECONDS);
+            conn.expire(lockKey, BUILD_TTL_SECONDS);
+            return null;
+        });
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("key", key);
+        m.put("bits", numBits);
+        m.put("hashes", numHashes);
+        m.put("ready", isReady());
+        m.put("rejected", rejected.sum());
+        return m;
+    }
+}
@@ -11,12 +11,66 @@ public class RedisConstants {
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
 
+    /**
+     * 博客列表使用的用户缓存，只有 IUserService.updateById 会删除，其他修改方式以该TTL为最长延迟
+     */
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+
+    /**
+     * 店铺id布隆过滤器的key前缀，实际的key带着位数和hash函数个数，见 {@link RedisBloomFilter}
+     */
+    public static final String SHOP_BLOOM_KEY = "bloom:shop";
+
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    public static final String CACHE_REBUILT_CHANNEL = "cache:rebuilt";
+
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_SHARDS_KEY = "seckill:shards:";
+    /**
+     * 待转发到订单队列的订单，和库存用同一个hash tag，由秒杀脚本写入
+     */
+    public static final String SECKILL_PENDING_KEY = "seckill:pending:";
+    /**
+     * 分片模式下所属分片售完、正在其他分片扣减的用户(ZSET，分数为开始时间)，和所属分片的已下单用户同一个hash tag
+     */
+    public static final String SECKILL_RESERVING_KEY = "seckill:reserving:";
+    /**
+     * 分片模式下在该分片兜底扣减过的其他分片用户
+     */
+    public static final String SECKILL_TAKEN_KEY = "seckill:taken:";
+    /**
+     * 写入过秒杀库存的券，补发待转发订单时遍历
+     */
+    public static final String SECKILL_VOUCHERS_KEY = "seckill:vouchers";
+    public static final String LOCK_SECKILL_PENDING_KEY = "lock:seckill:pending";
+    public static final String SECKILL_ORDER_STREAM = "stream.orders";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:sold-out";
+    public static final String SECKILL_REPLENISH_KEY = "seckill:replenish:";
+    public static final String SECKILL_CONSUMER_NODES_KEY = "seckill:consumer:nodes";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
-    public static final String SHOP_GEO_KEY = "shop:geo:";
+    /**
+     * GEO集合、重建状态和版本用同一个hash tag，集群模式下写入和重建脚本访问的key在同一个slot
+     */
+    public static final String SHOP_GEO_KEY = "{shop:geo}:";
+    /**
+     * 加hash tag之前的GEO集合前缀，启动时复制到 SHOP_GEO_KEY 后保留一段时间，供滚动发布期间未升级的节点使用
+     */
+    public static final String SHOP_GEO_LEGACY_KEY = "shop:geo:";
+    public static final Long SHOP_GEO_LEGACY_TTL = 24L;
+    public static final String SHOP_GEO_CHANGED_CHANNEL = "shop:geo:changed";
+    public static final String LOCK_SHOP_GEO_LOAD_KEY = "lock:shop:geo:load";
+    public static final String SHOP_GEO_LOADING_KEY = "{shop:geo}:loading";
+    public static final String SHOP_GEO_LOADING_WRITES_KEY = "{shop:geo}:loading:writes";
+    public static final Long SHOP_GEO_LOAD_TTL = 60L;
+    public static final String SHOP_GEO_VERSION_KEY = "{shop:geo}:ver:";
+    public static final Long SHOP_GEO_VERSION_TTL = 3600L;
+    public static final String SHOP_GEO_SEQ_KEY = "shop:geo:seq";
+    public static final String SHOP_GEO_SNAPSHOT_KEY = "shop:geo:snapshot:";
     public static final String USER_SIGN_KEY = "sign:";
 }
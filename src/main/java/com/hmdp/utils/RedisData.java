@@ -8,4 +8,8 @@ import java.time.LocalDateTime;
 public class RedisData {
     private LocalDateTime expireTime;
     private Object data;
+    /**
+     * 加载数据花费的毫秒数，提前刷新模式使用
+     */
+    private Long delta;
 }
@@ -5,7 +5,7 @@ import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.UserDTO;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
-import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
@@ -14,13 +14,17 @@ import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 @Component
-public class RefreshTokenInterceptor implements HandlerInterceptor {
+public class RefreshTokenInterceptor implements AsyncHandlerInterceptor {
 
     // 对于手动创建new Object() 的对象（指LoginInterceptor 类），不能进行依赖注入,
     // 可以在new对象时传入依赖注入的StringRedisTemplate对象
     // 也可以使用Component注解该类，让Spring管理，后使用依赖注入
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+    @Resource
+    private CacheMetrics cacheMetrics;
 
 //    public LoginInterceptor(StringRedisTemplate stringRedisTemplate) {
 //        this.stringRedisTemplate = stringRedisTemplate;
@@ -33,17 +37,41 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
             return true;
         }
         String key = RedisConstants.LOGIN_USER_KEY + token;
+        hotKeyDetector.record(key);
+        // 热点token直接用本地副本，短TTL内不再读Redis也不续期
+        UserDTO userDTO = hotKeyDetector.getLocal(key, UserDTO.class);
+        if (userDTO != null) {
+            cacheMetrics.hit(RedisConstants.LOGIN_USER_KEY);
+            UserHolder.saveUser(userDTO);
+            return true;
+        }
+        long start = System.nanoTime();
         Map<Object, Object> userMap = stringRedisTemplate.opsForHash().entries(key);
+        cacheMetrics.latency(RedisConstants.LOGIN_USER_KEY, start);
         if (userMap.isEmpty()) {
+            cacheMetrics.miss(RedisConstants.LOGIN_USER_KEY);
             return true;
         }
-        UserDTO userDTO = BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
+        cacheMetrics.hit(RedisConstants.LOGIN_USER_KEY);
+        userDTO = BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
         UserHolder.saveUser(userDTO);
+        hotKeyDetector.putLocal(key, userDTO);
+        start = System.nanoTime();
         stringRedisTemplate.expire(key, RedisConstants.LOGIN_USER_TTL, TimeUnit.SECONDS);
+        cacheMetrics.latency(RedisConstants.LOGIN_USER_KEY, start);
         // 放行
         return true;
     }
 
+    /**
+     * 控制器返回 CompletableFuture 时请求线程先被释放，afterCompletion 要等异步分派结束才在别的线程执行，
+     * 这里先清掉当前线程的用户，避免线程复用时串号
+     */
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        UserHolder.removeUser();
+    }
+
     @Override
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
         UserHolder.removeUser();
@@ -0,0 +1,574 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 秒杀库存和一人一单的Redis部分。
+ * 不分片时所有请求都访问 seckill:stock:{voucherId} 和 seckill:order:{voucherId} 两个key；
+ * 分片模式把库存平均分到N个子key，已下单用户集合也按用户分成N份：
+ * <pre>
+ * seckill:shards:{voucherId}      = N
+ * seckill:stock:{voucherId:i}     = 分片i的库存
+ * seckill:order:{voucherId:i}     = 所属分片为i的已下单用户
+ * </pre>
+ * 脚本访问的key都作为KEYS传入，同一张券(分片)的库存、已下单用户和待转发订单用同一个hash tag，集群模式下落在同一个节点，一次脚本只访问一个slot。
+ * 订单id计数器和订单消息队列在别的slot上，脚本扣减库存的同时把订单写入同slot的 seckill:pending:{voucherId}(分片为 {voucherId:i})，
+ * 再由调用方确定订单id、写入队列、删除待转发记录。转发失败或结果未知时库存不还回去，记录留在待转发集合中由定时任务补发；
+ * 订单id第一次确定后写回记录，重复转发的消息订单id相同，由消费者去重。
+ * 用户按id固定属于一个分片，先在所属分片判断重复下单并占位、扣减库存；所属分片售完时把用户记入 seckill:reserving:{voucherId:i}，
+ * 依次到其他分片扣减，在分片j扣减成功的用户记入 seckill:taken:{voucherId:j}。扣减成功后保留占位，
+ * 全部售完才释放占位并返回库存不足，库存只减不增，所以售完判断与不分片时一致。
+ * 兜底跨多个slot，节点在中途宕机时占位不会释放：同一用户再次下单时所属分片返回继续兜底，先检查其他分片是否已经扣减过，再继续扣减；
+ * 用户不再下单时由定时任务处理开始超过 forward-delay-seconds 的兜底，已在其他分片扣减过的保留占位，否则释放。
+ * 定时任务和仍在进行的兜底同时处理同一用户时，可能释放一个扣减成功的占位，该用户再次下单会多扣一份Redis库存，
+ * 重复的订单由数据库唯一索引拒绝，只会少卖不会超卖。
+ * <p>
+ * 任一节点发现售完后通过 seckill:sold-out 通知所有节点，之后该券的请求在本地直接拒绝，不访问Redis；
+ * 补充库存时通知清除标记。pub/sub 不保证送达，标记另有过期时间，过期后重新到Redis确认。
+ * 每次补充库存把 seckill:replenish:{voucherId} 加一作为补充代数，售完判断和售完通知都带着判断前已知的代数，
+ * 比本节点已知代数旧的售完结论来自补充之前，不再写入标记；消息并发分发，补充通知先于售完通知处理时也不会留下过期的标记。
+ * 订单id的序列号在通过资格判断后才分配，被拒绝的请求不消耗id。
+ * 写入过库存的券记在 seckill:vouchers 中，补发时遍历。
+ */
+@Slf4j
+@Component
+public class SeckillStock {
+
+    /**
+     * {@link #tryAcquire} 的返回值：库存不足
+     */
+    public static final long SOLD_OUT = -1;
+    /**
+     * {@link #tryAcquire} 的返回值：重复下单
+     */
+    public static final long DUPLICATE = -2;
+
+    /**
+     * 分片脚本的返回值：用户上次的兜底没有完成，需要继续
+     */
+    private static final long RESUME = -3;
+    private static final String ORDER_ID_PREFIX = "order";
+    private static final String REPLENISHED = "-";
+
+    private static final DefaultRedisScript<List<Object>> SECKILL_SCRIPT = listScript("seckill.lua");
+    private static final DefaultRedisScript<List<Object>> SHARD_SCRIPT = listScript("seckill_shard.lua");
+    private static final DefaultRedisScript<List<Object>> SHARD_TAKE_SCRIPT = listScript("seckill_shard_take.lua");
+    private static final DefaultRedisScript<String> CLAIM_SCRIPT = new DefaultRedisScript<>();
+    private static final DefaultRedisScript<Long> SETTLE_SCRIPT = new DefaultRedisScript<>();
+    static {
+        CLAIM_SCRIPT.setLocation(new ClassPathResource("seckill_pending_claim.lua"));
+        CLAIM_SCRIPT.setResultType(String.class);
+        SETTLE_SCRIPT.setLocation(new ClassPathResource("seckill_shard_settle.lua"));
+        SETTLE_SCRIPT.setResultType(Long.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static DefaultRedisScript<List<Object>> listScript(String location) {
+        DefaultRedisScript<List<Object>> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource(location));
+        script.setResultType((Class<List<Object>>) (Class<?>) List.class);
+        return script;
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Resource
+    private RedisIdWorker redisIdWorker;
+
+    @Value("${hmdp.seckill.stock-shards:1}")
+    private int defaultShards;
+    @Value("${hmdp.seckill.sold-out-ttl-seconds:10}")
+    private long soldOutTtlSeconds;
+    @Value("${hmdp.seckill.stream.key:" + RedisConstants.SECKILL_ORDER_STREAM + "}")
+    private String stream;
+    @Value("${hmdp.seckill.stream.partitions:1}")
+    private int streamPartitions;
+    @Value("${hmdp.seckill.stream.partition-by:voucher}")
+    private String partitionBy;
+    /**
+     * 小于等于0时本节点不做补发，只用于不能碰线上订单队列的测试
+     */
+    @Value("${hmdp.seckill.pending.forward-delay-seconds:10}")
+    private long forwardDelaySeconds;
+
+    private ScheduledExecutorService forwardExecutor;
+
+    /**
+     * voucherId -> 分片数，创建后不会变化
+     */
+    private final Map<Long, Integer> shardCounts = new ConcurrentHashMap<>();
+    /**
+     * 已售完的券 voucherId -> 标记的过期时间
+     */
+    private final Map<Long, Long> soldOut = new ConcurrentHashMap<>();
+    /**
+     * voucherId -> 本节点已知的补充代数
+     */
+    private final Map<Long, Long> generations = new ConcurrentHashMap<>();
+    private final LongAdder localRejects = new LongAdder();
+
+    @PostConstruct
+    public void start() {
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> apply(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(RedisConstants.SECKILL_SOLD_OUT_CHANNEL)
+        );
+        if (forwardDelaySeconds <= 0) {
+            return;
+        }
+        forwardExecutor = Executors.newSingleThreadScheduledExecutor();
+        forwardExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                reconcile();
+            } catch (Exception e) {
+                log.error("补发秒杀订单异常", e);
+            }
+        }, forwardDelaySeconds, forwardDelaySeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (forwardExecutor != null) {
+            forwardExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 按配置的分片数写入库存
+     */
+    public void init(long voucherId, int stock) {
+        init(voucherId, stock, defaultShards);
+    }
+
+    /**
+     * 写入库存，shards <= 1 时不分片。余数分给前面的分片
+     */
+    public void init(long voucherId, int stock, int shards) {
+        register(Collections.singleton(voucherId));
+        if (shards <= 1) {
+            stringRedisTemplate.opsForValue().set(voucherKey(RedisConstants.SECKILL_STOCK_KEY, voucherId), String.valueOf(stock));
+            return;
+        }
+        Map<String, String> values = new HashMap<>(shards);
+        for (int i = 0; i < shards; i++) {
+            values.put(shardKey(RedisConstants.SECKILL_STOCK_KEY, voucherId, i), String.valueOf(share(stock, shards, i)));
+        }
+        stringRedisTemplate.opsForValue().multiSet(values);
+        // 分片数最后写入，读到它时各分片的库存一定已经就绪
+        stringRedisTemplate.opsForValue().set(RedisConstants.SECKILL_SHARDS_KEY + voucherId, String.valueOf(shards));
+        shardCounts.put(voucherId, shards);
+        log.info("优惠券{}的库存{}分成{}个分片", voucherId, stock, shards);
+    }
+
+    /**
+     * 记录写入过库存的券，{@link #forwardPending} 只检查这些券的待转发订单
+     */
+    public void register(Collection<Long> voucherIds) {
+        if (voucherIds.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.opsForSet().add(RedisConstants.SECKILL_VOUCHERS_KEY,
+                voucherIds.stream().map(String::valueOf).toArray(String[]::new));
+    }
+
+    /**
+     * 补充库存，分片时平均加到各分片，并通知所有节点清除售完标记
+     */
+    public void replenish(long voucherId, int amount) {
+        int shards = shardCount(voucherId);
+        if (shards <= 1) {
+            stringRedisTemplate.opsForValue().increment(voucherKey(RedisConstants.SECKILL_STOCK_KEY, voucherId), amount);
+        } else {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (int i = 0; i < shards; i++) {
+                    int n = share(amount, shards, i);
+                    if (n > 0) {
+                        connection.stringCommands().incrBy(
+                                shardKey(RedisConstants.SECKILL_STOCK_KEY, voucherId, i).getBytes(StandardCharsets.UTF_8), n);
+                    }
+                }
+                return null;
+            });
+        }
+        Long generation = stringRedisTemplate.opsForValue().increment(RedisConstants.SECKILL_REPLENISH_KEY + voucherId);
+        if (generation == null) {
+            throw new IllegalStateException("获取补充代数失败");
+        }
+        replenished(voucherId, generation);
+        stringRedisTemplate.convertAndSend(RedisConstants.SECKILL_SOLD_OUT_CHANNEL, voucherId + "," + REPLENISHED + "," + generation);
+    }
+
+    /**
+     * 判断购买资格并扣减库存，成功时分配订单id并把订单写入消息队列
+     * @return 成功时返回订单id(订单已由补发任务写入队列时返回0)，否则返回 {@link #SOLD_OUT} 或 {@link #DUPLICATE}
+     */
+    public long tryAcquire(long voucherId, long userId) {
+        Long until = soldOut.get(voucherId);
+        if (until != null) {
+            if (until > System.currentTimeMillis()) {
+                localRejects.increment();
+                return SOLD_OUT;
+            }
+            soldOut.remove(voucherId, until);
+        }
+        long generation = generation(voucherId);
+        long r = acquire(voucherId, userId, streamKey(voucherId, userId));
+        if (r == SOLD_OUT && markSoldOut(voucherId, generation)) {
+            log.info("优惠券{}已售完，通知所有节点", voucherId);
+            stringRedisTemplate.convertAndSend(RedisConstants.SECKILL_SOLD_OUT_CHANNEL, voucherId + "," + generation);
+        }
+        return r;
+    }
+
+    private long acquire(long voucherId, long userId, String streamKey) {
+        String user = String.valueOf(userId);
+        String now = String.valueOf(System.currentTimeMillis());
+        int shards = shardCount(voucherId);
+        if (shards <= 1) {
+            String pendingKey = voucherKey(RedisConstants.SECKILL_PENDING_KEY, voucherId);
+            long r = result(stringRedisTemplate.execute(SECKILL_SCRIPT, Arrays.asList(
+                    voucherKey(RedisConstants.SECKILL_STOCK_KEY, voucherId),
+                    voucherKey(RedisConstants.SECKILL_ORDER_KEY, voucherId),
+                    pendingKey), user, now));
+            return r == 0 ? forward(pendingKey, voucherId, userId, streamKey) : r;
+        }
+        int home = (int) Math.floorMod(userId, (long) shards);
+        String orderKey = shardKey(RedisConstants.SECKILL_ORDER_KEY, voucherId, home);
+        String homePendingKey = shardKey(RedisConstants.SECKILL_PENDING_KEY, voucherId, home);
+        long r = result(stringRedisTemplate.execute(SHARD_SCRIPT, Arrays.asList(
+                shardKey(RedisConstants.SECKILL_STOCK_KEY, voucherId, home), orderKey, homePendingKey,
+                shardKey(RedisConstants.SECKILL_RESERVING_KEY, voucherId, home)), user, now));
+        if (r == 0) {
+            return forward(homePendingKey, voucherId, userId, streamKey);
+        }
+        if (r == DUPLICATE) {
+            return r;
+        }
+        // 上次的兜底中断了，已经在其他分片扣减过时只需保留占位
+        if (r == RESUME && takenElsewhere(voucherId, user, home, shards)) {
+            settle(voucherId, home, user, true);
+            return DUPLICATE;
+        }
+        // 所属分片售完，依次尝试其他分片
+        for (int k = 1; k < shards; k++) {
+            int shard = (home + k) % shards;
+            String pendingKey = shardKey(RedisConstants.SECKILL_PENDING_KEY, voucherId, shard);
+            long taken = result(stringRedisTemplate.execute(SHARD_TAKE_SCRIPT, Arrays.asList(
+                    shardKey(RedisConstants.SECKILL_STOCK_KEY, voucherId, shard), pendingKey,
+                    shardKey(RedisConstants.SECKILL_TAKEN_KEY, voucherId, shard)), user, now));
+            if (taken == 0) {
+                settle(voucherId, home, user, true);
+                return forward(pendingKey, voucherId, userId, streamKey);
+            }
+            if (taken == DUPLICATE) {
+                settle(voucherId, home, user, true);
+                return DUPLICATE;
+            }
+        }
+        // 全部售完，释放占位
+        settle(voucherId, home, user, false);
+        return SOLD_OUT;
+    }
+
+    /**
+     * 用户是否已在所属分片以外的分片兜底扣减过
+     */
+    private boolean takenElsewhere(long voucherId, String user, int home, int shards) {
+        for (int k = 1; k < shards; k++) {
+            String takenKey = shardKey(RedisConstants.SECKILL_TAKEN_KEY, voucherId, (home + k) % shards);
+            if (Boolean.TRUE.equals(stringRedisTemplate.opsForSet().isMember(takenKey, user))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 结束用户在所属分片的兜底，keep 为true时保留占位，否则释放
+     * @return 是否由这次调用处理，已被另一方处理时返回false
+     */
+    private boolean settle(long voucherId, int home, String user, boolean keep) {
+        Long settled = stringRedisTemplate.execute(SETTLE_SCRIPT, Arrays.asList(
+                shardKey(RedisConstants.SECKILL_ORDER_KEY, voucherId, home),
+                shardKey(RedisConstants.SECKILL_RESERVING_KEY, voucherId, home)), user, keep ? "1" : "0");
+        return settled != null && settled == 1;
+    }
+
+    /**
+     * 把脚本写入的待转发订单转发到订单队列：确定订单id，写入队列，再删除待转发记录。
+     * 脚本成功后库存已经扣减，任一步失败或超时都不还回去(写入可能已经生效)，记录留在待转发集合中由 {@link #reconcile} 补发
+     * @return 订单id，记录已被补发任务转发并删除时返回0
+     */
+    private long forward(String pendingKey, long voucherId, long userId, String streamKey) {
+        String user = String.valueOf(userId);
+        String orderId = stringRedisTemplate.execute(CLAIM_SCRIPT, Collections.singletonList(pendingKey),
+                user, String.valueOf(redisIdWorker.nextId(ORDER_ID_PREFIX)));
+        if (orderId == null) {
+            return 0;
+        }
+        Map<String, String> order = new LinkedHashMap<>(4);
+        order.put("userId", user);
+        order.put("voucherId", String.valueOf(voucherId));
+        order.put("id", orderId);
+        stringRedisTemplate.opsForStream().add(StreamRecords.mapBacked(order).withStreamKey(streamKey));
+        stringRedisTemplate.opsForHash().delete(pendingKey, user);
+        return Long.parseLong(orderId);
+    }
+
+    /**
+     * 处理下单请求在中途失败、超时或节点宕机时留下的记录，只处理写入超过 forward-delay-seconds 的记录：
+     * 补发仍未转发的订单，结束中断的兜底。同一时刻只由一个节点处理；
+     * 和下单请求同时转发同一条记录时订单id相同，消费者按订单id和一人一单去重
+     */
+    public void reconcile() {
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(
+                RedisConstants.LOCK_SECKILL_PENDING_KEY, "1", forwardDelaySeconds, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        Set<String> voucherIds = stringRedisTemplate.opsForSet().members(RedisConstants.SECKILL_VOUCHERS_KEY);
+        if (voucherIds == null) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(forwardDelaySeconds);
+        int forwarded = 0;
+        int settled = 0;
+        for (String id : voucherIds) {
+            long voucherId = Long.parseLong(id);
+            int shards = shardCount(voucherId);
+            if (shards <= 1) {
+                forwarded += forwardPending(voucherKey(RedisConstants.SECKILL_PENDING_KEY, voucherId), voucherId, deadline);
+                continue;
+            }
+            for (int i = 0; i < shards; i++) {
+                settled += settleReserving(voucherId, i, shards, deadline);
+                forwarded += forwardPending(shardKey(RedisConstants.SECKILL_PENDING_KEY, voucherId, i), voucherId, deadline);
+            }
+        }
+        if (forwarded > 0 || settled > 0) {
+            log.warn("补发了{}个未转发到订单队列的秒杀订单，结束了{}个中断的分片兜底", forwarded, settled);
+        }
+    }
+
+    /**
+     * 结束分片 home 中开始时间不晚于 deadline 的兜底，已在其他分片扣减过的保留占位，否则释放
+     * @return 结束的兜底数
+     */
+    private int settleReserving(long voucherId, int home, int shards, long deadline) {
+        Set<String> users = stringRedisTemplate.opsForZSet().rangeByScore(
+                shardKey(RedisConstants.SECKILL_RESERVING_KEY, voucherId, home), 0, deadline);
+        if (users == null) {
+            return 0;
+        }
+        int settled = 0;
+        for (String user : users) {
+            if (settle(voucherId, home, user, takenElsewhere(voucherId, user, home, shards))) {
+                settled++;
+            }
+        }
+        return settled;
+    }
+
+    /**
+     * 补发待转发集合中写入时间不晚于 deadline 的订单
+     * @return 补发的订单数
+     */
+    private int forwardPending(String pendingKey, long voucherId, long deadline) {
+        int forwarded = 0;
+        for (Map.Entry<Object, Object> entry : stringRedisTemplate.opsForHash().entries(pendingKey).entrySet()) {
+            // 值为 "写入时间" 或 "写入时间,订单id"
+            String value = (String) entry.getValue();
+            int comma = value.indexOf(',');
+            if (Long.parseLong(comma < 0 ? value : value.substring(0, comma)) > deadline) {
+                continue;
+            }
+            long userId = Long.parseLong((String) entry.getKey());
+            try {
+                forward(pendingKey, voucherId, userId, streamKey(voucherId, userId));
+                forwarded++;
+            } catch (RuntimeException e) {
+                log.error("补发优惠券{}用户{}的订单失败", voucherId, userId, e);
+            }
+        }
+        return forwarded;
+    }
+
+    /**
+     * 订单消息写入的分区：按优惠券分区时热门券只占一个分区，不影响其他券；按用户分区时同一张券的订单分散到所有分区
+     */
+    private String streamKey(long voucherId, long userId) {
+        long key = "user".equals(partitionBy) ? userId : voucherId;
+        return OrderStreamConsumer.streamKey(stream, (int) Math.floorMod(key, (long) streamPartitions));
+    }
+
+    /**
+     * 脚本返回 {0} 成功、{1} 售完、{2} 重复下单或 {3} 继续兜底
+     */
+    private static long result(List<?> reply) {
+        long code = ((Number) reply.get(0)).longValue();
+        return code == 0 ? 0 : code == 1 ? SOLD_OUT : code == 2 ? DUPLICATE : RESUME;
+    }
+
+    /**
+     * 本节点已知的补充代数，第一次访问时从Redis读取
+     */
+    private long generation(long voucherId) {
+        Long known = generations.get(voucherId);
+        if (known != null) {
+            return known;
+        }
+        String value = stringRedisTemplate.opsForValue().get(RedisConstants.SECKILL_REPLENISH_KEY + voucherId);
+        return generations.merge(voucherId, value == null ? 0L : Long.parseLong(value), Math::max);
+    }
+
+    /**
+     * 写入售完标记，generation 是得出售完结论之前已知的补充代数。
+     * 先写标记再检查代数：补充通知在两步之间处理时，检查一定能看到新代数并撤销标记
+     * @return 新写入了标记时返回true
+     */
+    private boolean markSoldOut(long voucherId, long generation) {
+        if (generation < generation(voucherId)) {
+            return false;
+        }
+        Long until = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(soldOutTtlSeconds);
+        Long previous = soldOut.put(voucherId, until);
+        if (generation < generation(voucherId)) {
+            soldOut.remove(voucherId, until);
+            return false;
+        }
+        return previous == null;
+    }
+
+    /**
+     * 先更新代数再清除标记，和 {@link #markSoldOut} 的检查顺序相反
+     */
+    private void replenished(long voucherId, long generation) {
+        generations.merge(voucherId, generation, Math::max);
+        soldOut.remove(voucherId);
+    }
+
+    /**
+     * 消息格式: "voucherId,代数" 表示售完，"voucherId,-,代数" 表示补充了库存
+     */
+    private void apply(String message) {
+        String[] parts = message.split(",");
+        long voucherId = Long.parseLong(parts[0]);
+        if (parts.length > 1 && REPLENISHED.equals(parts[1])) {
+            replenished(voucherId, Long.parseLong(parts[2]));
+        } else {
+            markSoldOut(voucherId, Long.parseLong(parts[1]));
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("soldOut", soldOut.keySet());
+        m.put("localRejects", localRejects.sum());
+        m.put("shardedVouchers", shardCounts.entrySet().stream().filter(e -> e.getValue() > 1).count());
+        return m;
+    }
+
+    private int shardCount(long voucherId) {
+        Integer cached = shardCounts.get(voucherId);
+        if (cached != null) {
+            return cached;
+        }
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(Arrays.asList(
+                RedisConstants.SECKILL_SHARDS_KEY + voucherId, voucherKey(RedisConstants.SECKILL_STOCK_KEY, voucherId)));
+        String value = values == null ? null : values.get(0);
+        if (value == null) {
+            // 只有确认是不分片的优惠券才缓存，避免之后才创建的分片优惠券被当成不分片
+            if (values != null && values.get(1) != null) {
+                shardCounts.put(voucherId, 1);
+            }
+            return 1;
+        }
+        int shards = Integer.parseInt(value);
+        shardCounts.put(voucherId, shards);
+        return shards;
+    }
+
+    /**
+     * total 平均分成 shards 份时第 i 份的数量，余数分给前面的分片
+     */
+    private static int share(int total, int shards, int i) {
+        return total / shards + (i < total % shards ? 1 : 0);
+    }
+
+    /**
+     * 把旧格式 seckill:stock:{voucherId}、seckill:order:{voucherId}(不带hash tag)的key改成带hash tag的新格式，新key已存在的券跳过。
+     * 两个key不在同一个slot，用 DUMP/RESTORE 复制后删除旧key，未升级的节点读不到库存时下单失败而不是超卖
+     * @return 迁移的券数量
+     */
+    public int migrateLegacyKeys(Collection<Long> voucherIds) {
+        int migrated = 0;
+        for (Long voucherId : voucherIds) {
+            String legacyStockKey = RedisConstants.SECKILL_STOCK_KEY + voucherId;
+            String legacyOrderKey = RedisConstants.SECKILL_ORDER_KEY + voucherId;
+            // 先复制已下单用户再复制库存，读到库存时一定也能读到已下单用户
+            restoreIfAbsent(legacyOrderKey, voucherKey(RedisConstants.SECKILL_ORDER_KEY, voucherId));
+            if (restoreIfAbsent(legacyStockKey, voucherKey(RedisConstants.SECKILL_STOCK_KEY, voucherId))) {
+                migrated++;
+            }
+        }
+        return migrated;
+    }
+
+    /**
+     * 旧key存在且新key不存在时复制并删除旧key，新key已存在时同样删除旧key
+     * @return 是否复制了
+     */
+    private boolean restoreIfAbsent(String legacyKey, String key) {
+        byte[] value = stringRedisTemplate.dump(legacyKey);
+        if (value == null) {
+            return false;
+        }
+        boolean restored = true;
+        try {
+            stringRedisTemplate.restore(key, value, 0, TimeUnit.MILLISECONDS);
+        } catch (DataAccessException e) {
+            // 其他节点已经迁移过
+            restored = false;
+        }
+        stringRedisTemplate.delete(legacyKey);
+        return restored;
+    }
+
+    private static String voucherKey(String prefix, long voucherId) {
+        return prefix + "{" + voucherId + "}";
+    }
+
+    private static String shardKey(String prefix, long voucherId, int shard) {
+        return prefix + "{" + voucherId + ":" + shard + "}";
+    }
+}
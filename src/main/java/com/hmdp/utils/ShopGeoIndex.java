@@ -0,0 +1,538 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import com.hmdp.entity.Shop;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.domain.geo.GeoReference;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 店铺位置的维护和附近查询。
+ * Redis GEO 集合 {shop:geo}:{typeId}：店铺新增、修改坐标/类型、删除后，在事务提交后由写入的节点增量更新，类型变化时从原类型的集合中删除；
+ * 修改在行锁内从 shop:geo:seq 取得递增的版本，脚本忽略比已写入版本旧的变更，提交后各节点的写入先后不同也按提交顺序生效。
+ * 全量重建(预热、批量加载)写到临时key再rename，期间的增量变更同时写入临时key，并在rename前重放一次，避免被重建时读到的旧数据覆盖。
+ * 同一时刻集群内只有拿到 lock:shop:geo:load 的节点重建，临时key的后缀每次不同并带TTL，不会用到别人或上次残留的临时key。
+ * 重建状态记在Redis里({shop:geo}:loading 为临时key后缀，{shop:geo}:loading:writes 为期间的变更)，所有节点的增量变更都用同一个脚本
+ * 判断是否在重建、同时写两份并记录变更，结束重建的rename也在脚本中执行，两者互斥，其他节点的变更不会被rename覆盖。
+ * 脚本访问的key都作为KEYS传入并使用同一个hash tag，集群模式下在同一个slot。
+ * 进程内空间索引：按 typeId 划分，附近店铺查询不再每页都访问 Redis GEO。由启动预热扫描 tb_shop 时一起构建；
+ * 构建完成前或未开启时 {@link #search} 回退到 Redis GEOSEARCH。变更由写入脚本通过 shop:geo:changed 通知所有节点(包括自己)更新本地索引，
+ * 监听容器并发分发消息，到达顺序不保证，消息带上写入时的版本，每个店铺只应用比已应用版本新的变更；构建期间收到的变更同样先暂存，构建完成后重放。
+ */
+@Slf4j
+@Component
+public class ShopGeoIndex {
+
+    private static final String REMOVED = "-";
+    private static final long NO_TYPE = -1;
+    /**
+     * 写入脚本的返回值：读取重建状态之后状态变了，需要重新读取
+     */
+    private static final long LOADING_CHANGED = -1;
+    private static final int MAX_WRITE_ATTEMPTS = 5;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${hmdp.cache.geo-index.enabled:false}")
+    private boolean enabled;
+    @Value("${hmdp.cache.geo-index.cell-degrees:0.01}")
+    private double cellDegrees;
+
+    /**
+     * typeId -> 索引，null 表示还没有构建完成
+     */
+    private volatile Map<Long, GeoGridIndex> indexes;
+    /**
+     * 店铺id -> 所在类型，变更时只访问原类型和新类型的索引，由 this 保护
+     */
+    private LongLongMap typeOf;
+    /**
+     * 店铺id -> 本地索引已应用的最新版本，由 this 保护
+     */
+    private LongLongMap appliedVersions;
+    /**
+     * 构建期间收到的变更消息
+     */
+    private List<String> pendingChanges;
+    private volatile long builtAt;
+
+    /**
+     * 全量重建GEO集合时临时key的后缀，为null表示没有在重建，由 geoLock 保护
+     */
+    private String loadingSuffix;
+    /**
+     * 重建锁的持有标识
+     */
+    private String loadToken;
+    private final Object geoLock = new Object();
+
+    private static final DefaultRedisScript<Long> WRITE_SCRIPT;
+    private static final DefaultRedisScript<Long> FINISH_SCRIPT;
+    static {
+        WRITE_SCRIPT = new DefaultRedisScript<>();
+        WRITE_SCRIPT.setLocation(new ClassPathResource("shop_geo_write.lua"));
+        WRITE_SCRIPT.setResultType(Long.class);
+        FINISH_SCRIPT = new DefaultRedisScript<>();
+        FINISH_SCRIPT.setLocation(new ClassPathResource("shop_geo_finish.lua"));
+        FINISH_SCRIPT.setResultType(Long.class);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> apply(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(RedisConstants.SHOP_GEO_CHANGED_CHANNEL)
+        );
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 开始一次全量构建，返回的 Builder 可以被多个线程分批写入
+     */
+    public Builder newBuilder() {
+        synchronized (this) {
+            pendingChanges = new ArrayList<>();
+        }
+        return new Builder();
+    }
+
+    /**
+     * 用构建好的索引替换当前索引，并重放构建期间的变更
+     */
+    public void install(Builder builder) {
+        Map<Long, GeoGridIndex> built = new ConcurrentHashMap<>();
+        builder.builders.forEach((typeId, b) -> built.put(typeId, b.build()));
+        List<String> changes;
+        synchronized (this) {
+            indexes = built;
+            typeOf = builder.typeOf;
+            // 构建期间的变更已经应用到旧索引，新索引要按版本重新应用一遍
+            appliedVersions = new LongLongMap(1024);
+            changes = pendingChanges;
+            pendingChanges = null;
+            // 持有锁重放，之后到达的消息一定在重放之后应用
+            if (changes != null) {
+                changes.forEach(this::apply);
+            }
+        }
+        builtAt = System.currentTimeMillis();
+        log.info("店铺空间索引构建完成, 类型{}个, 店铺{}个, 构建期间的变更{}个",
+                built.size(), built.values().stream().mapToInt(GeoGridIndex::size).sum(), changes == null ? 0 : changes.size());
+    }
+
+    /**
+     * 放弃本次构建，索引保持原状
+     */
+    public synchronized void abandon() {
+        pendingChanges = null;
+    }
+
+    /**
+     * 查询半径内距离最近的 limit 个店铺，优先查本地索引，不可用时查Redis
+     * @return 按距离升序的结果
+     */
+    public List<GeoGridIndex.Hit> search(long typeId, double x, double y, double radiusMeters, int limit) {
+        Map<Long, GeoGridIndex> current = indexes;
+        if (current != null) {
+            GeoGridIndex index = current.get(typeId);
+            return index == null ? new ArrayList<>(0) : index.search(x, y, radiusMeters, limit);
+        }
+        // 查询Redis，按照距离排序。结果: shopId、distance
+        GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo().search(
+                RedisConstants.SHOP_GEO_KEY + typeId,
+                GeoReference.fromCoordinate(x, y),
+                new Distance(radiusMeters),
+                RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().includeCoordinates().sortAscending().limit(limit)
+        );
+        if (results == null) {
+            return new ArrayList<>(0);
+        }
+        List<GeoGridIndex.Hit> hits = new ArrayList<>(results.getContent().size());
+        results.getContent().forEach(result -> hits.add(new GeoGridIndex.Hit(
+                Long.parseLong(result.getContent().getName()), result.getDistance().getValue(),
+                result.getContent().getPoint().getX(), result.getContent().getPoint().getY())));
+        return hits;
+    }
+
+    /**
+     * 店铺新增或修改了坐标、类型后调用，在事务中调用时等提交后再写入。
+     * 修改时调用方要先锁住这一行并在锁内调用，此时取得的版本顺序就是提交顺序
+     * @param oldTypeId 修改前的类型，新增时为null
+     * @param shop 修改后的完整数据
+     */
+    public void changed(Long oldTypeId, Shop shop) {
+        if (shop.getTypeId() == null || shop.getX() == null || shop.getY() == null) {
+            return;
+        }
+        GeoWrite write = new GeoWrite(shop.getId(), oldTypeId, shop.getTypeId(), new Point(shop.getX(), shop.getY()));
+        long version = nextVersion();
+        String message = shop.getId() + "," + shop.getTypeId() + "," + shop.getX() + "," + shop.getY() + "," + version;
+        afterCommit(() -> writeGeo(write, version, message));
+    }
+
+    /**
+     * 店铺删除后调用，调用方要先锁住这一行并在锁内调用，在事务中调用时等提交后再写入
+     */
+    public void removed(Long typeId, Long id) {
+        if (typeId == null) {
+            return;
+        }
+        GeoWrite write = new GeoWrite(id, typeId, null, null);
+        long version = nextVersion();
+        afterCommit(() -> writeGeo(write, version, id + "," + REMOVED + "," + version));
+    }
+
+    private long nextVersion() {
+        Long version = stringRedisTemplate.opsForValue().increment(RedisConstants.SHOP_GEO_SEQ_KEY);
+        if (version == null) {
+            throw new IllegalStateException("获取GEO版本失败");
+        }
+        return version;
+    }
+
+    /**
+     * 开始全量重建GEO集合，之后的增量变更会同时写入临时key {shop:geo}:{typeId}{name}:{本次的随机id}
+     * @return 本节点或其他节点已经有重建在进行时返回false
+     */
+    public boolean beginLoad(String name) {
+        synchronized (geoLock) {
+            if (loadingSuffix != null) {
+                return false;
+            }
+            String token = UUID.randomUUID().toString(true);
+            if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(
+                    RedisConstants.LOCK_SHOP_GEO_LOAD_KEY, token, RedisConstants.SHOP_GEO_LOAD_TTL, TimeUnit.SECONDS))) {
+                return false;
+            }
+            loadToken = token;
+            loadingSuffix = name + ":" + token;
+            // 公布重建状态，之后所有节点的增量变更都同时写入临时key
+            stringRedisTemplate.delete(RedisConstants.SHOP_GEO_LOADING_WRITES_KEY);
+            stringRedisTemplate.opsForValue().set(RedisConstants.SHOP_GEO_LOADING_KEY, loadingSuffix,
+                    RedisConstants.SHOP_GEO_LOAD_TTL, TimeUnit.SECONDS);
+            return true;
+        }
+    }
+
+    /**
+     * 全量重建时写入一批店铺，按类型分组后一次pipeline写入临时key
+     */
+    public void loadBatch(Collection<Shop> shops) {
+        String suffix;
+        synchronized (geoLock) {
+            suffix = loadingSuffix;
+        }
+        if (suffix == null) {
+            throw new IllegalStateException("没有调用beginLoad");
+        }
+        Map<Long, Map<String, Point>> byType = new HashMap<>();
+        for (Shop shop : shops) {
+            if (shop.getTypeId() == null || shop.getX() == null || shop.getY() == null) {
+                continue;
+            }
+            byType.computeIfAbsent(shop.getTypeId(), k -> new HashMap<>())
+                    .put(shop.getId().toString(), new Point(shop.getX(), shop.getY()));
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection c = (StringRedisConnection) connection;
+            byType.forEach((typeId, members) -> {
+                String tmpKey = RedisConstants.SHOP_GEO_KEY + typeId + suffix;
+                c.geoAdd(tmpKey, members);
+                // 重建中途崩溃时临时key自动过期
+                c.expire(tmpKey, RedisConstants.SHOP_GEO_LOAD_TTL);
+            });
+            // 续期重建锁和重建状态
+            c.expire(RedisConstants.LOCK_SHOP_GEO_LOAD_KEY, RedisConstants.SHOP_GEO_LOAD_TTL);
+            c.expire(RedisConstants.SHOP_GEO_LOADING_KEY, RedisConstants.SHOP_GEO_LOAD_TTL);
+            c.expire(RedisConstants.SHOP_GEO_LOADING_WRITES_KEY, RedisConstants.SHOP_GEO_LOAD_TTL);
+            return null;
+        });
+    }
+
+    /**
+     * 结束全量重建：完成时先重放期间所有节点的增量变更，再把临时key rename 成正式key，没有临时key的类型删除正式key；未完成则删除临时key
+     */
+    public void finishLoad(Collection<Long> typeIds, boolean completed) {
+        synchronized (geoLock) {
+            if (loadingSuffix == null) {
+                return;
+            }
+            String suffix = loadingSuffix;
+            // 重建期间新出现的类型也只在临时key里有完整数据
+            Set<Long> allTypeIds = new HashSet<>(typeIds);
+            List<String> writes = stringRedisTemplate.opsForList().range(RedisConstants.SHOP_GEO_LOADING_WRITES_KEY, 0, -1);
+            if (writes != null && !writes.isEmpty()) {
+                List<GeoWrite> replay = new ArrayList<>(writes.size());
+                for (String write : writes) {
+                    GeoWrite w = GeoWrite.parse(write);
+                    replay.add(w);
+                    if (w.typeId != null) {
+                        allTypeIds.add(w.typeId);
+                    }
+                    if (w.oldTypeId != null) {
+                        allTypeIds.add(w.oldTypeId);
+                    }
+                }
+                if (completed) {
+                    pipeline(replay, suffix);
+                }
+            }
+            List<String> keys = new ArrayList<>(allTypeIds.size() * 2 + 2);
+            keys.add(RedisConstants.SHOP_GEO_LOADING_KEY);
+            keys.add(RedisConstants.SHOP_GEO_LOADING_WRITES_KEY);
+            for (Long typeId : allTypeIds) {
+                keys.add(RedisConstants.SHOP_GEO_KEY + typeId + suffix);
+                keys.add(RedisConstants.SHOP_GEO_KEY + typeId);
+            }
+            try {
+                stringRedisTemplate.execute(FINISH_SCRIPT, keys, suffix, completed ? "1" : "0");
+            } finally {
+                if (loadToken.equals(stringRedisTemplate.opsForValue().get(RedisConstants.LOCK_SHOP_GEO_LOAD_KEY))) {
+                    stringRedisTemplate.delete(RedisConstants.LOCK_SHOP_GEO_LOAD_KEY);
+                }
+                loadingSuffix = null;
+                loadToken = null;
+            }
+        }
+    }
+
+    /**
+     * 把旧前缀的GEO集合 shop:geo:{typeId} 复制成 {shop:geo}:{typeId}，新key已存在的类型跳过。
+     * 两个key不在同一个slot，用 DUMP/RESTORE 复制；RESTORE 不覆盖已有的key，多个节点同时启动时只有一个复制成功。
+     * 旧key设置过期时间而不是立即删除，滚动发布期间还没升级的节点照常使用
+     * @return 复制的类型数量
+     */
+    public int migrateLegacyKeys(Collection<Long> typeIds) {
+        int migrated = 0;
+        for (Long typeId : typeIds) {
+            String key = RedisConstants.SHOP_GEO_KEY + typeId;
+            String legacyKey = RedisConstants.SHOP_GEO_LEGACY_KEY + typeId;
+            if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(key))) {
+                continue;
+            }
+            byte[] value = stringRedisTemplate.dump(legacyKey);
+            if (value == null) {
+                continue;
+            }
+            try {
+                stringRedisTemplate.restore(key, value, 0, TimeUnit.MILLISECONDS);
+            } catch (DataAccessException e) {
+                // 其他节点已经复制，或者增量变更、重建已经写入了新key
+                log.debug("GEO集合{}已存在, 跳过复制", key);
+                continue;
+            }
+            stringRedisTemplate.expire(legacyKey, RedisConstants.SHOP_GEO_LEGACY_TTL, TimeUnit.HOURS);
+            migrated++;
+        }
+        return migrated;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("enabled", enabled);
+        Map<Long, GeoGridIndex> current = indexes;
+        m.put("ready", current != null);
+        m.put("builtAt", builtAt);
+        Map<Long, Object> types = new LinkedHashMap<>();
+        if (current != null) {
+            current.forEach((typeId, index) -> {
+                Map<String, Object> t = new LinkedHashMap<>();
+                t.put("shops", index.size());
+                t.put("cells", index.cellCount());
+                types.put(typeId, t);
+            });
+        }
+        m.put("types", types);
+        return m;
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * 执行写入脚本。临时key的名字取决于重建状态，先读出状态再把key传给脚本，脚本发现状态已变化时重新读取
+     */
+    private void writeGeo(GeoWrite write, long version, String message) {
+        String id = String.valueOf(write.id);
+        String oldType = write.oldTypeId == null ? "" : write.oldTypeId.toString();
+        String newType = write.typeId == null ? "" : write.typeId.toString();
+        // 没有原类型(新增)或新类型(删除)时用另一个key占位，脚本不会访问它
+        String oldKey = RedisConstants.SHOP_GEO_KEY + (oldType.isEmpty() ? newType : oldType);
+        String newKey = RedisConstants.SHOP_GEO_KEY + (newType.isEmpty() ? oldType : newType);
+        for (int attempt = 0; attempt < MAX_WRITE_ATTEMPTS; attempt++) {
+            String loading = stringRedisTemplate.opsForValue().get(RedisConstants.SHOP_GEO_LOADING_KEY);
+            String suffix = loading == null ? "" : loading;
+            Long result = stringRedisTemplate.execute(WRITE_SCRIPT,
+                    Arrays.asList(RedisConstants.SHOP_GEO_LOADING_KEY, RedisConstants.SHOP_GEO_LOADING_WRITES_KEY,
+                            RedisConstants.SHOP_GEO_VERSION_KEY + id, oldKey, newKey, oldKey + suffix, newKey + suffix),
+                    suffix, id, oldType, newType,
+                    write.point == null ? "" : String.valueOf(write.point.getX()),
+                    write.point == null ? "" : String.valueOf(write.point.getY()),
+                    String.valueOf(version), RedisConstants.SHOP_GEO_VERSION_TTL.toString(),
+                    enabled ? RedisConstants.SHOP_GEO_CHANGED_CHANNEL : "", message);
+            if (result == null || result != LOADING_CHANGED) {
+                return;
+            }
+        }
+        log.warn("GEO重建状态频繁变化, 店铺{}的变更没有写入", write.id);
+    }
+
+    /**
+     * 把变更重放到临时key
+     */
+    private void pipeline(List<GeoWrite> writes, String suffix) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection c = (StringRedisConnection) connection;
+            for (GeoWrite write : writes) {
+                String member = String.valueOf(write.id);
+                if (write.oldTypeId != null && !write.oldTypeId.equals(write.typeId)) {
+                    c.zRem(RedisConstants.SHOP_GEO_KEY + write.oldTypeId + suffix, member);
+                }
+                if (write.typeId != null) {
+                    c.geoAdd(RedisConstants.SHOP_GEO_KEY + write.typeId + suffix, write.point, member);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 一次GEO集合变更：从 oldTypeId 的集合移到 typeId 的集合，typeId 为null表示删除
+     */
+    private static class GeoWrite {
+        final long id;
+        final Long oldTypeId;
+        final Long typeId;
+        final Point point;
+
+        GeoWrite(long id, Long oldTypeId, Long typeId, Point point) {
+            this.id = id;
+            this.oldTypeId = oldTypeId;
+            this.typeId = typeId;
+            this.point = point;
+        }
+
+        /**
+         * shop_geo_write.lua 记录的格式: "id,原类型,新类型,x,y"，空表示没有
+         */
+        static GeoWrite parse(String s) {
+            String[] parts = s.split(",", -1);
+            Long oldTypeId = parts[1].isEmpty() ? null : Long.valueOf(parts[1]);
+            Long typeId = parts[2].isEmpty() ? null : Long.valueOf(parts[2]);
+            Point point = typeId == null ? null : new Point(Double.parseDouble(parts[3]), Double.parseDouble(parts[4]));
+            return new GeoWrite(Long.parseLong(parts[0]), oldTypeId, typeId, point);
+        }
+    }
+
+    /**
+     * 消息格式: "id,typeId,x,y,version" 表示新增或移动，"id,-,version" 表示删除。
+     * 同一店铺的变更可能乱序到达，不比已应用版本新的直接丢弃；删除后保留版本，之前的变更晚到也不会把店铺加回来。
+     * 按记录的类型只访问原类型和新类型的索引，每条变更的开销只与所在格子的大小有关。
+     * 整个方法持有锁，移动类型时"从原类型删除"和"加入新类型"不会和另一条变更交错
+     */
+    private synchronized void apply(String change) {
+        if (pendingChanges != null) {
+            pendingChanges.add(change);
+        }
+        Map<Long, GeoGridIndex> current = indexes;
+        if (current == null) {
+            return;
+        }
+        String[] parts = change.split(",");
+        long id = Long.parseLong(parts[0]);
+        long version = Long.parseLong(parts[parts.length - 1]);
+        if (version <= appliedVersions.get(id, 0)) {
+            return;
+        }
+        appliedVersions.put(id, version);
+        long oldTypeId = typeOf.get(id, NO_TYPE);
+        if (REMOVED.equals(parts[1])) {
+            removeFrom(current, oldTypeId, id);
+            typeOf.remove(id, NO_TYPE);
+            return;
+        }
+        long typeId = Long.parseLong(parts[1]);
+        // 类型变了，先从原类型中删掉；同类型内的移动由 put 处理
+        if (oldTypeId != typeId) {
+            removeFrom(current, oldTypeId, id);
+        }
+        current.computeIfAbsent(typeId, k -> new GeoGridIndex(cellDegrees))
+                .put(id, Double.parseDouble(parts[2]), Double.parseDouble(parts[3]));
+        typeOf.put(id, typeId);
+    }
+
+    private static void removeFrom(Map<Long, GeoGridIndex> current, long typeId, long id) {
+        GeoGridIndex index = typeId == NO_TYPE ? null : current.get(typeId);
+        if (index != null) {
+            index.remove(id);
+        }
+    }
+
+    /**
+     * 全量构建，按 typeId 分组，add 可以并发调用
+     */
+    public class Builder {
+        private final Map<Long, GeoGridIndex.Builder> builders = new HashMap<>();
+        private final LongLongMap typeOf = new LongLongMap(1024);
+
+        public synchronized void add(Collection<Shop> shops) {
+            for (Shop shop : shops) {
+                if (shop.getTypeId() == null || shop.getX() == null || shop.getY() == null) {
+                    continue;
+                }
+                builders.computeIfAbsent(shop.getTypeId(), k -> new GeoGridIndex.Builder(cellDegrees))
+                        .add(shop.getId(), shop.getX(), shop.getY());
+                typeOf.put(shop.getId(), shop.getTypeId());
+            }
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 附近店铺的搜索快照：坐标按 geohash 量化成格子，(typeId, 格子) 第一次查询时以格子中心为圆心、
+ * 半径加上格子半对角线查出最多 max-size 个店铺连同坐标写入Redis，之后同一格子内所有用户的翻页都读取快照，不再重复搜索。
+ * <pre>
+ * shop:geo:snapshot:{typeId}:{geohash}        = 当前快照，新的查询从这里读取，ttl-seconds 后过期
+ * shop:geo:snapshot:{typeId}:{geohash}:{版本} = 同一快照按版本保存的副本，游标从这里读取，ttl-seconds + cursor-ttl-minutes 后过期
+ * 值的格式: [版本 8字节][完整覆盖的半径 8字节][副本的过期时间 8字节][店铺id 8字节 + 经度 8字节 + 纬度 8字节] * n
+ * </pre>
+ * 每次读取按用户自己的坐标重新计算距离、按半径过滤并排序，保证页内和页间都按展示的距离排列。
+ * 快照被 max-size 截断时，只有到用户距离不超过 覆盖半径 - 半对角线 的店铺一定完整，超出部分的页直接搜索。
+ * 当前快照TTL很短，过期后下次查询重新生成新版本；已发出的游标继续读取原版本的副本，不会在新快照上错位继续。
+ * 每个格子每 ttl-seconds 最多生成一个版本，同时保留的副本数不超过 (ttl-seconds + cursor-ttl-minutes) / ttl-seconds。
+ * 游标是 (typeId, offset, 版本, 过期时间, 用户坐标) 加 HMAC 签名的 base64，任何节点无需保存状态即可校验；
+ * 游标的过期时间不晚于副本的过期时间，第一页之后 cursor-ttl-minutes 内翻页游标一定有效。
+ */
+@Slf4j
+@Component
+public class ShopGeoSnapshot {
+
+    private static final int HEADER_LENGTH = 24;
+    private static final int ENTRY_LENGTH = 24;
+    private static final int CURSOR_LENGTH = 8 + 4 + 8 + 8 + 8 + 8;
+    private static final int MAC_LENGTH = 16;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+
+    @Value("${hmdp.cache.geo-snapshot.precision:6}")
+    private int precision;
+    @Value("${hmdp.cache.geo-snapshot.ttl-seconds:60}")
+    private long ttlSeconds;
+    @Value("${hmdp.cache.geo-snapshot.max-size:200}")
+    private int maxSize;
+    @Value("${hmdp.cache.geo-snapshot.radius-meters:5000}")
+    private double radiusMeters;
+    @Value("${hmdp.cache.geo-snapshot.cursor-ttl-minutes:30}")
+    private long cursorTtlMinutes;
+    @Value("${hmdp.cache.geo-snapshot.cursor-secret:hmdp-geo-cursor}")
+    private String cursorSecret;
+
+    private SecretKeySpec macKey;
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(() -> {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(macKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    @PostConstruct
+    public void init() {
+        macKey = new SecretKeySpec(cursorSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public double getRadiusMeters() {
+        return radiusMeters;
+    }
+
+    /**
+     * 从 offset 开始截取 count 个，超出半径的部分不返回
+     */
+    public Slice slice(long typeId, double x, double y, int offset, int count) {
+        String hash = GeoHash.encode(x, y, precision);
+        String key = snapshotKey(typeId, hash);
+        byte[] value = get(key);
+        if (value == null || value.length < HEADER_LENGTH) {
+            create(key, typeId, hash);
+            value = get(key);
+            if (value == null || value.length < HEADER_LENGTH) {
+                return new Slice(new long[0], new double[0], null);
+            }
+        }
+        return read(value, typeId, hash, x, y, offset, count);
+    }
+
+    /**
+     * 按游标继续截取
+     * @return 游标无效、已过期时返回null，调用方应从第一页重新查询
+     */
+    public Slice next(String cursor, int count) {
+        ByteBuffer buffer = verify(cursor);
+        if (buffer == null) {
+            return null;
+        }
+        long typeId = buffer.getLong();
+        int offset = buffer.getInt();
+        long version = buffer.getLong();
+        buffer.getLong();
+        double x = buffer.getDouble();
+        double y = buffer.getDouble();
+        String hash = GeoHash.encode(x, y, precision);
+        // 读取游标所属版本的副本，新快照里同一位置的店铺和旧快照不同，继续截取会重复或遗漏
+        String key = snapshotKey(typeId, hash) + ":" + version;
+        byte[] value = get(key);
+        if (value == null || value.length < HEADER_LENGTH || ByteBuffer.wrap(value).getLong() != version) {
+            log.debug("快照副本已过期, key={}, 游标失效", key);
+            return null;
+        }
+        return read(value, typeId, hash, x, y, offset, count);
+    }
+
+    /**
+     * 按用户坐标重新计算距离、过滤和排序后截取一页，快照不完整的部分直接搜索
+     */
+    private Slice read(byte[] value, long typeId, String hash, double x, double y, int offset, int count) {
+        ByteBuffer buffer = ByteBuffer.wrap(value);
+        long version = buffer.getLong();
+        double coverage = buffer.getDouble();
+        long expireAt = buffer.getLong();
+        boolean complete = coverage == Double.MAX_VALUE;
+        // 用户在格子内，到格子中心不超过半对角线：快照外的店铺到用户的距离不小于 coverage - 半对角线
+        double limit = complete ? radiusMeters : Math.min(radiusMeters, coverage - halfDiagonal(hash));
+        int n = (value.length - HEADER_LENGTH) / ENTRY_LENGTH;
+        long[] ids = new long[n];
+        double[] distances = new double[n];
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            long id = buffer.getLong();
+            double d = GeoGridIndex.distance(x, y, buffer.getDouble(), buffer.getDouble());
+            if (d <= limit) {
+                ids[m] = id;
+                distances[m] = d;
+                m++;
+            }
+        }
+        sort(ids, distances, m);
+        int end = offset + count;
+        if (end <= m || complete) {
+            int from = Math.min(offset, m);
+            int to = Math.min(end, m);
+            return new Slice(Arrays.copyOfRange(ids, from, to), Arrays.copyOfRange(distances, from, to),
+                    end < m || !complete ? sign(typeId, end, version, expireAt, x, y) : null);
+        }
+        // 超出快照完整范围的页直接搜索，排序与快照部分一致
+        List<GeoGridIndex.Hit> hits = shopGeoIndex.search(typeId, x, y, radiusMeters, end + 1);
+        int from = Math.min(offset, hits.size());
+        int to = Math.min(end, hits.size());
+        long[] pageIds = new long[to - from];
+        double[] pageDistances = new double[to - from];
+        for (int i = from; i < to; i++) {
+            pageIds[i - from] = hits.get(i).getId();
+            pageDistances[i - from] = hits.get(i).getDistance();
+        }
+        return new Slice(pageIds, pageDistances, hits.size() > end ? sign(typeId, end, version, expireAt, x, y) : null);
+    }
+
+    /**
+     * 快照按到格子中心的距离排序，换成用户坐标后基本有序，插入排序接近线性
+     */
+    private static void sort(long[] ids, double[] distances, int n) {
+        for (int i = 1; i < n; i++) {
+            long id = ids[i];
+            double d = distances[i];
+            int j = i - 1;
+            while (j >= 0 && distances[j] > d) {
+                ids[j + 1] = ids[j];
+                distances[j + 1] = distances[j];
+                j--;
+            }
+            ids[j + 1] = id;
+            distances[j + 1] = d;
+        }
+    }
+
+    /**
+     * 格子中心到最远一角的距离，离赤道近的一边更宽
+     */
+    static double halfDiagonal(String hash) {
+        double[] b = GeoHash.bounds(hash);
+        if (b == null) {
+            return 0;
+        }
+        double cx = (b[0] + b[2]) / 2;
+        double cy = (b[1] + b[3]) / 2;
+        return Math.max(GeoGridIndex.distance(cx, cy, b[0], b[1]), GeoGridIndex.distance(cx, cy, b[0], b[3]));
+    }
+
+    private byte[] get(String key) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(rawKey));
+    }
+
+    private static String snapshotKey(long typeId, String hash) {
+        return RedisConstants.SHOP_GEO_SNAPSHOT_KEY + typeId + ":" + hash;
+    }
+
+    /**
+     * 以格子中心为圆心、半径加半对角线生成快照，格子内任何用户半径内的店铺都在搜索范围内。
+     * 先写按版本保存的副本再写当前快照，游标拿到的版本一定有副本；多个节点同时生成时只有第一个成为当前快照，其余的副本删除
+     */
+    private void create(String key, long typeId, String hash) {
+        double[] center = GeoHash.center(hash);
+        if (center == null) {
+            return;
+        }
+        List<GeoGridIndex.Hit> hits = shopGeoIndex.search(
+                typeId, center[0], center[1], radiusMeters + halfDiagonal(hash), maxSize);
+        long version = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+        long copyTtlSeconds = ttlSeconds + TimeUnit.MINUTES.toSeconds(cursorTtlMinutes);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + hits.size() * ENTRY_LENGTH);
+        buffer.putLong(version);
+        // 被 max-size 截断时，只有最后一个店铺的距离以内是完整的
+        buffer.putDouble(hits.size() < maxSize ? Double.MAX_VALUE : hits.get(hits.size() - 1).getDistance());
+        buffer.putLong(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(copyTtlSeconds));
+        for (GeoGridIndex.Hit hit : hits) {
+            buffer.putLong(hit.getId());
+            buffer.putDouble(hit.getX());
+            buffer.putDouble(hit.getY());
+        }
+        byte[] value = buffer.array();
+        byte[] copyKey = (key + ":" + version).getBytes(StandardCharsets.UTF_8);
+        Boolean created = stringRedisTemplate.execute((RedisCallback<Boolean>) connection -> {
+            connection.stringCommands().set(copyKey, value, Expiration.from(copyTtlSeconds, TimeUnit.SECONDS),
+                    RedisStringCommands.SetOption.UPSERT);
+            return connection.stringCommands().set(key.getBytes(StandardCharsets.UTF_8), value,
+                    Expiration.from(ttlSeconds, TimeUnit.SECONDS), RedisStringCommands.SetOption.SET_IF_ABSENT);
+        });
+        if (!Boolean.TRUE.equals(created)) {
+            stringRedisTemplate.delete(key + ":" + version);
+        }
+    }
+
+    /**
+     * @param copyExpireAt 版本副本的过期时间，游标不会比副本活得更久
+     */
+    private String sign(long typeId, int offset, long version, long copyExpireAt, double x, double y) {
+        ByteBuffer buffer = ByteBuffer.allocate(CURSOR_LENGTH + MAC_LENGTH);
+        buffer.putLong(typeId)
+                .putInt(offset)
+                .putLong(version)
+                .putLong(Math.min(copyExpireAt, System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(cursorTtlMinutes)))
+                .putDouble(x)
+                .putDouble(y);
+        byte[] bytes = buffer.array();
+        Mac mac = macs.get();
+        mac.update(bytes, 0, CURSOR_LENGTH);
+        System.arraycopy(mac.doFinal(), 0, bytes, CURSOR_LENGTH, MAC_LENGTH);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * 校验签名和过期时间
+     * @return 定位在正文开头的 buffer，校验失败返回null
+     */
+    private ByteBuffer verify(String cursor) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (bytes.length != CURSOR_LENGTH + MAC_LENGTH) {
+            return null;
+        }
+        Mac mac = macs.get();
+        mac.update(bytes, 0, CURSOR_LENGTH);
+        byte[] expected = Arrays.copyOf(mac.doFinal(), MAC_LENGTH);
+        if (!MessageDigest.isEqual(expected, Arrays.copyOfRange(bytes, CURSOR_LENGTH, bytes.length))) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, CURSOR_LENGTH);
+        if (buffer.getLong(8 + 4 + 8) < System.currentTimeMillis()) {
+            return null;
+        }
+        return buffer;
+    }
+
+    /**
+     * 一页店铺：店铺id、到用户的距离(米)，以及下一页的游标(没有更多时为null)
+     */
+    public static class Slice {
+        private final long[] ids;
+        private final double[] distances;
+        private final String cursor;
+
+        Slice(long[] ids, double[] distances, String cursor) {
+            this.ids = ids;
+            this.distances = distances;
+            this.cursor = cursor;
+        }
+
+        public long[] getIds() {
+            return ids;
+        }
+
+        public double[] getDistances() {
+            return distances;
+        }
+
+        public String getCursor() {
+            return cursor;
+        }
+    }
+}
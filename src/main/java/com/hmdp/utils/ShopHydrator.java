@@ -0,0 +1,61 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 按id列表组装店铺：先查一级缓存，剩下的一次MGET，仍未命中的一次 IN 查询并写回缓存，
+ * 结果按传入顺序排列，不需要 ORDER BY FIELD。
+ * 距离按下标与id对应，不经过以id为key的Map。
+ */
+@Component
+public class ShopHydrator {
+
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private ShopMapper shopMapper;
+
+    /**
+     * 查不到的店铺跳过。距离用调用方排序时算出的值，展示的距离与顺序一致
+     * @param ids 店铺id，按展示顺序
+     * @param distances 与 ids 一一对应的到用户的距离(米)
+     */
+    public List<Shop> hydrate(long[] ids, double[] distances) {
+        if (ids.length == 0) {
+            return Collections.emptyList();
+        }
+        List<Long> idList = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            idList.add(id);
+        }
+        List<Shop> cached = cacheClient.queryBatchWithPassThrough(RedisConstants.CACHE_SHOP_KEY, idList, Shop.class,
+                this::load, RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        List<Shop> shops = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            Shop shop = cached.get(i);
+            if (shop == null) {
+                continue;
+            }
+            // 缓存中的对象可能被一级缓存共享，复制后再设置距离
+            shop = shop.copy();
+            shop.setDistance(distances[i]);
+            shops.add(shop);
+        }
+        return shops;
+    }
+
+    private Map<Long, Shop> load(Collection<Long> ids) {
+        return shopMapper.selectBatchIds(ids).stream().collect(Collectors.toMap(Shop::getId, shop -> shop));
+    }
+}
@@ -0,0 +1,64 @@
+package com.hmdp.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 同一个key的并发加载合并为一次：第一个线程执行加载，其余线程等待同一个future并共享结果。
+ */
+public class SingleFlight {
+
+    private final Map<String, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+
+    /**
+     * 真正执行加载的次数
+     */
+    private final LongAdder loads = new LongAdder();
+    /**
+     * 被合并、直接复用别人结果的次数
+     */
+    private final LongAdder coalesced = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> loader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = calls.putIfAbsent(key, future);
+        if (inFlight != null) {
+            coalesced.increment();
+            try {
+                return (T) inFlight.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : e;
+            }
+        }
+        loads.increment();
+        try {
+            T value = loader.get();
+            future.complete(value);
+            return value;
+        } catch (Throwable e) {
+            // 包括 Error，否则等待的线程会一直阻塞
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, future);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("loads", loads.sum());
+        m.put("coalesced", coalesced.sum());
+        m.put("inFlight", calls.size());
+        return m;
+    }
+}
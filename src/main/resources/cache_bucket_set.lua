@@ -0,0 +1,14 @@
+-- 写入一个分桶缓存条目，并保证桶的过期时间不短于该条目
+-- KEYS[1] 桶的key，ARGV[1] 字段(id)，ARGV[2] 带过期时间戳的值，ARGV[3] 条目TTL毫秒(<=0 表示不过期)
+local existed = redis.call('exists', KEYS[1])
+redis.call('hset', KEYS[1], ARGV[1], ARGV[2])
+local ttl = tonumber(ARGV[3])
+if ttl <= 0 then
+    redis.call('persist', KEYS[1])
+    return 1
+end
+local pttl = redis.call('pttl', KEYS[1])
+if existed == 0 or (pttl >= 0 and pttl < ttl) then
+    redis.call('pexpire', KEYS[1], ttl)
+end
+return 1
@@ -0,0 +1,13 @@
+-- ----------------------------
+-- 已有数据库升级：tb_voucher_order 加 (user_id, voucher_id) 唯一索引，一人一单和重复投递的订单由它保证。
+-- 新建的库用 hmdp.sql 即可，不需要执行本文件。索引不存在时应用启动失败。
+-- ----------------------------
+
+-- 1.先检查是否已有同一用户对同一张券的多个订单，有结果时需要先人工处理，否则加索引会失败
+SELECT `user_id`, `voucher_id`, COUNT(*) AS `orders`
+FROM `tb_voucher_order`
+GROUP BY `user_id`, `voucher_id`
+HAVING COUNT(*) > 1;
+
+-- 2.加唯一索引
+ALTER TABLE `tb_voucher_order` ADD UNIQUE INDEX `uk_user_voucher`(`user_id`, `voucher_id`) USING BTREE;
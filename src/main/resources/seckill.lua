@@ -3,25 +3,28 @@
 --- Created by 12952.
 --- DateTime: 2025/3/20 15:58
 ---
-local voucher_id = ARGV[1]
-local user_id = ARGV[2]
-local order_id = ARGV[3]
-
--- 数据key
-local stock_key = 'seckill:stock:' .. voucher_id
-local order_key = 'seckill:order:' .. voucher_id
+-- 不分片时的秒杀资格判断，两个key用同一个hash tag {voucherId}，集群模式下在同一个slot
+-- 订单消息队列和订单id计数器不在这张券的slot上，成功的订单先写入同slot的待转发集合，和扣减库存一起生效，再由调用方转发到队列
+-- KEYS[1] 库存 seckill:stock:{voucherId}，KEYS[2] 已下单用户集合 seckill:order:{voucherId}，KEYS[3] 待转发订单 seckill:pending:{voucherId}
+-- ARGV[1] 用户id，ARGV[2] 当前时间(毫秒)
+-- 返回 {0} 成功，{1} 库存不足，{2} 重复下单
+local stock_key = KEYS[1]
+local order_key = KEYS[2]
+local pending_key = KEYS[3]
+local user_id = ARGV[1]
 
 -- 脚本业务
 -- 判断库存是否充足
-if(tonumber(redis.call("get", stock_key))<=0) then
-    return 1
+local stock = tonumber(redis.call("get", stock_key))
+if(stock == nil or stock <= 0) then
+    return {1}
 end
 -- 判断用户是否重复购买
 if(redis.call("sismember", order_key, user_id) == 1) then
-    return 2
+    return {2}
 end
 
 redis.call("incrby", stock_key, -1)
 redis.call("sadd", order_key, user_id)
-redis.call("xadd", "stream.orders", "*", "userId", user_id, "voucherId", voucher_id, "id", order_id)
-return 0
+redis.call("hset", pending_key, user_id, ARGV[2])
+return {0}
@@ -0,0 +1,15 @@
+-- 确定待转发订单的订单id，已经确定过的沿用，保证重试转发时写入队列的是同一个订单id
+-- KEYS[1] 待转发订单 seckill:pending:{voucherId}，field 为用户id，值为 "写入时间" 或 "写入时间,订单id"
+-- ARGV[1] 用户id，ARGV[2] 新分配的订单id
+-- 返回订单id，记录已转发并删除时返回nil
+
+local value = redis.call('hget', KEYS[1], ARGV[1])
+if not value then
+    return nil
+end
+local comma = string.find(value, ',', 1, true)
+if comma then
+    return string.sub(value, comma + 1)
+end
+redis.call('hset', KEYS[1], ARGV[1], value .. ',' .. ARGV[2])
+return ARGV[2]
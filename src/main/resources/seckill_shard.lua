@@ -0,0 +1,22 @@
+-- 分片库存模式的秒杀资格判断，只访问用户所属分片的key(同一个hash tag)
+-- 成功的订单写入本分片的待转发集合，由调用方转发到订单队列
+-- KEYS[1] 分片库存，KEYS[2] 分片的已下单用户集合，KEYS[3] 分片的待转发订单，KEYS[4] 分片的兜底中用户
+-- ARGV[1] 用户id，ARGV[2] 当前时间(毫秒)
+-- 返回 {0} 成功，{1} 本分片已售完(用户已占位并记为兜底中，由调用方到其他分片扣减)，{2} 重复下单，
+-- {3} 用户上次的兜底没有完成(节点在中途宕机)，由调用方继续
+
+if redis.call('sismember', KEYS[2], ARGV[1]) == 1 then
+    if redis.call('zscore', KEYS[4], ARGV[1]) then
+        return {3}
+    end
+    return {2}
+end
+redis.call('sadd', KEYS[2], ARGV[1])
+local stock = tonumber(redis.call('get', KEYS[1]))
+if stock == nil or stock <= 0 then
+    redis.call('zadd', KEYS[4], ARGV[2], ARGV[1])
+    return {1}
+end
+redis.call('decr', KEYS[1])
+redis.call('hset', KEYS[3], ARGV[1], ARGV[2])
+return {0}
@@ -0,0 +1,13 @@
+-- 结束用户在所属分片的兜底：扣减成功时保留占位，全部售完时释放占位
+-- 下单请求和定时任务可能同时处理同一用户，只有移出兜底中集合的一方生效
+-- KEYS[1] 所属分片的已下单用户集合，KEYS[2] 所属分片的兜底中用户
+-- ARGV[1] 用户id，ARGV[2] 1 保留占位 | 0 释放占位
+-- 返回 1 生效，0 已被另一方处理
+
+if redis.call('zrem', KEYS[2], ARGV[1]) == 0 then
+    return 0
+end
+if ARGV[2] == '0' then
+    redis.call('srem', KEYS[1], ARGV[1])
+end
+return 1
@@ -0,0 +1,17 @@
+-- 用户所属分片售完后，到其他分片扣减库存，成功的订单写入该分片的待转发集合
+-- 在该分片扣减过的用户记入 KEYS[3]，继续中断的兜底时不会在同一分片重复扣减
+-- KEYS[1] 分片库存，KEYS[2] 分片的待转发订单，KEYS[3] 在该分片兜底扣减过的用户
+-- ARGV[1] 用户id，ARGV[2] 当前时间(毫秒)
+-- 返回 {0} 成功，{1} 该分片已售完，{2} 已在该分片扣减过
+
+if redis.call('sismember', KEYS[3], ARGV[1]) == 1 then
+    return {2}
+end
+local stock = tonumber(redis.call('get', KEYS[1]))
+if stock == nil or stock <= 0 then
+    return {1}
+end
+redis.call('decr', KEYS[1])
+redis.call('sadd', KEYS[3], ARGV[1])
+redis.call('hset', KEYS[2], ARGV[1], ARGV[2])
+return {0}
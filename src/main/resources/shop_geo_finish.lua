@@ -0,0 +1,23 @@
+-- 结束GEO全量重建：完成时把临时key rename 成正式key，否则删除；同时清掉重建标记
+-- 完成时临时key不存在说明该类型已经没有店铺(重建期间全部删除)，删除正式key
+-- 和 shop_geo_write.lua 互斥执行，标记清掉之后的变更只写正式key，之前的已经在临时key里
+-- KEYS[1] 重建状态(临时key后缀)，KEYS[2] 重建期间的变更记录，之后每两个一组: 临时key、正式key
+-- ARGV[1] 本次的临时key后缀，ARGV[2] 1 完成 0 放弃
+
+local completed = ARGV[2] == '1'
+if redis.call('get', KEYS[1]) == ARGV[1] then
+    redis.call('del', KEYS[1], KEYS[2])
+end
+for i = 3, #KEYS, 2 do
+    if redis.call('exists', KEYS[i]) == 1 then
+        if completed then
+            redis.call('rename', KEYS[i], KEYS[i + 1])
+            redis.call('persist', KEYS[i + 1])
+        else
+            redis.call('del', KEYS[i])
+        end
+    elseif completed then
+        redis.call('del', KEYS[i + 1])
+    end
+end
+return 0
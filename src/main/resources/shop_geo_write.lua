@@ -0,0 +1,39 @@
+-- 店铺GEO增量变更：版本比已写入的旧时忽略，保证并发修改按提交顺序生效；
+-- 有节点在全量重建时同时写入重建的临时key，并记下变更以便rename前重放
+-- KEYS[1] 重建状态(临时key后缀)，KEYS[2] 重建期间的变更记录，KEYS[3] 该店铺已写入的版本
+-- KEYS[4] 原类型的GEO key，KEYS[5] 新类型的GEO key，KEYS[6] 原类型的临时key，KEYS[7] 新类型的临时key
+-- ARGV[1] 调用方读到的临时key后缀(不在重建时为空)，ARGV[2] 店铺id，ARGV[3] 原类型(新增时为空)，ARGV[4] 新类型(删除时为空)
+-- ARGV[5] x，ARGV[6] y，ARGV[7] 版本，ARGV[8] 版本的过期秒数，ARGV[9] 本地索引的变更频道(为空不通知)，ARGV[10] 变更消息
+-- 返回 -1 重建状态已变化，调用方重新读取后重试；-2 版本过旧，忽略；0 已写入；1 同时写入了临时key
+
+local loading = redis.call('get', KEYS[1]) or ''
+if loading ~= ARGV[1] then
+    return -1
+end
+local current = tonumber(redis.call('get', KEYS[3]) or '0')
+if tonumber(ARGV[7]) <= current then
+    return -2
+end
+redis.call('set', KEYS[3], ARGV[7], 'EX', ARGV[8])
+
+local id, old_type, new_type, x, y = ARGV[2], ARGV[3], ARGV[4], ARGV[5], ARGV[6]
+local function write(old_key, new_key)
+    if old_type ~= '' and old_type ~= new_type then
+        redis.call('zrem', old_key, id)
+    end
+    if new_type ~= '' then
+        redis.call('geoadd', new_key, x, y, id)
+    end
+end
+
+write(KEYS[4], KEYS[5])
+-- 在脚本里通知，通知顺序与写入顺序一致
+if ARGV[9] ~= '' then
+    redis.call('publish', ARGV[9], ARGV[10])
+end
+if loading ~= '' then
+    write(KEYS[6], KEYS[7])
+    redis.call('rpush', KEYS[2], id .. ',' .. old_type .. ',' .. new_type .. ',' .. x .. ',' .. y)
+    return 1
+end
+return 0
@@ -1,25 +1,57 @@
 package com.hmdp;
 
+import com.hmdp.dto.GeoScrollResult;
+import com.hmdp.dto.Result;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.Shop;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
 import com.hmdp.service.impl.ShopServiceImpl;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheInvalidator;
+import com.hmdp.utils.GeoHash;
+import com.hmdp.utils.RedisBloomFilter;
+import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillStock;
+import com.hmdp.utils.ShopGeoIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.geo.Point;
 import org.springframework.data.redis.connection.RedisGeoCommands;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.annotation.Resource;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
-@SpringBootTest
+/**
+ * 秒杀订单消息写入没有消费者的 {@link #TEST_ORDER_STREAM}；本进程不消费订单、不补发待转发订单，不会接管线上订单队列的分区
+ */
+@SpringBootTest(properties = {
+        "hmdp.seckill.stream.key=" + HmDianPingApplicationTests.TEST_ORDER_STREAM,
+        "hmdp.seckill.stream.partitions=1",
+        "hmdp.seckill.consumer.enabled=false",
+        "hmdp.seckill.pending.forward-delay-seconds=0"
+})
 class HmDianPingApplicationTests {
 
     @Resource
@@ -29,6 +61,43 @@ class HmDianPingApplicationTests {
     private RedisIdWorker redisIdWorker;
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private SeckillStock seckillStock;
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+    @Resource
+    private CacheInvalidator cacheInvalidator;
+    @Resource
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 测试写入的订单消息，没有消费者读取
+     */
+    static final String TEST_ORDER_STREAM = "test:stream.orders";
+
+    /**
+     * 测试写入的key，每个测试结束后删除
+     */
+    private final List<String> testKeys = new ArrayList<>();
+    private final List<String> testVoucherIds = new ArrayList<>();
+
+    @AfterEach
+    void deleteTestKeys() {
+        if (!testKeys.isEmpty()) {
+            stringRedisTemplate.delete(testKeys);
+            testKeys.clear();
+        }
+        if (!testVoucherIds.isEmpty()) {
+            stringRedisTemplate.opsForSet().remove(RedisConstants.SECKILL_VOUCHERS_KEY, testVoucherIds.toArray());
+            testVoucherIds.clear();
+        }
+    }
 
     @Test
     void testSaveShop() throws InterruptedException {
@@ -67,7 +136,7 @@ class HmDianPingApplicationTests {
         );
         for (Map.Entry<Long, List<Shop>> entry : map.entrySet()){
             Long typeId = entry.getKey();
-            String key = "shop:geo:"+typeId;
+            String key = RedisConstants.SHOP_GEO_KEY + typeId;
             List<Shop> value = entry.getValue();
             List<RedisGeoCommands.GeoLocation<String>> locations = new ArrayList<>(value.size());
             for (Shop shop : value) {
@@ -96,4 +165,375 @@ class HmDianPingApplicationTests {
         System.out.println(hl1);
     }
 
+    /**
+     * 重建比 mutex.wait-millis 慢时，等待超时后自己查库写回的值也是逻辑过期格式，之后的查询能正常解码
+     */
+    @Test
+    void testMutexWaitTimeoutWritesLogicalExpire() throws Exception {
+        String keyPrefix = "cache:mutex-timeout:";
+        stringRedisTemplate.delete(keyPrefix + 1);
+        Function<Long, Shop> slowFallback = id -> {
+            try {
+                Thread.sleep(1500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return shopService.getById(id);
+        };
+        CompletableFuture<Shop> first = CompletableFuture.supplyAsync(() ->
+                cacheClient.quaryWithMutex(keyPrefix, 1L, Shop.class, slowFallback, 30L, TimeUnit.MINUTES));
+        Thread.sleep(100);
+        // 等待第一个线程重建超时，自己查库，最后写回
+        Shop second = cacheClient.quaryWithMutex(keyPrefix, 1L, Shop.class, slowFallback, 30L, TimeUnit.MINUTES);
+        Assertions.assertNotNull(first.get());
+        Assertions.assertNotNull(second);
+        Shop cached = cacheClient.quaryWithMutex(keyPrefix, 1L, Shop.class, id -> {
+            throw new AssertionError("缓存未命中");
+        }, 30L, TimeUnit.MINUTES);
+        Assertions.assertEquals(1L, cached.getId());
+        stringRedisTemplate.delete(keyPrefix + 1);
+    }
+
+    /**
+     * 100个线程同时未命中同一个key(慢查询200ms)，互斥锁模式只查一次库，所有线程都拿到结果
+     */
+    @Test
+    void testMutexMissLoadsOnce() throws Exception {
+        int concurrency = 100;
+        String keyPrefix = "cache:mutex-once:";
+        stringRedisTemplate.delete(keyPrefix + 1);
+        AtomicInteger dbCalls = new AtomicInteger();
+        Function<Long, Shop> dbFallback = id -> {
+            dbCalls.incrementAndGet();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return shopService.getById(id);
+        };
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<Shop>> results = new ArrayList<>(concurrency);
+        for (int t = 0; t < concurrency; t++) {
+            results.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return cacheClient.quaryWithMutex(keyPrefix, 1L, Shop.class, dbFallback, 30L, TimeUnit.MINUTES);
+            }, es));
+        }
+        start.countDown();
+        for (CompletableFuture<Shop> result : results) {
+            Assertions.assertEquals(1L, result.get().getId());
+        }
+        Assertions.assertEquals(1, dbCalls.get());
+        stringRedisTemplate.delete(keyPrefix + 1);
+    }
+
+    /**
+     * 修改预计数量或误判率后，按旧参数构建的bitmap不会被当成已就绪，新参数的过滤器需要重新构建
+     */
+    @Test
+    void testBloomFilterParametersChange() {
+        RedisBloomFilter built = new RedisBloomFilter(stringRedisTemplate, "test:bloom", 1000, 0.01);
+        RedisBloomFilter changed = new RedisBloomFilter(stringRedisTemplate, "test:bloom", 1000, 0.001);
+        testKeys.add(built.getKey());
+        testKeys.add(changed.getKey());
+        stringRedisTemplate.delete(testKeys);
+        Assertions.assertNotEquals(built.getKey(), changed.getKey());
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 100; id++) {
+            ids.add(id);
+        }
+        Assertions.assertEquals(100, built.rebuild(lastId -> lastId == 0 ? ids : new ArrayList<>()));
+        Assertions.assertTrue(new RedisBloomFilter(stringRedisTemplate, "test:bloom", 1000, 0.01).isReady());
+        Assertions.assertFalse(new RedisBloomFilter(stringRedisTemplate, "test:bloom", 1000, 0.001).isReady());
+        Assertions.assertEquals(100, changed.rebuild(lastId -> lastId == 0 ? ids : new ArrayList<>()));
+        for (Long id : ids) {
+            Assertions.assertTrue(changed.mightContain(id));
+        }
+    }
+
+    /**
+     * 在事务中失效的key提交前仍然存在，提交后才删除；事务回滚时保留
+     */
+    @Test
+    void testInvalidateAfterCommit() {
+        String key = "cache:invalidate-test:1";
+        testKeys.add(key);
+        stringRedisTemplate.opsForValue().set(key, "v");
+        transactionTemplate.executeWithoutResult(status -> {
+            cacheInvalidator.invalidate(key);
+            Assertions.assertEquals("v", stringRedisTemplate.opsForValue().get(key), "提交前就删除了");
+        });
+        Assertions.assertNull(stringRedisTemplate.opsForValue().get(key), "提交后没有删除");
+
+        stringRedisTemplate.opsForValue().set(key, "v");
+        transactionTemplate.executeWithoutResult(status -> {
+            cacheInvalidator.invalidate(key);
+            status.setRollbackOnly();
+        });
+        Assertions.assertEquals("v", stringRedisTemplate.opsForValue().get(key), "回滚后删除了");
+    }
+
+    /**
+     * 用游标滚动查询附近店铺直到最后一页，每页都不为空，店铺没有重复，跨页按距离从近到远
+     */
+    @Test
+    void testGeoScroll() {
+        Set<Long> seen = new HashSet<>();
+        String cursor = null;
+        int pages = 0;
+        double last = 0;
+        do {
+            Result result = shopService.queryShopByTypeScroll(1, 120.149993, 30.334229, cursor);
+            Assertions.assertTrue(result.getSuccess(), result.getErrorMsg());
+            GeoScrollResult page = (GeoScrollResult) result.getData();
+            Assertions.assertFalse(page.getList().isEmpty(), "第" + (pages + 1) + "页为空");
+            for (Object o : page.getList()) {
+                Shop shop = (Shop) o;
+                Assertions.assertTrue(seen.add(shop.getId()), "重复的店铺: " + shop.getId());
+                Assertions.assertNotNull(shop.getDistance(), "店铺" + shop.getId() + "没有距离");
+                Assertions.assertTrue(shop.getDistance() >= last, "店铺" + shop.getId() + "的距离" + shop.getDistance() + "小于前一个店铺的" + last);
+                last = shop.getDistance();
+            }
+            pages++;
+            cursor = page.getCursor();
+        } while (cursor != null);
+    }
+
+    /**
+     * 拿到第一页之后当前快照过期(直接删除来模拟)、又被新的查询替换，游标仍然读取原版本，翻页不会失效也不会重复
+     */
+    @Test
+    void testGeoScrollAcrossSnapshotExpiry() {
+        double x = 120.149993;
+        double y = 30.334229;
+        String key = RedisConstants.SHOP_GEO_SNAPSHOT_KEY + 1 + ":" + GeoHash.encode(x, y, 6);
+        stringRedisTemplate.delete(key);
+        GeoScrollResult first = (GeoScrollResult) shopService.queryShopByTypeScroll(1, x, y, null).getData();
+        Assertions.assertNotNull(first.getCursor(), "类型1的店铺需要多于一页");
+        stringRedisTemplate.delete(key);
+        shopService.queryShopByTypeScroll(1, x, y, null);
+        Result result = shopService.queryShopByTypeScroll(null, null, null, first.getCursor());
+        Assertions.assertTrue(result.getSuccess(), result.getErrorMsg());
+        GeoScrollResult second = (GeoScrollResult) result.getData();
+        Assertions.assertFalse(second.getList().isEmpty());
+        Set<Long> ids = new HashSet<>();
+        for (Object o : first.getList()) {
+            ids.add(((Shop) o).getId());
+        }
+        for (Object o : second.getList()) {
+            Assertions.assertTrue(ids.add(((Shop) o).getId()), "重复的店铺: " + ((Shop) o).getId());
+        }
+    }
+
+    /**
+     * 新增店铺、改类型、删除店铺后，{shop:geo}:{typeId} 集合和附近店铺查询都跟着变化。
+     * 未开启本地索引时 search 查Redis；开启时本地索引通过消息异步更新，等待最多3秒
+     */
+    @Test
+    void testShopGeoFollowsWrites() throws InterruptedException {
+        double x = 120.149993;
+        double y = 30.334229;
+        Shop shop = new Shop().setName("GEO测试店铺").setTypeId(1L).setImages("").setAddress("测试地址")
+                .setX(x).setY(y).setSold(0).setComments(0).setScore(0);
+        Assertions.assertTrue(shopService.saveShop(shop).getSuccess());
+        Long id = shop.getId();
+        testKeys.add(RedisConstants.CACHE_SHOP_KEY + id);
+        testKeys.add(RedisConstants.SHOP_GEO_VERSION_KEY + id);
+        try {
+            assertGeo(1L, id, x, y, true);
+            Assertions.assertTrue(shopService.update(new Shop().setId(id).setTypeId(2L)).getSuccess());
+            assertGeo(1L, id, x, y, false);
+            assertGeo(2L, id, x, y, true);
+            Assertions.assertTrue(shopService.deleteShop(id).getSuccess());
+            assertGeo(2L, id, x, y, false);
+        } finally {
+            shopService.removeById(id);
+            stringRedisTemplate.opsForZSet().remove(RedisConstants.SHOP_GEO_KEY + 1, id.toString());
+            stringRedisTemplate.opsForZSet().remove(RedisConstants.SHOP_GEO_KEY + 2, id.toString());
+        }
+    }
+
+    private void assertGeo(long typeId, long id, double x, double y, boolean present) throws InterruptedException {
+        String key = RedisConstants.SHOP_GEO_KEY + typeId;
+        Assertions.assertEquals(present, stringRedisTemplate.opsForZSet().score(key, String.valueOf(id)) != null,
+                key + (present ? " 缺少店铺" : " 仍有店铺") + id);
+        long deadline = System.currentTimeMillis() + 3000;
+        boolean found;
+        while ((found = shopGeoIndex.search(typeId, x, y, 1000, 10000).stream().anyMatch(hit -> hit.getId() == id)) != present
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        Assertions.assertEquals(present, found, "类型" + typeId + "的附近店铺" + (present ? "查不到" : "仍能查到") + "店铺" + id);
+    }
+
+    /**
+     * 分片后售完判断仍然准确：1000个库存分成8个分片，2000个用户并发抢购，成功数和写入订单队列的消息数都等于库存。
+     * 订单消息写入没有消费者的 {@link #TEST_ORDER_STREAM}，不进入线上的订单队列
+     */
+    @Test
+    void testShardedSeckillSellsExactlyStock() throws InterruptedException {
+        int stock = 1000;
+        long voucherId = 9_000_100L;
+        addSeckillKeys(voucherId, 8);
+        testKeys.add(TEST_ORDER_STREAM);
+        seckillStock.init(voucherId, stock, 8);
+        long queued = stringRedisTemplate.opsForStream().size(TEST_ORDER_STREAM);
+        AtomicInteger succeeded = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(stock * 2);
+        for (int i = 0; i < stock * 2; i++) {
+            long userId = i + 1;
+            es.submit(() -> {
+                if (seckillStock.tryAcquire(voucherId, userId) > 0) {
+                    succeeded.incrementAndGet();
+                }
+                latch.countDown();
+            });
+        }
+        latch.await();
+        Assertions.assertEquals(stock, succeeded.get());
+        Assertions.assertEquals(stock, stringRedisTemplate.opsForStream().size(TEST_ORDER_STREAM) - queued);
+    }
+
+    /**
+     * 补充库存之前得出的售完结论(其他节点的售完通知)在补充通知之后才处理，不会留下售完标记，补充的库存可以买到
+     */
+    @Test
+    void testStaleSoldOutAfterReplenish() throws InterruptedException {
+        long voucherId = 9_000_400L;
+        addSeckillKeys(voucherId, 1);
+        testKeys.add(RedisConstants.SECKILL_REPLENISH_KEY + voucherId);
+        testKeys.add(TEST_ORDER_STREAM);
+        seckillStock.init(voucherId, 1, 1);
+        String value = stringRedisTemplate.opsForValue().get(RedisConstants.SECKILL_REPLENISH_KEY + voucherId);
+        long generation = value == null ? 0 : Long.parseLong(value);
+        Assertions.assertTrue(seckillStock.tryAcquire(voucherId, 1L) > 0);
+        Assertions.assertEquals(SeckillStock.SOLD_OUT, seckillStock.tryAcquire(voucherId, 2L));
+        seckillStock.replenish(voucherId, 1);
+        // 补充之前发出的售完通知晚到
+        stringRedisTemplate.convertAndSend(RedisConstants.SECKILL_SOLD_OUT_CHANNEL, voucherId + "," + generation);
+        Thread.sleep(500);
+        Assertions.assertTrue(seckillStock.tryAcquire(voucherId, 3L) > 0);
+        Assertions.assertEquals(SeckillStock.SOLD_OUT, seckillStock.tryAcquire(voucherId, 4L));
+    }
+
+    /**
+     * 所属分片售完、到其他分片兜底时节点宕机，用户再次下单时继续兜底，不会一直被当成重复下单，也不会在已扣减过的分片再扣一次
+     */
+    @Test
+    void testInterruptedShardFallbackResumes() {
+        long voucherId = 9_000_500L;
+        addSeckillKeys(voucherId, 2);
+        testKeys.add(TEST_ORDER_STREAM);
+        // 分片0有1个库存，分片1没有；用户1、3属于分片1
+        seckillStock.init(voucherId, 1, 2);
+        String orderKey = RedisConstants.SECKILL_ORDER_KEY + "{" + voucherId + ":1}";
+        String reservingKey = RedisConstants.SECKILL_RESERVING_KEY + "{" + voucherId + ":1}";
+        String takenKey = RedisConstants.SECKILL_TAKEN_KEY + "{" + voucherId + ":0}";
+        // 用户1在所属分片占位后宕机，还没到分片0扣减
+        stringRedisTemplate.opsForSet().add(orderKey, "1");
+        stringRedisTemplate.opsForZSet().add(reservingKey, "1", System.currentTimeMillis());
+        Assertions.assertTrue(seckillStock.tryAcquire(voucherId, 1L) > 0);
+        Assertions.assertEquals("0", stringRedisTemplate.opsForValue().get(RedisConstants.SECKILL_STOCK_KEY + "{" + voucherId + ":0}"));
+        Assertions.assertNull(stringRedisTemplate.opsForZSet().score(reservingKey, "1"));
+        Assertions.assertEquals(SeckillStock.DUPLICATE, seckillStock.tryAcquire(voucherId, 1L));
+        // 用户3已在分片0扣减成功，结束兜底前宕机
+        stringRedisTemplate.opsForSet().add(orderKey, "3");
+        stringRedisTemplate.opsForZSet().add(reservingKey, "3", System.currentTimeMillis());
+        stringRedisTemplate.opsForSet().add(takenKey, "3");
+        Assertions.assertEquals(SeckillStock.DUPLICATE, seckillStock.tryAcquire(voucherId, 3L));
+        Assertions.assertNull(stringRedisTemplate.opsForZSet().score(reservingKey, "3"));
+        Assertions.assertTrue(stringRedisTemplate.opsForSet().isMember(orderKey, "3"));
+    }
+
+    /**
+     * 重复投递的订单被唯一索引挡掉，库存不会多扣
+     */
+    @Test
+    void testRedeliveredOrdersAreIgnored() {
+        long voucherId = 9_000_300L;
+        seckillVoucherService.removeById(voucherId);
+        seckillVoucherService.save(new SeckillVoucher().setVoucherId(voucherId).setStock(100)
+                .setBeginTime(LocalDateTime.now()).setEndTime(LocalDateTime.now().plusDays(1)));
+        List<VoucherOrder> orders = new ArrayList<>();
+        for (long userId = 1; userId <= 10; userId++) {
+            orders.add(new VoucherOrder().setId(redisIdWorker.nextId("order")).setUserId(userId).setVoucherId(voucherId));
+        }
+        Assertions.assertEquals(10, voucherOrderService.createVoucherOrders(orders));
+        // 同一批消息再投递一次，再加上一个新用户
+        List<VoucherOrder> redelivered = new ArrayList<>(orders);
+        redelivered.add(new VoucherOrder().setId(redisIdWorker.nextId("order")).setUserId(11L).setVoucherId(voucherId));
+        Assertions.assertEquals(1, voucherOrderService.createVoucherOrders(redelivered));
+        Assertions.assertEquals(89, seckillVoucherService.getById(voucherId).getStock());
+        Assertions.assertEquals(11, voucherOrderService.query().eq("voucher_id", voucherId).count());
+        voucherOrderService.remove(new QueryWrapper<VoucherOrder>().eq("voucher_id", voucherId));
+        seckillVoucherService.removeById(voucherId);
+    }
+
+    /**
+     * 库存只剩1个时，重复投递的订单和一个新订单在同一批：重复的订单不占库存，新订单照常创建
+     */
+    @Test
+    void testRedeliveredOrdersDoNotTakeStockNearSellOut() {
+        long voucherId = 9_000_301L;
+        seckillVoucherService.removeById(voucherId);
+        seckillVoucherService.save(new SeckillVoucher().setVoucherId(voucherId).setStock(10)
+                .setBeginTime(LocalDateTime.now()).setEndTime(LocalDateTime.now().plusDays(1)));
+        List<VoucherOrder> orders = new ArrayList<>();
+        for (long userId = 1; userId <= 9; userId++) {
+            orders.add(new VoucherOrder().setId(redisIdWorker.nextId("order")).setUserId(userId).setVoucherId(voucherId));
+        }
+        Assertions.assertEquals(9, voucherOrderService.createVoucherOrders(orders));
+        List<VoucherOrder> mixed = new ArrayList<>(orders);
+        mixed.add(new VoucherOrder().setId(redisIdWorker.nextId("order")).setUserId(10L).setVoucherId(voucherId));
+        Assertions.assertEquals(1, voucherOrderService.createVoucherOrders(mixed));
+        Assertions.assertEquals(0, seckillVoucherService.getById(voucherId).getStock());
+        Assertions.assertEquals(1, voucherOrderService.query().eq("voucher_id", voucherId).eq("user_id", 10L).count());
+        Assertions.assertEquals(10, voucherOrderService.query().eq("voucher_id", voucherId).count());
+        voucherOrderService.remove(new QueryWrapper<VoucherOrder>().eq("voucher_id", voucherId));
+        seckillVoucherService.removeById(voucherId);
+    }
+
+    /**
+     * 数据库库存不够整组扣减时这一组的订单全部不创建，库存不变
+     */
+    @Test
+    void testOrdersRolledBackWhenStockShort() {
+        long voucherId = 9_000_302L;
+        seckillVoucherService.removeById(voucherId);
+        voucherOrderService.remove(new QueryWrapper<VoucherOrder>().eq("voucher_id", voucherId));
+        seckillVoucherService.save(new SeckillVoucher().setVoucherId(voucherId).setStock(1)
+                .setBeginTime(LocalDateTime.now()).setEndTime(LocalDateTime.now().plusDays(1)));
+        List<VoucherOrder> orders = new ArrayList<>();
+        for (long userId = 1; userId <= 2; userId++) {
+            orders.add(new VoucherOrder().setId(redisIdWorker.nextId("order")).setUserId(userId).setVoucherId(voucherId));
+        }
+        Assertions.assertEquals(0, voucherOrderService.createVoucherOrders(orders));
+        Assertions.assertEquals(1, seckillVoucherService.getById(voucherId).getStock());
+        Assertions.assertEquals(0, voucherOrderService.query().eq("voucher_id", voucherId).count());
+        seckillVoucherService.removeById(voucherId);
+    }
+
+    /**
+     * 登记一张秒杀券的库存、已下单用户和分片数key，格式与 SeckillStock 一致
+     */
+    private void addSeckillKeys(long voucherId, int shards) {
+        testKeys.add(RedisConstants.SECKILL_SHARDS_KEY + voucherId);
+        testKeys.add(RedisConstants.SECKILL_STOCK_KEY + "{" + voucherId + "}");
+        testKeys.add(RedisConstants.SECKILL_ORDER_KEY + "{" + voucherId + "}");
+        testKeys.add(RedisConstants.SECKILL_PENDING_KEY + "{" + voucherId + "}");
+        for (int i = 0; i < shards; i++) {
+            testKeys.add(RedisConstants.SECKILL_STOCK_KEY + "{" + voucherId + ":" + i + "}");
+            testKeys.add(RedisConstants.SECKILL_ORDER_KEY + "{" + voucherId + ":" + i + "}");
+            testKeys.add(RedisConstants.SECKILL_PENDING_KEY + "{" + voucherId + ":" + i + "}");
+            testKeys.add(RedisConstants.SECKILL_RESERVING_KEY + "{" + voucherId + ":" + i + "}");
+            testKeys.add(RedisConstants.SECKILL_TAKEN_KEY + "{" + voucherId + ":" + i + "}");
+        }
+        testVoucherIds.add(String.valueOf(voucherId));
+    }
+
 }
@@ -0,0 +1,100 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.JsonCacheCodec;
+import com.hmdp.utils.RedisData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比 Shop 在JSON和二进制编解码下的编码/解码耗时、分配速率(gc.alloc.rate.norm)和字节大小。
+ * 运行: 先 mvn test-compile，再以 test classpath 执行本类的 main 方法。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheCodecBenchmark {
+
+    @Param({"json", "binary"})
+    private String codecName;
+
+    private CacheCodec codec;
+    private Shop shop;
+    private LocalDateTime expireTime;
+    private byte[] encoded;
+    private byte[] encodedWithExpire;
+
+    @Setup
+    public void setup() {
+        codec = "json".equals(codecName) ? new JsonCacheCodec() : new BinaryCacheCodec();
+        shop = sampleShop();
+        expireTime = LocalDateTime.now().plusMinutes(30);
+        encoded = codec.encode(shop);
+        encodedWithExpire = codec.encodeWithExpire(shop, expireTime);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.encode(shop);
+    }
+
+    @Benchmark
+    public Shop decode() {
+        return codec.decode(encoded, Shop.class);
+    }
+
+    @Benchmark
+    public byte[] encodeWithExpire() {
+        return codec.encodeWithExpire(shop, expireTime);
+    }
+
+    @Benchmark
+    public RedisData decodeWithExpire() {
+        return codec.decodeWithExpire(encodedWithExpire, Shop.class);
+    }
+
+    static Shop sampleShop() {
+        return new Shop()
+                .setId(1L)
+                .setName("103茶餐厅")
+                .setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg,https://qcloud.dpfile.com/pc/IOf6VX3qaBgFXFVgp75w-KKJmWZjFc8GXDU8g9bQC6YGCpAmG00QbfT4vCCBj7njuzFvxlbkWx5uwqY2qcjixFEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vmIU_8ZGOT1OjpJmLxG6urQ.jpg")
+                .setArea("大关")
+                .setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setComments(3035)
+                .setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Shop shop = sampleShop();
+        LocalDateTime expireTime = LocalDateTime.now().plusMinutes(30);
+        for (CacheCodec codec : new CacheCodec[]{new JsonCacheCodec(), new BinaryCacheCodec()}) {
+            System.out.println(codec.name() + " bytes = " + codec.encode(shop).length
+                    + ", withExpire bytes = " + codec.encodeWithExpire(shop, expireTime).length);
+        }
+        Options options = new OptionsBuilder()
+                .include(CacheCodecBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,67 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.utils.CacheMetrics;
+import com.hmdp.utils.RedisConstants;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 衡量 CacheMetrics 在热点路径上的开销：一次命中计数 + 一次耗时记录，
+ * 多线程下的耗时和每次操作的分配字节数(gc.alloc.rate.norm 应接近0)。
+ * 运行: 先 mvn test-compile，再以 test classpath 执行本类的 main 方法。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheMetricsBenchmark {
+
+    private CacheMetrics metrics;
+
+    @Setup
+    public void setup() {
+        metrics = new CacheMetrics();
+        metrics.hit(RedisConstants.CACHE_SHOP_KEY);
+    }
+
+    @Benchmark
+    public long baseline() {
+        return System.nanoTime();
+    }
+
+    @Benchmark
+    public void hit() {
+        metrics.hit(RedisConstants.CACHE_SHOP_KEY);
+    }
+
+    @Benchmark
+    public void hitWithLatency() {
+        long start = System.nanoTime();
+        metrics.hit(RedisConstants.CACHE_SHOP_KEY);
+        metrics.latency(RedisConstants.CACHE_SHOP_KEY, start);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void hitWithLatencyContended() {
+        long start = System.nanoTime();
+        metrics.hit(RedisConstants.CACHE_SHOP_KEY);
+        metrics.latency(RedisConstants.CACHE_SHOP_KEY, start);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(CacheMetricsBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,89 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.utils.GeoGridIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内网格索引在100万店铺下的查询耗时和内存：店铺随机分布在约100km x 100km的城市范围内(5km半径内约7800个)，
+ * 查询半径5km内最近的 limit 个，limit 对应第1页和第10页(每页5条)。
+ * main 方法先打印构建耗时和索引占用的堆内存，再运行JMH。
+ * 运行: 先 mvn test-compile，再以 test classpath 执行本类的 main 方法。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class GeoGridIndexBenchmark {
+
+    private static final int SHOPS = 1_000_000;
+    private static final double MIN_X = 119.7;
+    private static final double MIN_Y = 29.9;
+    private static final double SPAN = 1.0;
+    private static final double CELL_DEGREES = 0.01;
+
+    @Param({"5", "50"})
+    private int limit;
+
+    private GeoGridIndex index;
+
+    @Setup
+    public void setup() {
+        index = build(SHOPS);
+    }
+
+    @Benchmark
+    public List<GeoGridIndex.Hit> search() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double x = MIN_X + 0.1 + random.nextDouble() * (SPAN - 0.2);
+        double y = MIN_Y + 0.1 + random.nextDouble() * (SPAN - 0.2);
+        return index.search(x, y, 5000, limit);
+    }
+
+    static GeoGridIndex build(int shops) {
+        Random random = new Random(42);
+        GeoGridIndex.Builder builder = new GeoGridIndex.Builder(CELL_DEGREES);
+        for (long id = 1; id <= shops; id++) {
+            builder.add(id, MIN_X + random.nextDouble() * SPAN, MIN_Y + random.nextDouble() * SPAN);
+        }
+        return builder.build();
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        long before = usedHeap();
+        long begin = System.nanoTime();
+        GeoGridIndex index = build(SHOPS);
+        long buildMs = (System.nanoTime() - begin) / 1_000_000;
+        long bytes = usedHeap() - before;
+        System.out.println("shops = " + index.size() + ", cells = " + index.cellCount() + ", build = " + buildMs + "ms"
+                + ", heap = " + bytes / 1024 / 1024 + "MB (" + bytes / index.size() + " bytes/shop)");
+        begin = System.nanoTime();
+        index.put(SHOPS + 1, MIN_X + 0.5, MIN_Y + 0.5);
+        index.remove(SHOPS + 1);
+        System.out.println("put + remove = " + (System.nanoTime() - begin) / 1000 + "us");
+        Options options = new OptionsBuilder()
+                .include(GeoGridIndexBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
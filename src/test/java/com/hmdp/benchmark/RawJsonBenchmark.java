@@ -0,0 +1,77 @@
+package com.hmdp.benchmark;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.hmdp.dto.RawJson;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.JacksonCacheCodec;
+import com.hmdp.utils.JsonCacheCodec;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /shop/{id} 命中Redis后生成响应体的耗时和分配(gc.alloc.rate.norm)对比：
+ * hutool 为之前的 JSONUtil 解码成 Shop 再由 Jackson 序列化 Result；
+ * jackson 为用 Jackson 解码再序列化；raw 为命中的JSON直接作为 RawJson 写入 Result。
+ * 运行: 先 mvn test-compile，再以 test classpath 执行本类的 main 方法。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RawJsonBenchmark {
+
+    private ObjectMapper objectMapper;
+    private JsonCacheCodec jsonCodec;
+    private JacksonCacheCodec jacksonCodec;
+    private byte[] jsonBytes;
+    private byte[] jacksonBytes;
+
+    @Setup
+    public void setup() {
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .serializationInclusion(JsonInclude.Include.NON_NULL)
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        jsonCodec = new JsonCacheCodec();
+        jacksonCodec = new JacksonCacheCodec(objectMapper);
+        Shop shop = CacheCodecBenchmark.sampleShop();
+        jsonBytes = jsonCodec.encode(shop);
+        jacksonBytes = jacksonCodec.encode(shop);
+    }
+
+    @Benchmark
+    public byte[] hutool() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(Result.ok(jsonCodec.decode(jsonBytes, Shop.class)));
+    }
+
+    @Benchmark
+    public byte[] jackson() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(Result.ok(jacksonCodec.decode(jacksonBytes, Shop.class)));
+    }
+
+    @Benchmark
+    public byte[] raw() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(Result.ok(new RawJson(jacksonCodec.toRawJson(jacksonBytes))));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(RawJsonBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,523 @@
+package com.hmdp.benchmark;
+
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.dto.RawJson;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.service.impl.ShopServiceImpl;
+import com.hmdp.utils.AsyncCacheClient;
+import com.hmdp.utils.CacheBucketLayout;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillStock;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import javax.annotation.Resource;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 依赖Redis和MySQL的吞吐对比，打印QPS、耗时和内存，每个测试只断言结果正确和查库次数的上限，不断言吞吐数值。
+ * 默认的 mvn test 不运行，运行: mvn test -Pbenchmark -Dtest=ThroughputBenchmarkTests。
+ * 用 jackson 编解码(命中时可透传JSON)、开启单飞合并、关闭一级缓存和热点key本地副本，让请求都访问Redis。
+ * 秒杀订单消息写入没有消费者的 {@link #TEST_ORDER_STREAM}，本进程不消费订单、不补发待转发订单
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = {
+        "hmdp.cache.codec=jackson",
+        "hmdp.cache.single-flight.enabled=true",
+        "hmdp.cache.local.enabled=false",
+        "hmdp.cache.hot-key.enabled=false",
+        "hmdp.seckill.stream.key=" + ThroughputBenchmarkTests.TEST_ORDER_STREAM,
+        "hmdp.seckill.stream.partitions=1",
+        "hmdp.seckill.consumer.enabled=false",
+        "hmdp.seckill.pending.forward-delay-seconds=0"
+})
+class ThroughputBenchmarkTests {
+
+    @Resource
+    private ShopServiceImpl shopService;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private AsyncCacheClient asyncCacheClient;
+    @Resource
+    private CacheBucketLayout bucketLayout;
+    @Resource
+    private ObjectMapper objectMapper;
+    @Resource
+    private RedisIdWorker redisIdWorker;
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private SeckillStock seckillStock;
+
+    static final String TEST_ORDER_STREAM = "test:stream.orders";
+
+    private static final ExecutorService es = Executors.newFixedThreadPool(500);
+
+    @AfterAll
+    static void shutdown() {
+        es.shutdownNow();
+    }
+
+    /**
+     * 热点key过期时每秒查库次数对比：缓存TTL为2秒，200个线程持续读同一个店铺10秒。
+     * singleFlight 为开启单飞合并的 quaryWithPassThrough(节点内合并，过期时其他节点仍各查一次)，mutex 为 quaryWithMutex(集群内Redis互斥锁)。
+     * 没有保护时每秒查库数千次，四种模式单节点下每秒都不应超过几次
+     */
+    @Test
+    void testEarlyRefreshDbQps() throws InterruptedException {
+        int seconds = 10;
+        for (String mode : new String[]{"singleFlight", "mutex", "logicalExpire", "earlyRefresh"}) {
+            String keyPrefix = "cache:stampede:" + mode + ":";
+            stringRedisTemplate.delete(keyPrefix + 1);
+            AtomicLongArray dbCalls = new AtomicLongArray(seconds);
+            long begin = System.currentTimeMillis();
+            Function<Long, Shop> dbFallback = id -> {
+                int second = (int) ((System.currentTimeMillis() - begin) / 1000);
+                if (second < seconds) {
+                    dbCalls.incrementAndGet(second);
+                }
+                try {
+                    // 模拟慢查询
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return shopService.getById(id);
+            };
+            if ("logicalExpire".equals(mode)) {
+                cacheClient.setWithLogicalExpire(keyPrefix + 1, shopService.getById(1L), 2L, TimeUnit.SECONDS);
+            }
+            CountDownLatch latch = new CountDownLatch(200);
+            for (int t = 0; t < 200; t++) {
+                es.submit(() -> {
+                    while (System.currentTimeMillis() - begin < seconds * 1000L) {
+                        if ("singleFlight".equals(mode)) {
+                            cacheClient.quaryWithPassThrough(keyPrefix, 1L, Shop.class, dbFallback, 2L, TimeUnit.SECONDS);
+                        } else if ("mutex".equals(mode)) {
+                            cacheClient.quaryWithMutex(keyPrefix, 1L, Shop.class, dbFallback, 2L, TimeUnit.SECONDS);
+                        } else if ("logicalExpire".equals(mode)) {
+                            cacheClient.quaryWithLogicalExpire(keyPrefix, 1L, Shop.class, dbFallback, 2L, TimeUnit.SECONDS);
+                        } else {
+                            cacheClient.quaryWithEarlyRefresh(keyPrefix, 1L, Shop.class, dbFallback, 2L, TimeUnit.SECONDS);
+                        }
+                    }
+                    latch.countDown();
+                });
+            }
+            latch.await();
+            stringRedisTemplate.delete(keyPrefix + 1);
+            System.out.println(mode + " 每秒查库次数 = " + dbCalls);
+            for (int s = 0; s < seconds; s++) {
+                Assertions.assertTrue(dbCalls.get(s) <= 3, mode + " 第" + s + "秒查库" + dbCalls.get(s) + "次");
+            }
+        }
+    }
+
+    /**
+     * 1000个线程同时未命中同一个key(慢查询200ms)，对比互斥锁等待通知模式和穿透+单飞模式：
+     * 查库次数、调用耗时p50/p99、线程占用总时长(各调用耗时之和)。单节点下两种模式都只查一次库
+     */
+    @Test
+    void testMutexStampede() throws InterruptedException {
+        int concurrency = 1000;
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        try {
+            for (String mode : new String[]{"passThrough", "mutex"}) {
+                String keyPrefix = "cache:stampede:" + mode + ":";
+                stringRedisTemplate.delete(keyPrefix + 1);
+                AtomicInteger dbCalls = new AtomicInteger();
+                Function<Long, Shop> dbFallback = id -> {
+                    dbCalls.incrementAndGet();
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return shopService.getById(id);
+                };
+                long[] costs = new long[concurrency];
+                Shop[] results = new Shop[concurrency];
+                CountDownLatch ready = new CountDownLatch(concurrency);
+                CountDownLatch start = new CountDownLatch(1);
+                CountDownLatch done = new CountDownLatch(concurrency);
+                for (int t = 0; t < concurrency; t++) {
+                    int n = t;
+                    pool.submit(() -> {
+                        ready.countDown();
+                        try {
+                            start.await();
+                            long begin = System.nanoTime();
+                            if ("mutex".equals(mode)) {
+                                results[n] = cacheClient.quaryWithMutex(keyPrefix, 1L, Shop.class, dbFallback, 30L, TimeUnit.MINUTES);
+                            } else {
+                                results[n] = cacheClient.quaryWithPassThrough(keyPrefix, 1L, Shop.class, dbFallback, 30L, TimeUnit.MINUTES);
+                            }
+                            costs[n] = System.nanoTime() - begin;
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            done.countDown();
+                        }
+                    });
+                }
+                try {
+                    ready.await();
+                    start.countDown();
+                    done.await();
+                } finally {
+                    stringRedisTemplate.delete(keyPrefix + 1);
+                }
+                Arrays.sort(costs);
+                long total = Arrays.stream(costs).sum();
+                System.out.println(mode + ": 查库次数 = " + dbCalls.get()
+                        + ", p50 = " + costs[concurrency / 2] / 1_000_000 + "ms"
+                        + ", p99 = " + costs[concurrency * 99 / 100] / 1_000_000 + "ms"
+                        + ", 线程占用 = " + total / 1_000_000 + "ms");
+                Assertions.assertEquals(1, dbCalls.get(), mode);
+                for (int n = 0; n < concurrency; n++) {
+                    // 调用抛出异常的线程没有结果
+                    Assertions.assertNotNull(results[n], mode + " 第" + n + "个调用失败");
+                    Assertions.assertEquals(1L, results[n].getId(), mode);
+                }
+            }
+            System.out.println("mutex stats = " + cacheClient.mutexStats());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * 固定线程数下同步与异步缓存查询的吞吐对比(缓存已预热，全部命中Redis)。
+     * 同步模式每个线程一次一个请求；异步模式每个线程同时发出 inFlight 个请求再等待，模拟请求线程不被Redis往返占用
+     */
+    @Test
+    void testAsyncThroughput() throws Exception {
+        int seconds = 5;
+        int inFlight = 16;
+        String keyPrefix = "cache:async:";
+        cacheClient.set(keyPrefix + 1, shopService.getById(1L), 30L, TimeUnit.MINUTES);
+        try {
+            Shop probe = asyncCacheClient.queryWithPassThrough(keyPrefix, 1L, Shop.class, id -> {
+                throw new AssertionError("缓存未命中");
+            }, 30L, TimeUnit.MINUTES).join();
+            Assertions.assertEquals(1L, probe.getId());
+            for (int threads : new int[]{8, 32, 128}) {
+                for (String mode : new String[]{"sync", "async"}) {
+                    LongAdder ops = new LongAdder();
+                    AtomicReference<Throwable> failure = new AtomicReference<>();
+                    CountDownLatch latch = new CountDownLatch(threads);
+                    long end = System.currentTimeMillis() + seconds * 1000L;
+                    for (int t = 0; t < threads; t++) {
+                        es.submit(() -> {
+                            try {
+                                while (System.currentTimeMillis() < end) {
+                                    if ("sync".equals(mode)) {
+                                        cacheClient.quaryWithPassThrough(keyPrefix, 1L, Shop.class, shopService::getById, 30L, TimeUnit.MINUTES);
+                                        ops.increment();
+                                    } else {
+                                        CompletableFuture<?>[] futures = new CompletableFuture[inFlight];
+                                        for (int i = 0; i < inFlight; i++) {
+                                            futures[i] = asyncCacheClient.queryWithPassThrough(keyPrefix, 1L, Shop.class, shopService::getById, 30L, TimeUnit.MINUTES);
+                                        }
+                                        CompletableFuture.allOf(futures).join();
+                                        ops.add(inFlight);
+                                    }
+                                }
+                            } catch (Throwable e) {
+                                failure.compareAndSet(null, e);
+                            } finally {
+                                // 查询失败时线程也要计数，否则 await 一直等下去
+                                latch.countDown();
+                            }
+                        });
+                    }
+                    latch.await();
+                    System.out.println(mode + " threads = " + threads + ", QPS = " + ops.sum() / seconds);
+                    Assertions.assertNull(failure.get(), mode + " 查询失败: " + failure.get());
+                    Assertions.assertTrue(ops.sum() > 0, mode);
+                }
+            }
+        } finally {
+            stringRedisTemplate.delete(keyPrefix + 1);
+        }
+    }
+
+    /**
+     * GET /shop/{id} 命中Redis时生成响应体的对比：decode 为解码成 Shop 后由 Jackson 序列化 Result，
+     * raw 为命中的JSON作为 RawJson 直接写入。统计QPS、单次耗时p50/p99和每个请求的分配字节数(所有线程合计)
+     */
+    @Test
+    void testRawJsonThroughput() throws Exception {
+        int seconds = 5;
+        int threads = 32;
+        String keyPrefix = "cache:raw:";
+        cacheClient.set(keyPrefix + 1, shopService.getById(1L), 30L, TimeUnit.MINUTES);
+        try {
+            Object probe = asyncCacheClient.queryRawWithPassThrough(keyPrefix, 1L, Shop.class, shopService::getById, 30L, TimeUnit.MINUTES).join();
+            Assertions.assertTrue(probe instanceof RawJson, "透传模式返回了 " + probe.getClass().getSimpleName());
+            com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            for (String mode : new String[]{"decode", "raw", "decode", "raw"}) {
+                LongAdder ops = new LongAdder();
+                AtomicReference<Throwable> failure = new AtomicReference<>();
+                List<long[]> costs = new ArrayList<>();
+                CountDownLatch latch = new CountDownLatch(threads);
+                long allocBefore = Arrays.stream(threadBean.getThreadAllocatedBytes(threadBean.getAllThreadIds())).sum();
+                long end = System.currentTimeMillis() + seconds * 1000L;
+                for (int t = 0; t < threads; t++) {
+                    long[] threadCosts = new long[1 << 16];
+                    costs.add(threadCosts);
+                    es.submit(() -> {
+                        int n = 0;
+                        try {
+                            while (System.currentTimeMillis() < end) {
+                                long begin = System.nanoTime();
+                                Object data = "raw".equals(mode)
+                                        ? asyncCacheClient.queryRawWithPassThrough(keyPrefix, 1L, Shop.class, shopService::getById, 30L, TimeUnit.MINUTES).join()
+                                        : asyncCacheClient.queryWithPassThrough(keyPrefix, 1L, Shop.class, shopService::getById, 30L, TimeUnit.MINUTES).join();
+                                objectMapper.writeValueAsBytes(Result.ok(data));
+                                if (n < threadCosts.length) {
+                                    threadCosts[n++] = System.nanoTime() - begin;
+                                }
+                                ops.increment();
+                            }
+                        } catch (Throwable e) {
+                            failure.compareAndSet(null, e);
+                        } finally {
+                            latch.countDown();
+                        }
+                    });
+                }
+                latch.await();
+                Assertions.assertNull(failure.get(), mode + " 请求失败: " + failure.get());
+                long alloc = Arrays.stream(threadBean.getThreadAllocatedBytes(threadBean.getAllThreadIds())).sum() - allocBefore;
+                long[] all = costs.stream().flatMapToLong(c -> Arrays.stream(c).filter(v -> v > 0)).sorted().toArray();
+                Assertions.assertTrue(all.length > 0, mode);
+                System.out.println(mode + ": QPS = " + ops.sum() / seconds
+                        + ", p50 = " + all[all.length / 2] / 1000 + "us"
+                        + ", p99 = " + all[all.length * 99 / 100] / 1000 + "us"
+                        + ", 每请求分配 = " + alloc / Math.max(1, ops.sum()) + " bytes");
+            }
+        } finally {
+            stringRedisTemplate.delete(keyPrefix + 1);
+        }
+    }
+
+    /**
+     * 独立key与hash分桶两种布局的内存对比：用库中店铺的JSON按id偏移放大到 total 条，
+     * 分别写入后比较 used_memory 的增量。分桶布局需要 Redis 的 hash-max-listpack-entries 不小于桶大小，
+     * 否则桶会退化为 hashtable 编码，这时跳过内存比较
+     */
+    @Test
+    void testBucketMemory() {
+        int total = 100_000;
+        int bucketSize = 1000;
+        long ttlMillis = TimeUnit.MINUTES.toMillis(30);
+        List<byte[]> values = shopService.list().stream()
+                .map(shop -> JSONUtil.toJsonStr(shop).getBytes(StandardCharsets.UTF_8))
+                .collect(Collectors.toList());
+        long[] used = new long[2];
+        String encoding = null;
+        try {
+            for (int l = 0; l < 2; l++) {
+                String layout = l == 0 ? "plain" : "bucket";
+                String keyPrefix = "cache:memory:" + layout + ":";
+                long before = usedMemory();
+                stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+                    connection.openPipeline();
+                    for (int id = 0; id < total; id++) {
+                        byte[] value = values.get(id % values.size());
+                        if ("plain".equals(layout)) {
+                            connection.stringCommands().pSetEx((keyPrefix + id).getBytes(StandardCharsets.UTF_8), ttlMillis, value);
+                        } else {
+                            byte[] bucketKey = (keyPrefix + "b:" + id / bucketSize).getBytes(StandardCharsets.UTF_8);
+                            connection.hashCommands().hSet(bucketKey, String.valueOf(id).getBytes(StandardCharsets.UTF_8),
+                                    bucketLayout.wrap(value, ttlMillis));
+                        }
+                    }
+                    connection.closePipeline();
+                    return null;
+                });
+                used[l] = usedMemory() - before;
+                System.out.println(layout + ": 条目数 = " + total + ", 内存增量 = " + used[l]
+                        + " bytes, 每条 = " + used[l] / total + " bytes");
+                if ("bucket".equals(layout)) {
+                    encoding = stringRedisTemplate.execute((RedisCallback<String>) connection ->
+                            String.valueOf(connection.keyCommands().encodingOf((keyPrefix + "b:0").getBytes(StandardCharsets.UTF_8))));
+                    System.out.println("bucket encoding = " + encoding);
+                    // 比较的前提是分桶布局存下的值能原样读回
+                    int id = total - 1;
+                    byte[] stored = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.hashCommands().hGet(
+                            (keyPrefix + "b:" + id / bucketSize).getBytes(StandardCharsets.UTF_8),
+                            String.valueOf(id).getBytes(StandardCharsets.UTF_8)));
+                    Assertions.assertArrayEquals(values.get(id % values.size()), bucketLayout.unwrap(stored));
+                }
+            }
+        } finally {
+            deleteMemoryKeys(total, bucketSize);
+        }
+        Assumptions.assumeTrue(!"HASHTABLE".equalsIgnoreCase(encoding), "桶退化为hashtable编码，调大hash-max-listpack-entries/value后再比较");
+        Assertions.assertTrue(used[1] < used[0], "分桶布局占用 " + used[1] + " bytes，不少于独立key的 " + used[0] + " bytes");
+    }
+
+    /**
+     * 批量创建订单的吞吐：同一张秒杀券的5000个订单分别按 1、10、100、500 个一批写入数据库，
+     * 每批一个事务、一条多行 INSERT IGNORE 和一个扣减库存的UPDATE。每种批大小都应全部创建，库存正好用完；
+     * 最后把全部订单按最大批大小重新投递一次，一个也不创建，库存不变
+     */
+    @Test
+    void testBatchOrderThroughput() {
+        long voucherId = 9_000_200L;
+        int total = 5000;
+        int[] batchSizes = {1, 10, 100, 500};
+        seckillVoucherService.removeById(voucherId);
+        voucherOrderService.remove(new QueryWrapper<VoucherOrder>().eq("voucher_id", voucherId));
+        seckillVoucherService.save(new SeckillVoucher().setVoucherId(voucherId).setStock(total * batchSizes.length)
+                .setBeginTime(LocalDateTime.now()).setEndTime(LocalDateTime.now().plusDays(1)));
+        try {
+            long userId = 0;
+            List<VoucherOrder> all = new ArrayList<>(total * batchSizes.length);
+            for (int batchSize : batchSizes) {
+                List<VoucherOrder> orders = new ArrayList<>(total);
+                for (int i = 0; i < total; i++) {
+                    orders.add(new VoucherOrder().setId(redisIdWorker.nextId("order")).setUserId(++userId).setVoucherId(voucherId));
+                }
+                long begin = System.currentTimeMillis();
+                int created = 0;
+                for (int from = 0; from < total; from += batchSize) {
+                    created += voucherOrderService.createVoucherOrders(orders.subList(from, Math.min(total, from + batchSize)));
+                }
+                long ms = Math.max(1, System.currentTimeMillis() - begin);
+                System.out.println("batchSize = " + batchSize + ", created = " + created + ", orders/s = " + created * 1000L / ms
+                        + ", us/order = " + ms * 1000 / Math.max(1, created));
+                Assertions.assertEquals(total, created, "batchSize = " + batchSize);
+                all.addAll(orders);
+            }
+            Assertions.assertEquals(0, seckillVoucherService.getById(voucherId).getStock());
+            int batchSize = batchSizes[batchSizes.length - 1];
+            for (int from = 0; from < all.size(); from += batchSize) {
+                Assertions.assertEquals(0, voucherOrderService.createVoucherOrders(all.subList(from, Math.min(all.size(), from + batchSize))));
+            }
+            Assertions.assertEquals(0, seckillVoucherService.getById(voucherId).getStock());
+        } finally {
+            voucherOrderService.remove(new QueryWrapper<VoucherOrder>().eq("voucher_id", voucherId));
+            seckillVoucherService.removeById(voucherId);
+        }
+    }
+
+    /**
+     * 分片库存的秒杀吞吐：同一张券分别分成 1、2、4、8 个分片，64个线程用不同用户持续抢购5秒，库存足够不会售完。
+     * 单机Redis是单线程的，分片不会提高吞吐；部署在Redis集群时各分片落在不同节点，吞吐随分片数增长。
+     * 订单消息写入没有消费者的 {@link #TEST_ORDER_STREAM}，不进入线上的订单队列
+     */
+    @Test
+    void testShardedSeckillThroughput() throws InterruptedException {
+        int seconds = 5;
+        int threads = 64;
+        AtomicLong userIds = new AtomicLong();
+        for (int shards : new int[]{1, 2, 4, 8}) {
+            long voucherId = 9_000_000L + shards;
+            List<String> keys = seckillKeys(voucherId, shards);
+            try {
+                seckillStock.init(voucherId, 100_000_000, shards);
+                LongAdder ops = new LongAdder();
+                CountDownLatch latch = new CountDownLatch(threads);
+                long end = System.currentTimeMillis() + seconds * 1000L;
+                for (int t = 0; t < threads; t++) {
+                    es.submit(() -> {
+                        while (System.currentTimeMillis() < end) {
+                            seckillStock.tryAcquire(voucherId, userIds.incrementAndGet());
+                            ops.increment();
+                        }
+                        latch.countDown();
+                    });
+                }
+                latch.await();
+                System.out.println("shards = " + shards + ", QPS = " + ops.sum() / seconds);
+            } finally {
+                stringRedisTemplate.delete(keys);
+                stringRedisTemplate.opsForSet().remove(RedisConstants.SECKILL_VOUCHERS_KEY, String.valueOf(voucherId));
+            }
+        }
+        stringRedisTemplate.delete(TEST_ORDER_STREAM);
+    }
+
+    /**
+     * 一张秒杀券在Redis中的全部key
+     */
+    private static List<String> seckillKeys(long voucherId, int shards) {
+        List<String> keys = new ArrayList<>();
+        keys.add(RedisConstants.SECKILL_SHARDS_KEY + voucherId);
+        for (String prefix : new String[]{RedisConstants.SECKILL_STOCK_KEY, RedisConstants.SECKILL_ORDER_KEY,
+                RedisConstants.SECKILL_PENDING_KEY, RedisConstants.SECKILL_RESERVING_KEY, RedisConstants.SECKILL_TAKEN_KEY}) {
+            keys.add(prefix + "{" + voucherId + "}");
+            for (int i = 0; i < shards; i++) {
+                keys.add(prefix + "{" + voucherId + ":" + i + "}");
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * 按写入时的规则拼出 testBucketMemory 的全部key删除，不用 KEYS 扫描
+     */
+    private void deleteMemoryKeys(int total, int bucketSize) {
+        List<String> keys = new ArrayList<>(10_000);
+        for (int id = 0; id < total; id++) {
+            keys.add("cache:memory:plain:" + id);
+            if (id % bucketSize == 0) {
+                keys.add("cache:memory:bucket:b:" + id / bucketSize);
+            }
+            if (keys.size() == 10_000) {
+                stringRedisTemplate.delete(keys);
+                keys.clear();
+            }
+        }
+        if (!keys.isEmpty()) {
+            stringRedisTemplate.delete(keys);
+        }
+    }
+
+    private long usedMemory() {
+        Properties info = stringRedisTemplate.execute((RedisCallback<Properties>) connection ->
+                connection.serverCommands().info("memory"));
+        return Long.parseLong(info.getProperty("used_memory"));
+    }
+}
@@ -0,0 +1,55 @@
+package com.hmdp.entity;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.LocalDateTime;
+
+class ShopTest {
+
+    /**
+     * 给每个实例字段设置互不相同的非空值，copy() 后逐个比较；新增字段忘了复制时这里失败
+     */
+    @Test
+    void testCopyCopiesEveryField() throws IllegalAccessException {
+        Shop shop = new Shop();
+        int n = 0;
+        for (Field field : Shop.class.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            field.setAccessible(true);
+            field.set(shop, sample(field, ++n));
+        }
+        Shop copy = shop.copy();
+        Assertions.assertNotSame(shop, copy);
+        for (Field field : Shop.class.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            Assertions.assertEquals(field.get(shop), field.get(copy), "copy() 没有复制字段 " + field.getName());
+        }
+    }
+
+    private static Object sample(Field field, int n) {
+        Class<?> type = field.getType();
+        if (type == Long.class) {
+            return (long) n;
+        }
+        if (type == Integer.class) {
+            return n;
+        }
+        if (type == Double.class) {
+            return n + 0.5;
+        }
+        if (type == String.class) {
+            return field.getName() + n;
+        }
+        if (type == LocalDateTime.class) {
+            return LocalDateTime.of(2022, 1, 1, 0, 0).plusDays(n);
+        }
+        throw new AssertionError("字段 " + field.getName() + " 的类型 " + type.getSimpleName() + " 没有测试值，请在 sample 中补充");
+    }
+}
@@ -0,0 +1,88 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 编解码互相读取对方写入的值：JSON写入的旧值其他编解码都能读出，
+ * 其他格式交给不认识它的编解码时返回null(按未命中处理)，不抛异常
+ */
+class CacheCodecTest {
+
+    private final List<CacheCodec> codecs = Arrays.asList(
+            new JsonCacheCodec(), new BinaryCacheCodec(), new JacksonCacheCodec());
+
+    @Test
+    void testRoundTrip() {
+        Shop shop = sampleShop();
+        LocalDateTime expireTime = LocalDateTime.of(2024, 1, 1, 12, 0);
+        for (CacheCodec codec : codecs) {
+            Assertions.assertEquals(shop, codec.decode(codec.encode(shop), Shop.class), codec.name());
+            RedisData redisData = codec.decodeWithExpire(codec.encodeWithExpire(shop, expireTime, 35), Shop.class);
+            Assertions.assertNotNull(redisData, codec.name());
+            Assertions.assertEquals(shop, redisData.getData(), codec.name());
+            Assertions.assertEquals(expireTime, redisData.getExpireTime(), codec.name());
+            Assertions.assertEquals(35L, redisData.getDelta(), codec.name());
+        }
+    }
+
+    @Test
+    void testReadOtherCodecs() {
+        Shop shop = sampleShop();
+        LocalDateTime expireTime = LocalDateTime.of(2024, 1, 1, 12, 0);
+        for (CacheCodec writer : codecs) {
+            byte[] plain = writer.encode(shop);
+            byte[] withExpire = writer.encodeWithExpire(shop, expireTime);
+            for (CacheCodec reader : codecs) {
+                if (reader == writer) {
+                    continue;
+                }
+                String name = writer.name() + " -> " + reader.name();
+                Shop decoded = Assertions.assertDoesNotThrow(() -> reader.decode(plain, Shop.class), name);
+                RedisData redisData = Assertions.assertDoesNotThrow(
+                        () -> reader.decodeWithExpire(withExpire, Shop.class), name);
+                if ("json".equals(writer.name())) {
+                    // 切换前的JSON缓存仍可读
+                    Assertions.assertEquals(shop, decoded, name);
+                    Assertions.assertNotNull(redisData, name);
+                    Assertions.assertEquals(shop, redisData.getData(), name);
+                } else {
+                    Assertions.assertNull(decoded, name);
+                    Assertions.assertNull(redisData, name);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testPlainValueIsNotLogicalExpire() {
+        Shop shop = sampleShop();
+        for (CacheCodec codec : codecs) {
+            Assertions.assertNull(codec.decodeWithExpire(codec.encode(shop), Shop.class), codec.name());
+        }
+    }
+
+    static Shop sampleShop() {
+        return new Shop()
+                .setId(1L)
+                .setName("103茶餐厅")
+                .setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/a.jpg,https://qcloud.dpfile.com/pc/b.jpg")
+                .setArea("大关")
+                .setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setComments(3035)
+                .setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+    }
+}
@@ -0,0 +1,50 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+class LongLongMapTest {
+
+    @Test
+    void testMatchesHashMap() {
+        LongLongMap map = new LongLongMap(4);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int n = 0; n < 200_000; n++) {
+            // key 范围小，保证大量覆盖和删除，删除后的后移填补也会被频繁触发
+            long key = random.nextInt(5000) - 100;
+            if (random.nextInt(3) == 0) {
+                Long old = expected.remove(key);
+                Assertions.assertEquals(old == null ? -1 : old, map.remove(key, -1));
+            } else {
+                long value = random.nextLong();
+                expected.put(key, value);
+                map.put(key, value);
+            }
+            Assertions.assertEquals(expected.size(), map.size());
+        }
+        for (long key = -100; key < 4900; key++) {
+            Long value = expected.get(key);
+            Assertions.assertEquals(value == null ? -1 : value, map.get(key, -1));
+        }
+    }
+
+    @Test
+    void testSequentialIds() {
+        LongLongMap map = new LongLongMap(16);
+        for (long id = 1; id <= 100_000; id++) {
+            map.put(id, id * 10);
+        }
+        for (long id = 1; id <= 100_000; id += 2) {
+            Assertions.assertEquals(id * 10, map.remove(id, -1));
+        }
+        Assertions.assertEquals(50_000, map.size());
+        for (long id = 1; id <= 100_000; id++) {
+            Assertions.assertEquals(id % 2 == 0 ? id * 10 : -1, map.get(id, -1));
+        }
+    }
+}